@@ -0,0 +1,264 @@
+package benchmarks;
+
+import model.Location;
+import model.TextEditorModel;
+import model.TextPosition;
+import model.TextRange;
+import model.storage.GapBufferStorage;
+import model.storage.ListLineStorage;
+import model.storage.PieceTableStorage;
+import model.storage.RopeStorage;
+import model.storage.TextStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the editing operations of {@link TextEditorModel}.
+ * <p>
+ * Every benchmark runs over each document shape and each storage engine, so a change to
+ * the model or to a storage engine can be compared with numbers. Editing benchmarks change
+ * the document, so they are measured as batches of operations on a fresh document built
+ * before every iteration. Read-only benchmarks are measured as average time per operation.
+ * <p>
+ * Run {@link #main} or {@code org.openjdk.jmh.Main} with the classpath of the Benchmarks module.
+ * JMH options can be passed as arguments, e.g. {@code -p shape=LOG -p storage=rope}.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextEditorModelBenchmark {
+
+    /**
+     * Number of operations measured together by the editing benchmarks.
+     */
+    private static final int EDIT_BATCH = 10_000;
+    private static final int PASTE_BATCH = 100;
+
+    /**
+     * Size of ranges used by {@code insert(String)}, {@code deleteRange} and {@code selectionToString}.
+     */
+    private static final int RANGE_LINES = 1_000;
+    private static final int RANGE_COLUMNS = 1_000;
+
+    /**
+     * Shapes of benchmarked documents.
+     */
+    public enum Shape {
+        /**
+         * 100 000 lines of source code length.
+         */
+        SHORT_LINES(100_000, 40, 0),
+
+        /**
+         * 10 lines of 200 000 characters, e.g. minified files.
+         */
+        HUGE_LINES(10, 200_000, 0),
+
+        /**
+         * 1 000 000 log lines between 40 and 160 characters long.
+         */
+        LOG(1_000_000, 40, 120);
+
+        private final int mLineCount;
+        private final int mLineLength;
+        private final int mLengthSpread;
+
+        Shape(int lineCount, int lineLength, int lengthSpread) {
+            mLineCount = lineCount;
+            mLineLength = lineLength;
+            mLengthSpread = lengthSpread;
+        }
+
+        /**
+         * Builds the lines of the document. Content is random but the same for every run.
+         */
+        String[] lines() {
+            Random random = new Random(42);
+            String[] lines = new String[mLineCount];
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < mLineCount; i++) {
+                sb.setLength(0);
+                if (this == LOG) {
+                    sb.append("2020-01-01 12:00:").append(i % 60 < 10 ? "0" : "").append(i % 60).append(" INFO ");
+                }
+                int length = mLineLength + (mLengthSpread > 0 ? random.nextInt(mLengthSpread) : 0);
+                while (sb.length() < length) {
+                    sb.append(random.nextInt(8) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+                }
+                lines[i] = sb.toString();
+            }
+            return lines;
+        }
+    }
+
+    @Param({"SHORT_LINES", "HUGE_LINES", "LOG"})
+    public Shape shape;
+
+    /**
+     * Storage engine under the model. {@code gap} is a gap buffer over a rope, the storage
+     * {@link TextEditorModel#TextEditorModel(String)} creates, {@code rope} is the rope alone.
+     */
+    @Param({"gap", "list", "piece", "rope"})
+    public String storage;
+
+    private String[] mLines;
+    private String mText;
+    private String mPaste;
+
+    private TextEditorModel mModel;
+    private TextRange mRange;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        mLines = shape.lines();
+        mText = String.join("\n", mLines);
+
+        StringBuilder paste = new StringBuilder();
+        for (int i = 0; i < RANGE_LINES; i++) {
+            if (i > 0) {
+                paste.append('\n');
+            }
+            paste.append(mLines[i % mLines.length], 0, Math.min(mLines[i % mLines.length].length(), 80));
+        }
+        mPaste = paste.toString();
+    }
+
+    /**
+     * Builds a fresh document for every iteration and puts the cursor in the middle of it.
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        mModel = new TextEditorModel(createStorage());
+        int middle = mLines.length / 2;
+        mModel.moveCursorTo(new TextPosition(mLines[middle].length() / 2, middle));
+        mRange = range();
+    }
+
+    private TextStorage createStorage() {
+        switch (storage) {
+            case "gap":
+                return new GapBufferStorage(new RopeStorage(Arrays.asList(mLines)));
+            case "list":
+                return new ListLineStorage(Arrays.asList(mLines));
+            case "piece":
+                return new PieceTableStorage(mText);
+            case "rope":
+                return new RopeStorage(Arrays.asList(mLines));
+            default:
+                throw new IllegalArgumentException("Unknown storage " + storage);
+        }
+    }
+
+    /**
+     * Returns a range starting at the beginning of the cursor line which spans up to
+     * {@link #RANGE_LINES} lines. On documents with fewer lines it spans up to
+     * {@link #RANGE_COLUMNS} characters of the last line of the range.
+     */
+    private TextRange range() {
+        int lastLine = mModel.lineCount() - 1;
+        int startLine = Math.min(mModel.getCursorLocation().getY(), lastLine);
+        int endLine = Math.min(startLine + RANGE_LINES, lastLine);
+        int endColumn = Math.min(RANGE_COLUMNS,
+                Math.min(mModel.getStorage().lineLength(endLine), mModel.getStorage().lineLength(lastLine)));
+        return new TextRange(0, startLine, endColumn, endLine);
+    }
+
+    //region Editing
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = EDIT_BATCH)
+    @Measurement(iterations = 10, batchSize = EDIT_BATCH)
+    public Location insertChar() {
+        mModel.insert('x');
+        return mModel.getCursorLocation();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = PASTE_BATCH)
+    @Measurement(iterations = 10, batchSize = PASTE_BATCH)
+    public Location insertMultiLineString() {
+        mModel.insert(mPaste);
+        return mModel.getCursorLocation();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = EDIT_BATCH)
+    @Measurement(iterations = 10, batchSize = EDIT_BATCH)
+    public Location deleteBefore() {
+        mModel.deleteBefore();
+        return mModel.getCursorLocation();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = PASTE_BATCH)
+    @Measurement(iterations = 10, batchSize = PASTE_BATCH)
+    public int deleteRange() {
+        mModel.deleteRange(range());
+        return mModel.lineCount();
+    }
+
+    //endregion
+
+    //region Reading
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    public String selectionToString() {
+        return mModel.selectionToString(mRange);
+    }
+
+    /**
+     * Moves the cursor right and back, so the cursor stays in place between invocations.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    public Location moveCursorRightLeft() {
+        mModel.moveCursorRight();
+        mModel.moveCursorLeft();
+        return mModel.getCursorLocation();
+    }
+
+    /**
+     * Moves the cursor down and back, so the cursor stays in place between invocations.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    public Location moveCursorDownUp() {
+        mModel.moveCursorDown();
+        mModel.moveCursorUp();
+        return mModel.getCursorLocation();
+    }
+
+    //endregion
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            args = new String[]{TextEditorModelBenchmark.class.getSimpleName()};
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -1,10 +1,231 @@
 package main;
 
+import model.ChunkedFileLoader;
+import model.RegexReplacer;
+import model.TextEditorModel;
+import model.TextPosition;
+import model.TextRange;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
- * Delete this after app completion.
+ * Edits a file without the user interface. The file is loaded into a {@link TextEditorModel},
+ * a script of edit commands is applied to it and the result is saved. AWT is never touched,
+ * so the editor can be used in batch pipelines and its throughput measured on its own.
+ * <p>
+ * Usage: {@code Fasty <input> <output> [script]}. The script is read from the standard input
+ * if it isn't given. It is read line by line and every command is applied as soon as it is
+ * read, so scripts of any length can be streamed. Empty lines and lines starting with
+ * {@code #} are skipped. Lines and columns are counted from 0.
+ * <ul>
+ * <li>{@code insert <line> <column> <text>} inserts the text, {@code \n}, {@code \t} and
+ * {@code \\} in it stand for a newline, a tab and a backslash.</li>
+ * <li>{@code delete <line> <column> <line> <column>} deletes the text between the positions.</li>
+ * <li>{@code replace /<regex>/<replacement>/} replaces every match of the regex. Any character
+ * can be used instead of {@code /} and escaped with a backslash inside the command.
+ * Replacement may reference groups like {@link java.util.regex.Matcher#appendReplacement}.</li>
+ * </ul>
+ * Timings of loading, editing and saving are printed to the standard error.
  */
 public class Fasty {
+
+    private static final String USAGE = "Usage: Fasty <input> <output> [script]";
+
     public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            run(Paths.get(args[0]), Paths.get(args[1]), args.length == 3 ? Paths.get(args[2]) : null, System.err);
+        } catch (IOException e) {
+            System.err.println(e.getClass().getSimpleName() + ": " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Applies the script to the input file and saves the result to the output file.
+     *
+     * @param input  {@link Path} of an UTF-8 text file.
+     * @param output {@link Path} where the result is saved, can be the input.
+     * @param script {@link Path} of the script, null to read it from the standard input.
+     * @param log    {@link PrintStream} which receives the timings.
+     * @throws IOException              if a file cannot be read or written.
+     * @throws IllegalArgumentException if a command is malformed or edits outside of the text.
+     */
+    public static void run(Path input, Path output, Path script, PrintStream log) throws IOException {
+        long start = System.nanoTime();
+//        Every command reads the whole text, a mapped file would decode every line again for each of them.
+        final TextEditorModel model = new TextEditorModel("");
+        try {
+            new ChunkedFileLoader(model, Runnable::run).load(input).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+//        Nothing is ever undone, so no history is recorded.
+        model.getUndoManager().setByteBudget(0);
+        final RegexReplacer replacer = new RegexReplacer(model);
+        log.printf("Loaded %d lines in %d ms%n", model.lineCount(), millisSince(start));
+
+        start = System.nanoTime();
+        int commands = 0;
+        try (BufferedReader reader = script == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            String command;
+            for (int number = 1; (command = reader.readLine()) != null; number++) {
+                if (command.isEmpty() || command.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    apply(model, replacer, command);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + number + ": " + e.getMessage(), e);
+                }
+                commands++;
+            }
+        }
+        final long editMillis = millisSince(start);
+        log.printf("Applied %d commands in %d ms (%.0f commands/s)%n",
+                commands, editMillis, commands * 1000.0 / Math.max(editMillis, 1));
+
+        start = System.nanoTime();
+        model.save(output);
+        log.printf("Saved %d lines in %d ms%n", model.lineCount(), millisSince(start));
+    }
+
+    /**
+     * Applies a single command to the model.
+     */
+    private static void apply(TextEditorModel model, RegexReplacer replacer, String command) {
+        final int space = command.indexOf(' ');
+        final String name = space < 0 ? command : command.substring(0, space);
+        final String arguments = space < 0 ? "" : command.substring(space + 1);
+
+        switch (name) {
+            case "insert": {
+                final String[] parts = arguments.split(" ", 3);
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("Expected: insert <line> <column> <text>");
+                }
+                model.moveCursorTo(new TextPosition(number(parts[1]), number(parts[0])));
+                model.insert(parts.length == 3 ? unescape(parts[2]) : "");
+                break;
+            }
+            case "delete": {
+                final String[] parts = arguments.split(" ");
+                if (parts.length != 4) {
+                    throw new IllegalArgumentException("Expected: delete <line> <column> <line> <column>");
+                }
+                model.deleteRange(new TextRange(number(parts[1]), number(parts[0]), number(parts[3]), number(parts[2])));
+                break;
+            }
+            case "replace": {
+                final String[] parts = splitReplace(arguments);
+                try {
+                    replacer.replaceAll(Pattern.compile(parts[0]), parts[1]);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException(e.getDescription() + " in regex " + parts[0], e);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command " + name);
+        }
+    }
+
+    private static int number(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + text, e);
+        }
+    }
+
+    /**
+     * Replaces escape sequences of the inserted text.
+     */
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                c = text.charAt(++i);
+                if (c == 'n') {
+                    c = '\n';
+                } else if (c == 't') {
+                    c = '\t';
+                } else if (c != '\\') {
+                    throw new IllegalArgumentException("Unknown escape sequence \\" + c);
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Splits {@code /regex/replacement/} into the regex and the replacement. Escaped delimiters
+     * lose their backslash, every other escape is passed on to the regex or the replacement.
+     */
+    private static String[] splitReplace(String arguments) {
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException("Expected: replace /<regex>/<replacement>/");
+        }
+
+        final char delimiter = arguments.charAt(0);
+        final String[] parts = new String[2];
+        final StringBuilder sb = new StringBuilder();
+        int part = 0;
+        for (int i = 1; i < arguments.length(); i++) {
+            final char c = arguments.charAt(i);
+            if (c == '\\' && i + 1 < arguments.length()) {
+                final char next = arguments.charAt(++i);
+                if (next != delimiter) {
+                    sb.append(c);
+                }
+                sb.append(next);
+            } else if (c == delimiter) {
+                if (part == 2) {
+                    throw new IllegalArgumentException("Unexpected " + delimiter + " after the replacement.");
+                }
+                parts[part++] = sb.toString();
+                sb.setLength(0);
+            } else if (part == 2) {
+                throw new IllegalArgumentException("Unexpected text after the replacement.");
+            } else {
+                sb.append(c);
+            }
+        }
+        if (part != 2) {
+            throw new IllegalArgumentException("Expected: replace /<regex>/<replacement>/");
+        }
+        return parts;
+    }
 
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
     }
 }
@@ -0,0 +1,142 @@
+package main;
+
+import model.TextChange;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches pixel widths of line prefixes for {@link TextEditor}.
+ * <p>
+ * For every measured line the cache keeps the x coordinate of each column measured so far,
+ * so after the first measurement the x coordinate of a column is answered in O(1) without
+ * creating a substring. Entries are dropped for lines reported as changed by the model and
+ * when the font changes. Every entry also remembers the text it was measured for, so a
+ * stale entry is never used even if a change was missed.
+ */
+final class LineWidthCache {
+
+    /**
+     * Roughly a few screens of lines. Lines far from the viewport are measured again if needed.
+     */
+    private static final int MAX_LINES = 512;
+
+    private final Map<Integer, LineWidths> mEntries;
+    private Font mFont;
+
+    LineWidthCache() {
+        mEntries = new LinkedHashMap<Integer, LineWidths>(MAX_LINES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LineWidths> eldest) {
+                return size() > MAX_LINES;
+            }
+        };
+    }
+
+    /**
+     * Returns the width in pixels of the first column characters of the line.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param line        primitive int, index of the line in the model.
+     * @param text        {@link String} content of the line.
+     * @param column      primitive int, number of characters measured.
+     * @return primitive int.
+     */
+    int columnX(FontMetrics fontMetrics, int line, String text, int column) {
+        if (!fontMetrics.getFont().equals(mFont)) {
+            mEntries.clear();
+            mFont = fontMetrics.getFont();
+        }
+
+        LineWidths widths = mEntries.get(line);
+        if (widths == null || (widths.mText != text && !widths.mText.equals(text))) {
+            widths = new LineWidths(text);
+            mEntries.put(line, widths);
+        }
+        return widths.columnX(fontMetrics, column);
+    }
+
+    /**
+     * Drops entries of the changed lines. If lines moved, entries below the change are
+     * moved with them.
+     *
+     * @param change {@link TextChange}.
+     */
+    void invalidate(TextChange change) {
+        final int first = change.getFirstLine();
+        final int oldEnd = first + change.getOldLineCount();
+        final int shift = change.getNewLineCount() - change.getOldLineCount();
+
+        if (shift == 0) {
+            for (int i = first; i < oldEnd; i++) {
+                mEntries.remove(i);
+            }
+            return;
+        }
+
+        Map<Integer, LineWidths> moved = new LinkedHashMap<>();
+        mEntries.entrySet().removeIf(e -> {
+            int line = e.getKey();
+            if (line >= oldEnd) {
+                moved.put(line + shift, e.getValue());
+            }
+            return line >= first;
+        });
+        mEntries.putAll(moved);
+    }
+
+    /**
+     * Drops every entry.
+     */
+    void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Prefix widths of a single line, measured lazily up to the furthest requested column.
+     */
+    private static final class LineWidths {
+        private final String mText;
+        private int[] mWidths;
+        private int mMeasured;
+
+        private LineWidths(String text) {
+            mText = text;
+            mWidths = new int[Math.min(text.length(), 64) + 1];
+        }
+
+        private int columnX(FontMetrics fontMetrics, int column) {
+            if (column > mMeasured) {
+                if (column >= mWidths.length) {
+                    int[] bigger = new int[Math.min(Math.max(column + 1, mWidths.length * 2), mText.length() + 1)];
+                    System.arraycopy(mWidths, 0, bigger, 0, mMeasured + 1);
+                    mWidths = bigger;
+                }
+                for (int i = mMeasured; i < column; i++) {
+                    mWidths[i + 1] = mWidths[i] + width(fontMetrics, i);
+                }
+                mMeasured = column;
+            }
+            return mWidths[column];
+        }
+
+        /**
+         * Returns the width added by the char at the index. A surrogate pair is measured as one
+         * code point, its width is added at its low surrogate, so the column between the two
+         * halves is at the x of the pair.
+         */
+        private int width(FontMetrics fontMetrics, int index) {
+            final char c = mText.charAt(index);
+            if (Character.isHighSurrogate(c) && index + 1 < mText.length()
+                    && Character.isLowSurrogate(mText.charAt(index + 1))) {
+                return 0;
+            }
+            if (Character.isLowSurrogate(c) && index > 0 && Character.isHighSurrogate(mText.charAt(index - 1))) {
+                return fontMetrics.charWidth(mText.codePointAt(index - 1));
+            }
+            return fontMetrics.charWidth(c);
+        }
+    }
+}
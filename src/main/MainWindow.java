@@ -1,26 +1,30 @@
 package main;
 
 import javax.swing.*;
+import java.nio.file.Paths;
 
 /**
  * TODO: Javadoc.
  */
 public class MainWindow {
 
-    private static void createAndShowGui() {
+    private static void createAndShowGui(String[] args) {
         JFrame frame = new JFrame("Text Editor");
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
 
         TextEditor textEditor = new TextEditor();
         textEditor.setFocusTraversalKeysEnabled(false);
         frame.add(textEditor);
+        if (args.length > 0) {
+            textEditor.open(Paths.get(args[0]));
+        }
 
         frame.pack();
         frame.setVisible(true);
     }
 
     public static void main(String[] args) {
-        javax.swing.SwingUtilities.invokeLater(MainWindow::createAndShowGui);
+        javax.swing.SwingUtilities.invokeLater(() -> createAndShowGui(args));
     }
 
 }
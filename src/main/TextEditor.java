@@ -3,10 +3,19 @@ package main;
 import main.actions.CopyPasteActions;
 import main.actions.Direction;
 import main.actions.MoveCursorAction;
+import model.ChunkedFileLoader;
 import model.ClipboardStack;
+import model.CursorObserver;
 import model.Location;
-import model.LocationRange;
+import model.TextChange;
 import model.TextEditorModel;
+import model.TextObserver;
+import model.TextPosition;
+import model.TextRange;
+import model.syntax.Highlighter;
+import model.syntax.Lexer;
+import model.syntax.LineTokens;
+import model.syntax.TokenType;
 
 import javax.swing.*;
 import java.awt.*;
@@ -14,6 +23,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * This component is a simple text editor.
@@ -40,8 +53,23 @@ public class TextEditor extends JComponent implements
     private static final String CONTROL_X = "control_x";
     private static final String CONTROL_V = "control_v";
     private static final String SHIFT_CONTROL_V = "shift_control_v";
+    private static final String CONTROL_Z = "control_z";
+    private static final String CONTROL_Y = "control_y";
+
+    private static final Map<TokenType, Color> TOKEN_COLORS = new EnumMap<>(TokenType.class);
+
+    static {
+        TOKEN_COLORS.put(TokenType.PLAIN, Color.black);
+        TOKEN_COLORS.put(TokenType.KEYWORD, new Color(0, 0, 160));
+        TOKEN_COLORS.put(TokenType.STRING, new Color(0, 128, 0));
+        TOKEN_COLORS.put(TokenType.NUMBER, new Color(0, 0, 255));
+        TOKEN_COLORS.put(TokenType.COMMENT, Color.gray);
+    }
 
     private TextEditorModel mTextEditorModel;
+    private Highlighter mHighlighter;
+    private final LineWidthCache mLineWidthCache = new LineWidthCache();
+    private final WrapLayout mWrapLayout = new WrapLayout();
 
     /**
      * Constructor for {@link TextEditor}.
@@ -58,11 +86,270 @@ public class TextEditor extends JComponent implements
         String initialText = "Hello world!\n" +
                 "Good to see you again!\n" +
                 "How do you do!";
-        mTextEditorModel = new TextEditorModel(initialText);
+        setModel(new TextEditorModel(initialText), null);
+    }
+
+    /**
+     * Method sets the {@link TextEditorModel} displayed by this component.
+     *
+     * @param model {@link TextEditorModel}.
+     * @param lexer {@link Lexer} highlighting the text, null to draw it plain.
+     */
+    private void setModel(TextEditorModel model, Lexer lexer) {
+        if (mHighlighter != null) {
+            mHighlighter.detach();
+            mHighlighter = null;
+        }
+        mTextEditorModel = model;
+        mLineWidthCache.clear();
+        mWrapLayout.reset(model.lineCount());
+        if (lexer != null) {
+            mHighlighter = new Highlighter(model, lexer, SwingUtilities::invokeLater);
+            mHighlighter.addHighlightObserver((firstLine, lastLine) -> {
+                if (getFont() == null) {
+                    repaint();
+                } else {
+                    repaintLines(firstLine, lastLine);
+                }
+            });
+        }
 
         //What to do when cursor location changes.
-        mTextEditorModel.addCursorObserver(loc -> repaint());
-        mTextEditorModel.addTextObserver(this::repaint);
+        mTextEditorModel.addCursorObserver(new CursorObserver() {
+            @Override
+            public void updateCursorLocation(Location loc) {
+                repaint();
+            }
+
+            @Override
+            public void updateCursorLocation(Location oldLoc, Location newLoc) {
+                repaintCursorMove(oldLoc, newLoc);
+            }
+        });
+        mTextEditorModel.addTextObserver(new TextObserver() {
+            @Override
+            public void updateText() {
+                mLineWidthCache.clear();
+                mWrapLayout.reset(mTextEditorModel.lineCount());
+                repaint();
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                final int oldRows = mWrapLayout.firstRow(change.getFirstLine() + change.getOldLineCount())
+                        - mWrapLayout.firstRow(change.getFirstLine());
+                mLineWidthCache.invalidate(change);
+                mWrapLayout.invalidate(change);
+                repaintTextChange(change, oldRows);
+            }
+        });
+        repaint();
+    }
+
+    /**
+     * Returns metrics of the component font and makes sure the wrap layout matches the font
+     * and the width of the component. If it doesn't, the layout is dropped and everything
+     * is repainted.
+     *
+     * @return {@link FontMetrics}.
+     */
+    private FontMetrics layoutMetrics() {
+        final FontMetrics fontMetrics = getFontMetrics(getFont());
+        updateLayout(fontMetrics);
+        return fontMetrics;
+    }
+
+    /**
+     * Wraps rows to the width of the component, or to the preferred width before it is shown.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     */
+    private void updateLayout(FontMetrics fontMetrics) {
+        final int width = (getWidth() > 0 ? getWidth() : COMP_WIDTH) - 2 * mPadding;
+        if (mWrapLayout.setWidth(fontMetrics, width, mTextEditorModel.lineCount())) {
+            repaint();
+        }
+    }
+
+    /**
+     * Wraps the lines from (inclusive) first to (exclusive) last line, unless there are more
+     * of them than fit on the screen.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param first       primitive int.
+     * @param last        primitive int.
+     * @return primitive boolean, true if the lines were wrapped.
+     */
+    private boolean wrapLines(FontMetrics fontMetrics, int first, int last) {
+        if (last - first > getHeight() / fontMetrics.getMaxAscent() + 1) {
+            return false;
+        }
+
+        final Iterator<String> lines = mTextEditorModel.linesRange(first, last);
+        for (int i = first; lines.hasNext(); i++) {
+            mWrapLayout.breaks(fontMetrics, i, lines.next());
+        }
+        return true;
+    }
+
+    /**
+     * Repaints everything below the row.
+     *
+     * @param row primitive int.
+     */
+    private void repaintFromRow(int row) {
+        final int y = row * getFontMetrics(getFont()).getMaxAscent() + mPadding;
+        repaint(0, y, getWidth(), Math.max(getHeight() - y, 0));
+    }
+
+    /**
+     * Repaints the rows of lines from (inclusive) first to (exclusive) last line.
+     * If wrapping them moved the rows below, everything below is repainted.
+     *
+     * @param first primitive int.
+     * @param last  primitive int.
+     */
+    private void repaintLines(int first, int last) {
+        final FontMetrics fontMetrics = layoutMetrics();
+        final int verticalStep = fontMetrics.getMaxAscent();
+        final int oldRows = mWrapLayout.firstRow(last) - mWrapLayout.firstRow(first);
+        if (!wrapLines(fontMetrics, first, last)) {
+            repaintFromRow(mWrapLayout.firstRow(first));
+            return;
+        }
+
+        final int rows = mWrapLayout.firstRow(last) - mWrapLayout.firstRow(first);
+        if (rows != oldRows) {
+            repaintFromRow(mWrapLayout.firstRow(first));
+            return;
+        }
+        final int y = mWrapLayout.firstRow(first) * verticalStep + mPadding;
+
+//        Descent and selection overhang of the last row reach below its strip.
+        repaint(0, y, getWidth(), rows * verticalStep + fontMetrics.getMaxDescent() + 2);
+    }
+
+    /**
+     * Repaints only the rows of the lines touched by the change. If rows moved everything
+     * below the change is repainted.
+     *
+     * @param change  {@link TextChange}.
+     * @param oldRows primitive int, number of rows the changed lines had before the change.
+     */
+    private void repaintTextChange(TextChange change, int oldRows) {
+        if (getFont() == null) {
+            repaint();
+            return;
+        }
+
+        final FontMetrics fontMetrics = layoutMetrics();
+        final int first = change.getFirstLine();
+        final int last = first + change.getNewLineCount();
+        if (!wrapLines(fontMetrics, first, last)
+                || mWrapLayout.firstRow(last) - mWrapLayout.firstRow(first) != oldRows) {
+            repaintFromRow(mWrapLayout.firstRow(first));
+        } else {
+            repaintLines(first, last);
+        }
+    }
+
+    /**
+     * Repaints the old and the new caret. While selecting, the lines between them are
+     * repainted as well because the selection grew or shrank there.
+     *
+     * @param oldLoc {@link Location} before the move.
+     * @param newLoc {@link Location} after the move.
+     */
+    private void repaintCursorMove(Location oldLoc, Location newLoc) {
+        if (getFont() == null) {
+            repaint();
+        } else if (mTextEditorModel.getSelection() != null) {
+            repaintLines(Math.min(oldLoc.getY(), newLoc.getY()), Math.max(oldLoc.getY(), newLoc.getY()) + 1);
+        } else {
+            repaintCaret(oldLoc);
+            repaintCaret(newLoc);
+        }
+    }
+
+    /**
+     * Repaints the rectangle of the caret drawn at the given location.
+     *
+     * @param loc {@link Location}.
+     */
+    private void repaintCaret(Location loc) {
+        if (loc.getY() >= mTextEditorModel.lineCount()) {
+            return;
+        }
+
+        final FontMetrics fontMetrics = layoutMetrics();
+        final int verticalStep = fontMetrics.getMaxAscent();
+        final String line = mTextEditorModel.getLine(loc.getY());
+        final int column = Math.min(loc.getX(), line.length());
+        final int[] breaks = mWrapLayout.breaks(fontMetrics, loc.getY(), line);
+        final int row = mWrapLayout.firstRow(loc.getY()) + WrapLayout.rowOf(breaks, column);
+        final int x = rowX(fontMetrics, loc.getY(), line, breaks, column) + mPadding;
+
+        repaint(x - 1, row * verticalStep + mPadding, 3, verticalStep + 1);
+    }
+
+    /**
+     * Returns the pixel x coordinate of the column inside its row, padding not included.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param lineIndex   primitive int.
+     * @param line        {@link String} content of the line.
+     * @param breaks      array of primitive ints, breaks of the line from {@link WrapLayout}.
+     * @param column      primitive int.
+     * @return primitive int.
+     */
+    private int rowX(FontMetrics fontMetrics, int lineIndex, String line, int[] breaks, int column) {
+        final int rowStart = WrapLayout.rowStart(breaks, WrapLayout.rowOf(breaks, column));
+        return columnX(fontMetrics, lineIndex, line, column) - columnX(fontMetrics, lineIndex, line, rowStart);
+    }
+
+    /**
+     * Returns the pixel x coordinate of the column inside the line, padding not included.
+     * Widths are taken from {@link LineWidthCache}, so repeated calls don't measure the line again.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param lineIndex   primitive int.
+     * @param line        {@link String} content of the line.
+     * @param column      primitive int.
+     * @return primitive int.
+     */
+    private int columnX(FontMetrics fontMetrics, int lineIndex, String line, int column) {
+        return mLineWidthCache.columnX(fontMetrics, lineIndex, line, column);
+    }
+
+    /**
+     * Removes the selection and repaints the lines it covered.
+     */
+    private void clearSelection() {
+        final TextRange selectionRange = mTextEditorModel.getSelection();
+        if (selectionRange != null) {
+            mTextEditorModel.clearSelection();
+            if (getFont() == null) {
+                repaint();
+            } else {
+                repaintLines(selectionRange.getBottomRightStart().getY(), selectionRange.getBottomRightEnd().getY() + 1);
+            }
+        }
+    }
+
+    /**
+     * Replaces the displayed text with the content of the given file.
+     * File is read in chunks on a background thread and shown as it arrives. It is highlighted
+     * if its extension names a known kind of source.
+     *
+     * @param path {@link Path} of an UTF-8 text file.
+     */
+    public void open(Path path) {
+        setModel(new TextEditorModel(""), Lexer.forFileName(String.valueOf(path.getFileName())));
+        new ChunkedFileLoader(mTextEditorModel, SwingUtilities::invokeLater).load(path)
+                .exceptionally(e -> {
+                    JOptionPane.showMessageDialog(this, "Cannot open " + path + ": " + e.getMessage());
+                    return null;
+                });
     }
 
     /**
@@ -99,7 +386,7 @@ public class TextEditor extends JComponent implements
         actionMap.put(BACKSPACE, new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                final LocationRange selection = mTextEditorModel.getSelectionRange();
+                final TextRange selection = mTextEditorModel.getSelection();
                 if (selection != null) {
                     mTextEditorModel.deleteRange(selection);
                 } else {
@@ -110,7 +397,7 @@ public class TextEditor extends JComponent implements
         actionMap.put(DELETE, new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                final LocationRange selection = mTextEditorModel.getSelectionRange();
+                final TextRange selection = mTextEditorModel.getSelection();
                 if (selection != null) {
                     mTextEditorModel.deleteRange(selection);
                 } else {
@@ -140,11 +427,34 @@ public class TextEditor extends JComponent implements
         actionMap.put(SHIFT_CONTROL_V, new CopyPasteActions.PopPaste(this));
         //endregion
 
+        //region UndoRedo
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), CONTROL_Z);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), CONTROL_Y);
+        //endregion
+
+        //region UndoRedoActions
+        actionMap.put(CONTROL_Z, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                clearSelection();
+                mTextEditorModel.getUndoManager().undo();
+            }
+        });
+        actionMap.put(CONTROL_Y, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                clearSelection();
+                mTextEditorModel.getUndoManager().redo();
+            }
+        });
+        //endregion
+
         addKeyListener(this);
     }
 
     /**
      * Method displays text from {@link TextEditorModel} for this object.
+     * Long lines are wrapped to the width of the component.
      *
      * @param g the <code>Graphics</code> context in which to paint
      */
@@ -152,120 +462,143 @@ public class TextEditor extends JComponent implements
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        final int verticalStep = g.getFontMetrics().getMaxAscent();
+        final FontMetrics fontMetrics = g.getFontMetrics();
+        final int verticalStep = fontMetrics.getMaxAscent();
+        updateLayout(fontMetrics);
+
+        //region VisibleLines
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+//        One extra row on each side covers descenders and the selection rectangle overhang.
+        final int firstVisibleRow = Math.max(0, (clip.y - mPadding) / verticalStep - 1);
+        final int lastVisibleRow = (clip.y + clip.height - mPadding) / verticalStep + 2;
+        final int firstVisibleLine = mWrapLayout.lineAt(firstVisibleRow);
+        final int rowCount = mWrapLayout.rowCount();
+
+//        Wrapping the visible lines may give them more rows and push the lines below further down.
+        int lastVisibleLine = firstVisibleLine;
+        while (lastVisibleLine < mTextEditorModel.lineCount() && mWrapLayout.firstRow(lastVisibleLine) < lastVisibleRow) {
+            mWrapLayout.breaks(fontMetrics, lastVisibleLine, mTextEditorModel.getLine(lastVisibleLine));
+            lastVisibleLine++;
+        }
+        if (mWrapLayout.rowCount() != rowCount) {
+            repaintFromRow(lastVisibleRow);
+        }
+        //endregion
 
         //region SelectionPaint
-        final LocationRange selectionRange = mTextEditorModel.getSelectionRange();
+        final TextRange selectionRange = mTextEditorModel.getSelection();
         if (selectionRange != null) {
-            Location start = selectionRange.getBottomRightStart();
-            Location end = selectionRange.getBottomRightEnd();
-
-            if (start.getY() == end.getY()) {
-                //region RectForSameLine
-                final String substringSelection = mTextEditorModel.getLine(start.getY())
-                        .substring(start.getX(), end.getX());
-                final String substringStart = mTextEditorModel.getLine(start.getY())
-                        .substring(0, start.getX());
-                final int substringStartWidth = g.getFontMetrics().stringWidth(substringStart);
-
-                g.setColor(Color.orange);
-                g.fillRect(
-                        substringStartWidth + mPadding,
-                        start.getY() * verticalStep + mPadding,
-                        g.getFontMetrics().stringWidth(substringSelection),
-                        verticalStep + 2
-                );
-                g.setColor(Color.black);
-                //endregion
-            } else {
-                //region RectForStart
-                final String substringStartPos = mTextEditorModel.getLine(start.getY())
-                        .substring(0, start.getX());
-                final String startSubstring = mTextEditorModel.getLine(start.getY())
-                        .substring(start.getX(), mTextEditorModel.getLine(start.getY()).length());
-                final int substringStartWidth = g.getFontMetrics().stringWidth(substringStartPos);
-
-                g.setColor(Color.orange);
-                g.fillRect(
-                        substringStartWidth + mPadding,
-                        start.getY() * verticalStep + mPadding,
-                        g.getFontMetrics().stringWidth(startSubstring),
-                        verticalStep + 2
-                );
-                g.setColor(Color.black);
-                //endregion
-
-                //region RectForBetween
-                for (int i = start.getY() + 1; i < end.getY(); i++) {
-                    final String line = mTextEditorModel.getLine(i);
-                    final int width = g.getFontMetrics().stringWidth(line);
-                    g.setColor(Color.orange);
+            final TextPosition start = selectionRange.getBottomRightStart();
+            final TextPosition end = selectionRange.getBottomRightEnd();
+            final int first = Math.max(start.getY(), firstVisibleLine);
+            final int last = Math.min(end.getY() + 1, lastVisibleLine);
+
+            g.setColor(Color.orange);
+            for (int i = first; i < last; i++) {
+                final String line = mTextEditorModel.getLine(i);
+                final int[] breaks = mWrapLayout.breaks(fontMetrics, i, line);
+                final int from = i == start.getY() ? start.getX() : 0;
+                final int to = i == end.getY() ? end.getX() : line.length();
+
+                for (int row = 0; row <= breaks.length; row++) {
+                    final int rowStart = WrapLayout.rowStart(breaks, row);
+                    final int selectionStart = Math.max(from, rowStart);
+                    final int selectionEnd = Math.min(to, WrapLayout.rowEnd(breaks, row, line.length()));
+                    if (selectionStart >= selectionEnd) {
+                        continue;
+                    }
+
+                    final int rowX = columnX(fontMetrics, i, line, rowStart);
+                    final int startX = columnX(fontMetrics, i, line, selectionStart);
                     g.fillRect(
-                            mPadding,
-                            i * verticalStep + mPadding,
-                            width,
+                            startX - rowX + mPadding,
+                            (mWrapLayout.firstRow(i) + row) * verticalStep + mPadding,
+                            columnX(fontMetrics, i, line, selectionEnd) - startX,
                             verticalStep + 2
                     );
-                    g.setColor(Color.black);
                 }
-                //endregion
-
-                //region RectForEnd
-                final String substringEnd = mTextEditorModel.getLine(end.getY())
-                        .substring(0, end.getX());
-                final int substringEndWidth = g.getFontMetrics().stringWidth(substringEnd);
-
-                g.setColor(Color.orange);
-                g.fillRect(
-                        mPadding,
-                        end.getY() * verticalStep + mPadding,
-                        substringEndWidth,
-                        verticalStep + 2
-                );
-                g.setColor(Color.black);
-                //endregion
             }
+            g.setColor(Color.black);
         }
         //endregion
 
         //region cursorPaint
         final Location cursorLocation = mTextEditorModel.getCursorLocation();
-        final String cursorSubstring = mTextEditorModel.getLine(cursorLocation.getY())
-                .substring(0, cursorLocation.getX());
-        final int cursorSubstringWidth = g.getFontMetrics().stringWidth(cursorSubstring);
-//        System.out.println(cursorLocation.toString());
+        final String cursorLine = mTextEditorModel.getLine(cursorLocation.getY());
+        final int[] cursorBreaks = mWrapLayout.breaks(fontMetrics, cursorLocation.getY(), cursorLine);
+        final int cursorX = rowX(fontMetrics, cursorLocation.getY(), cursorLine, cursorBreaks, cursorLocation.getX());
+        final int cursorY = (mWrapLayout.firstRow(cursorLocation.getY())
+                + WrapLayout.rowOf(cursorBreaks, cursorLocation.getX())) * verticalStep + mPadding;
         g.drawLine(
-                cursorSubstringWidth + mPadding,
-                cursorLocation.getY() * verticalStep + mPadding,
-                cursorSubstringWidth + mPadding,
-                (cursorLocation.getY() * verticalStep + mPadding) + verticalStep
+                cursorX + mPadding,
+                cursorY,
+                cursorX + mPadding,
+                cursorY + verticalStep
         );
         //endregion
 
         //region testText
-        Point writingCoordinates = new Point(
-                mPadding,
-                verticalStep + mPadding
-        );
-        mTextEditorModel.allLines().forEachRemaining(s -> {
-            g.drawString(s, writingCoordinates.x, writingCoordinates.y);
-            writingCoordinates.y += verticalStep;
-        });
+        final Iterator<String> lines = mTextEditorModel.linesRange(firstVisibleLine, lastVisibleLine);
+        for (int i = firstVisibleLine; lines.hasNext(); i++) {
+            final String line = lines.next();
+            final int[] breaks = mWrapLayout.breaks(fontMetrics, i, line);
+            int y = (mWrapLayout.firstRow(i) + 1) * verticalStep + mPadding;
+            for (int row = 0; row <= breaks.length; row++) {
+                drawRow(g, i, line, WrapLayout.rowStart(breaks, row), WrapLayout.rowEnd(breaks, row, line.length()), y);
+                y += verticalStep;
+            }
+        }
+        g.setColor(Color.black);
         //endregion
     }
 
+    /**
+     * Draws a row of the line in the colors of its tokens. Lines not tokenized yet, and every
+     * line of text without a highlighter, are drawn in black.
+     *
+     * @param g     {@link Graphics}.
+     * @param index primitive int, index of the line.
+     * @param line  {@link String} content of the line.
+     * @param from  primitive int, column where the row begins.
+     * @param to    primitive int, column where the row ends.
+     * @param y     primitive int, baseline of the row.
+     */
+    private void drawRow(Graphics g, int index, String line, int from, int to, int y) {
+        final LineTokens tokens = mHighlighter == null ? null : mHighlighter.getTokens(index);
+        if (tokens == null || tokens.count() == 0) {
+            g.setColor(Color.black);
+            g.drawString(line.substring(from, to), mPadding, y);
+            return;
+        }
+
+        final int rowX = columnX(g.getFontMetrics(), index, line, from);
+        for (int i = 0; i < tokens.count(); i++) {
+            final int start = Math.max(tokens.start(i), from);
+            final int end = Math.min(i + 1 < tokens.count() ? tokens.start(i + 1) : line.length(), to);
+            if (start < end) {
+                g.setColor(TOKEN_COLORS.get(tokens.type(i)));
+                g.drawString(
+                        line.substring(start, end),
+                        columnX(g.getFontMetrics(), index, line, start) - rowX + mPadding,
+                        y
+                );
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void onRightMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        Location cursorLocation = mTextEditorModel.getCursorLocation();
+        final TextRange selectionRange = mTextEditorModel.getSelection();
 
         if (selectionRange != null) {
-            cursorLocation.setLocation(selectionRange.getBottomRightEnd());
-            repaint();
-            mTextEditorModel.setSelectionRange(null);
+            clearSelection();
+            mTextEditorModel.moveCursorTo(selectionRange.getBottomRightEnd());
         } else {
             mTextEditorModel.moveCursorRight();
         }
@@ -276,13 +609,11 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onLeftMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        Location cursorLocation = mTextEditorModel.getCursorLocation();
+        final TextRange selectionRange = mTextEditorModel.getSelection();
 
         if (selectionRange != null) {
-            cursorLocation.setLocation(selectionRange.getBottomRightStart());
-            repaint();
-            mTextEditorModel.setSelectionRange(null);
+            clearSelection();
+            mTextEditorModel.moveCursorTo(selectionRange.getBottomRightStart());
         } else {
             mTextEditorModel.moveCursorLeft();
         }
@@ -293,8 +624,8 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onUpMove() {
-        mTextEditorModel.moveCursorUp();
-        mTextEditorModel.setSelectionRange(null);
+        clearSelection();
+        moveCursorByRow(false);
     }
 
     /**
@@ -302,8 +633,8 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onDownMove() {
-        mTextEditorModel.moveCursorDown();
-        mTextEditorModel.setSelectionRange(null);
+        clearSelection();
+        moveCursorByRow(true);
     }
 
     /**
@@ -311,19 +642,8 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onSelectionRightMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        if (selectionRange == null) {
-            Location cursorLocation = mTextEditorModel.getCursorLocation();
-            selectionRange = new LocationRange(
-                    new Location(cursorLocation),
-                    cursorLocation
-            );
-            mTextEditorModel.setSelectionRange(selectionRange);
-            mTextEditorModel.moveCursorRight();
-        } else {
-            mTextEditorModel.moveCursorRight();
-        }
-//        System.out.println(selectionRange.toString());
+        mTextEditorModel.startSelection();
+        mTextEditorModel.moveCursorRight();
     }
 
     /**
@@ -331,41 +651,24 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onSelectionLeftMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        if (selectionRange == null) {
-            Location cursorLocation = mTextEditorModel.getCursorLocation();
-            selectionRange = new LocationRange(
-                    new Location(cursorLocation),
-                    cursorLocation
-            );
-            mTextEditorModel.setSelectionRange(selectionRange);
-            mTextEditorModel.moveCursorLeft();
-        } else {
-            mTextEditorModel.moveCursorLeft();
-        }
-//        System.out.println(selectionRange.toString());
+        mTextEditorModel.startSelection();
+        mTextEditorModel.moveCursorLeft();
     }
 
     @Override
     public void onCopy() {
-        if (mTextEditorModel.getSelectionRange() != null) {
-            mTextEditorModel.getClipboardStack().push(
-                    mTextEditorModel.selectionToString(
-                            mTextEditorModel.getSelectionRange()
-                    )
-            );
+        final TextRange selection = mTextEditorModel.getSelection();
+        if (selection != null) {
+            mTextEditorModel.copy(selection);
         }
     }
 
     @Override
     public void onCut() {
-        if (mTextEditorModel.getSelectionRange() != null) {
-            mTextEditorModel.getClipboardStack().push(
-                    mTextEditorModel.selectionToString(
-                            mTextEditorModel.getSelectionRange()
-                    )
-            );
-            mTextEditorModel.deleteRange(mTextEditorModel.getSelectionRange());
+        final TextRange selection = mTextEditorModel.getSelection();
+        if (selection != null) {
+            mTextEditorModel.copy(selection);
+            mTextEditorModel.deleteRange(selection);
         }
     }
 
@@ -373,9 +676,7 @@ public class TextEditor extends JComponent implements
     public void onPeekPaste() {
         ClipboardStack clipboardStack = mTextEditorModel.getClipboardStack();
         if (!clipboardStack.isEmpty()){
-            mTextEditorModel.insert(
-                    clipboardStack.peek()
-            );
+            clipboardStack.peekPaste(mTextEditorModel);
         }
     }
 
@@ -383,9 +684,7 @@ public class TextEditor extends JComponent implements
     public void onPopPaste() {
         ClipboardStack clipboardStack = mTextEditorModel.getClipboardStack();
         if (!clipboardStack.isEmpty()) {
-            mTextEditorModel.insert(
-                    clipboardStack.pop()
-            );
+            clipboardStack.popPaste(mTextEditorModel);
         }
     }
 
@@ -394,19 +693,8 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onSelectionUpMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        if (selectionRange == null) {
-            Location cursorLocation = mTextEditorModel.getCursorLocation();
-            selectionRange = new LocationRange(
-                    new Location(cursorLocation),
-                    cursorLocation
-            );
-            mTextEditorModel.setSelectionRange(selectionRange);
-            mTextEditorModel.moveCursorUp();
-        } else {
-            mTextEditorModel.moveCursorUp();
-        }
-//        System.out.println(selectionRange.toString());
+        mTextEditorModel.startSelection();
+        moveCursorByRow(false);
     }
 
     /**
@@ -414,34 +702,75 @@ public class TextEditor extends JComponent implements
      */
     @Override
     public void onSelectionDownMove() {
-        LocationRange selectionRange = mTextEditorModel.getSelectionRange();
-        if (selectionRange == null) {
-            Location cursorLocation = mTextEditorModel.getCursorLocation();
-            selectionRange = new LocationRange(
-                    new Location(cursorLocation),
-                    cursorLocation
-            );
-            mTextEditorModel.setSelectionRange(selectionRange);
-            mTextEditorModel.moveCursorDown();
-        } else {
-            mTextEditorModel.moveCursorDown();
+        mTextEditorModel.startSelection();
+        moveCursorByRow(true);
+    }
+
+    /**
+     * Moves the cursor to the visual row above or below, to the column nearest to its
+     * current x coordinate. Rows of a wrapped line are visited one by one.
+     *
+     * @param down primitive boolean, true to move down.
+     */
+    private void moveCursorByRow(boolean down) {
+        if (getFont() == null) {
+            if (down) {
+                mTextEditorModel.moveCursorDown();
+            } else {
+                mTextEditorModel.moveCursorUp();
+            }
+            return;
+        }
+
+        final FontMetrics fontMetrics = layoutMetrics();
+        final Location cursor = mTextEditorModel.getCursorLocation();
+        final String line = mTextEditorModel.getLine(cursor.getY());
+        final int[] breaks = mWrapLayout.breaks(fontMetrics, cursor.getY(), line);
+        final int x = rowX(fontMetrics, cursor.getY(), line, breaks, cursor.getX());
+        final int row = WrapLayout.rowOf(breaks, cursor.getX()) + (down ? 1 : -1);
+
+        int targetLine = cursor.getY();
+        String target = line;
+        int[] targetBreaks = breaks;
+        int targetRow = row;
+        if (row < 0 || row > breaks.length) {
+            targetLine += down ? 1 : -1;
+            if (targetLine < 0 || targetLine >= mTextEditorModel.lineCount()) {
+                return;
+            }
+            target = mTextEditorModel.getLine(targetLine);
+            targetBreaks = mWrapLayout.breaks(fontMetrics, targetLine, target);
+            targetRow = down ? 0 : targetBreaks.length;
+        }
+
+//        Column at a break belongs to the next row, so rows other than the last end one column earlier.
+        final int from = WrapLayout.rowStart(targetBreaks, targetRow);
+        final int to = targetRow < targetBreaks.length ? targetBreaks[targetRow] - 1 : target.length();
+        final int rowX = columnX(fontMetrics, targetLine, target, from);
+        int column = from;
+        while (column < to && Math.abs(columnX(fontMetrics, targetLine, target, column + 1) - rowX - x)
+                <= Math.abs(columnX(fontMetrics, targetLine, target, column) - rowX - x)) {
+            column++;
         }
-//        System.out.println(selectionRange.toString());
+        mTextEditorModel.moveCursorTo(new TextPosition(column, targetLine));
     }
 
     @Override
     public void keyTyped(KeyEvent e) {
         char c = e.getKeyChar();
-        LocationRange selection = mTextEditorModel.getSelectionRange();
+        final TextRange selection = mTextEditorModel.getSelection();
         boolean asciiFilter = c != 8 &&
                 c != 127 &&
                 (e.getModifiers() == 0 || e.getModifiers() == InputEvent.SHIFT_MASK);
 //        c != 8 && c != 127
         if (asciiFilter) {
-            if (selection != null) {
-                mTextEditorModel.deleteRange(selection);
-            }
-            mTextEditorModel.insert(c);
+//            Replacing the selection is repainted once.
+            mTextEditorModel.batch(() -> {
+                if (selection != null) {
+                    mTextEditorModel.deleteRange(selection);
+                }
+                mTextEditorModel.insert(c);
+            });
         }
     }
 
@@ -0,0 +1,247 @@
+package main;
+
+import model.PrefixSums;
+import model.TextChange;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.Arrays;
+
+/**
+ * Soft wrap layout of {@link TextEditor}, maps lines of the model to visual rows.
+ * <p>
+ * Every line is wrapped at the last space which fits the width, or inside a word if it doesn't
+ * have one. The number of rows of every line is kept in {@link PrefixSums} together with the
+ * columns where its rows begin, so the first row of a line and the line shown at a row are
+ * found in O(log n). Lines are wrapped lazily when they are first needed. Until then they
+ * count as a single row. Edits drop only the cached rows of the changed lines in
+ * O(k + log n), lines after them are not touched. Resizing drops every line, which is wrapped
+ * again once it is painted or looked up.
+ */
+public final class WrapLayout {
+
+    private static final int[] NO_BREAKS = new int[0];
+
+    /**
+     * Number of rows of every line. Item of a line is an array of columns where its second and
+     * every further row begin, null if the line isn't wrapped yet.
+     */
+    private PrefixSums mRows;
+    private Font mFont;
+    private int mWidth;
+
+    public WrapLayout() {
+        mRows = new PrefixSums(new int[0]);
+    }
+
+    /**
+     * Sets the font and the width of rows. If either changed every line is wrapped again.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param width       primitive int, width of a row in pixels.
+     * @param lineCount   primitive int, number of lines in the model.
+     * @return primitive boolean, true if the layout was dropped.
+     */
+    public boolean setWidth(FontMetrics fontMetrics, int width, int lineCount) {
+        if (width == mWidth && fontMetrics.getFont().equals(mFont) && lineCount == mRows.size()) {
+            return false;
+        }
+
+        mFont = fontMetrics.getFont();
+        mWidth = width;
+        reset(lineCount);
+        return true;
+    }
+
+    /**
+     * Drops every wrapped line.
+     *
+     * @param lineCount primitive int, number of lines in the model.
+     */
+    public void reset(int lineCount) {
+        mRows = new PrefixSums(singleRows(lineCount));
+    }
+
+    /**
+     * Drops wrapped rows of the changed lines. Lines after the change keep their rows.
+     *
+     * @param change {@link TextChange}.
+     */
+    public void invalidate(TextChange change) {
+        final int first = Math.min(change.getFirstLine(), mRows.size());
+        final int oldCount = Math.min(change.getOldLineCount(), mRows.size() - first);
+        mRows.replace(first, oldCount, singleRows(change.getNewLineCount()));
+    }
+
+    /**
+     * Returns the total number of rows.
+     *
+     * @return primitive int.
+     */
+    public int rowCount() {
+        return (int) mRows.total();
+    }
+
+    /**
+     * Returns the number of lines the layout knows about.
+     *
+     * @return primitive int.
+     */
+    public int lineCount() {
+        return mRows.size();
+    }
+
+    /**
+     * Returns the first row of the line.
+     *
+     * @param line primitive int, from 0 to {@link WrapLayout#lineCount()}.
+     * @return primitive int.
+     */
+    public int firstRow(int line) {
+        return (int) mRows.sum(Math.min(line, mRows.size()));
+    }
+
+    /**
+     * Returns the line shown at the row, the last line for rows after the text.
+     *
+     * @param row primitive int.
+     * @return primitive int.
+     */
+    public int lineAt(int row) {
+        return Math.min(mRows.indexOf(Math.max(row, 0)), mRows.size() - 1);
+    }
+
+    /**
+     * Returns true if the line is wrapped.
+     *
+     * @param line primitive int.
+     * @return primitive boolean.
+     */
+    public boolean isWrapped(int line) {
+        return mRows.getItem(line) != null;
+    }
+
+    /**
+     * Wraps the line unless it is wrapped already and returns columns where its rows begin,
+     * the first row not included.
+     *
+     * @param fontMetrics {@link FontMetrics} used for drawing.
+     * @param line        primitive int.
+     * @param text        {@link String} content of the line.
+     * @return array of primitive ints, must not be modified.
+     */
+    public int[] breaks(FontMetrics fontMetrics, int line, String text) {
+        int[] breaks = (int[]) mRows.getItem(line);
+        if (breaks == null) {
+            breaks = wrap(fontMetrics, text, mWidth);
+            mRows.set(line, breaks.length + 1);
+            mRows.setItem(line, breaks);
+        }
+        return breaks;
+    }
+
+    /**
+     * Returns the row of the line (counted from its first row) the column is shown in.
+     * Column at a break is shown at the beginning of the next row.
+     *
+     * @param breaks array returned by {@link WrapLayout#breaks(FontMetrics, int, String)}.
+     * @param column primitive int.
+     * @return primitive int.
+     */
+    public static int rowOf(int[] breaks, int column) {
+        int low = 0;
+        int high = breaks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (breaks[mid] <= column) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the column where the row of the line begins.
+     *
+     * @param breaks array returned by {@link WrapLayout#breaks(FontMetrics, int, String)}.
+     * @param row    primitive int, row of the line.
+     * @return primitive int.
+     */
+    public static int rowStart(int[] breaks, int row) {
+        return row == 0 ? 0 : breaks[row - 1];
+    }
+
+    /**
+     * Returns the column where the row of the line ends.
+     *
+     * @param breaks array returned by {@link WrapLayout#breaks(FontMetrics, int, String)}.
+     * @param row    primitive int, row of the line.
+     * @param length primitive int, length of the line.
+     * @return primitive int.
+     */
+    public static int rowEnd(int[] breaks, int row, int length) {
+        return row < breaks.length ? breaks[row] : length;
+    }
+
+    /**
+     * Returns row counts of lines which are not wrapped yet.
+     */
+    private static int[] singleRows(int lineCount) {
+        final int[] rows = new int[lineCount];
+        Arrays.fill(rows, 1);
+        return rows;
+    }
+
+    /**
+     * Splits the text into rows not wider than the width. Every row holds at least one character.
+     */
+    private static int[] wrap(FontMetrics fontMetrics, String text, int width) {
+        if (width <= 0) {
+            return NO_BREAKS;
+        }
+
+        int[] breaks = NO_BREAKS;
+        int count = 0;
+        int rowStart = 0;
+        int rowWidth = 0;
+        int lastSpace = -1;
+        int afterSpaceWidth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+//            Surrogate pair is measured as one code point and never split between rows.
+            final boolean pair = Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1));
+            final int charWidth = pair ? fontMetrics.charWidth(text.codePointAt(i)) : fontMetrics.charWidth(c);
+//            Spaces may hang over the edge, so a row never begins with the space it was broken at.
+            if (rowWidth + charWidth > width && i > rowStart && c != ' ') {
+                final int rowEnd;
+                if (lastSpace >= rowStart) {
+                    rowEnd = lastSpace + 1;
+                    rowWidth = afterSpaceWidth;
+                } else {
+                    rowEnd = i;
+                    rowWidth = 0;
+                }
+                if (count == breaks.length) {
+                    breaks = Arrays.copyOf(breaks, Math.max(4, count * 2));
+                }
+                breaks[count++] = rowEnd;
+                rowStart = rowEnd;
+            }
+
+            rowWidth += charWidth;
+            if (c == ' ') {
+                lastSpace = i;
+                afterSpaceWidth = 0;
+            } else {
+                afterSpaceWidth += charWidth;
+            }
+            if (pair) {
+                i++;
+            }
+        }
+        return count == breaks.length ? breaks : Arrays.copyOf(breaks, count);
+    }
+}
@@ -0,0 +1,146 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads a file into a {@link TextEditorModel} progressively.
+ * <p>
+ * The file is read in fixed-size chunks on a background thread. Every chunk is split into
+ * lines on that thread and then appended to the model through the given executor, so the
+ * model is only ever touched from the thread the executor runs on
+ * (e.g. {@link javax.swing.SwingUtilities#invokeLater(Runnable)} for a model shown in Swing).
+ * {@link TextObserver}s are updated after every appended chunk, so the beginning of the
+ * file can be shown while the rest is still being read.
+ */
+public class ChunkedFileLoader {
+
+    /**
+     * Default number of characters read at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of chunks read but not yet appended. Stops the reader from queueing
+     * the whole file on the executor when the model thread is busy.
+     */
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    private final TextEditorModel mModel;
+    private final Executor mModelExecutor;
+    private final int mChunkSize;
+    private final Charset mCharset;
+    private final Semaphore mPendingChunks;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Creates a loader for UTF-8 files with the default chunk size.
+     *
+     * @param model         {@link TextEditorModel} which receives the text.
+     * @param modelExecutor {@link Executor} running the appends on the model thread.
+     */
+    public ChunkedFileLoader(TextEditorModel model, Executor modelExecutor) {
+        this(model, modelExecutor, DEFAULT_CHUNK_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param model         {@link TextEditorModel} which receives the text.
+     * @param modelExecutor {@link Executor} running the appends on the model thread.
+     * @param chunkSize     primitive int, number of characters read at once.
+     * @param charset       {@link Charset} of the file.
+     */
+    public ChunkedFileLoader(TextEditorModel model, Executor modelExecutor, int chunkSize, Charset charset) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size has to be positive.");
+        }
+
+        mModel = model;
+        mModelExecutor = modelExecutor;
+        mChunkSize = chunkSize;
+        mCharset = charset;
+        mPendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+    }
+
+    /**
+     * Starts loading the file on a background thread. Text is appended after the
+     * current end of the model.
+     *
+     * @param path {@link Path}.
+     * @return {@link CompletableFuture} completed on the model thread after the last chunk
+     * has been appended, or exceptionally if the file cannot be read or the executor throws.
+     */
+    public CompletableFuture<Void> load(Path path) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Thread reader = new Thread(() -> read(path, result), "ChunkedFileLoader-" + path.getFileName());
+        reader.setDaemon(true);
+        reader.start();
+
+        return result;
+    }
+
+    /**
+     * Stops loading after the chunk being read. Text appended so far stays in the model.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Reads the file chunk by chunk. Runs on the background thread.
+     */
+    private void read(Path path, CompletableFuture<Void> result) {
+        char[] buffer = new char[mChunkSize];
+
+        try (Reader reader = new InputStreamReader(Files.newInputStream(path), mCharset)) {
+            int read;
+            while (!mCancelled && (read = reader.read(buffer)) != -1) {
+                List<String> lines = split(buffer, read);
+                mPendingChunks.acquire();
+                mModelExecutor.execute(() -> {
+//                    Released even if an observer throws, otherwise the reader would wait forever.
+                    try {
+                        mModel.appendLines(lines);
+                    } finally {
+                        mPendingChunks.release();
+                    }
+                });
+            }
+            mModelExecutor.execute(() -> result.complete(null));
+        } catch (IOException | RuntimeException e) {
+            mModelExecutor.execute(() -> result.completeExceptionally(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mModelExecutor.execute(() -> result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Splits a chunk by newlines. First line continues the last line of the previous chunk.
+     */
+    private static List<String> split(char[] chunk, int length) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (chunk[i] == '\n') {
+                lines.add(new String(chunk, lineStart, i - lineStart));
+                lineStart = i + 1;
+            }
+        }
+        lines.add(new String(chunk, lineStart, length - lineStart));
+        return lines;
+    }
+}
@@ -1,40 +1,195 @@
 package model;
 
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EmptyStackException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
-import java.util.Stack;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- *
+ * History of copied texts, the last copied text on top.
+ * <p>
+ * The history holds at most a given number of entries and stays under a byte budget, the
+ * oldest entries are dropped when either is exceeded. Texts longer than a threshold are
+ * compressed into direct buffers outside of the heap and decompressed only when they are
+ * peeked or popped. The decompressed text is held softly, so pasting the same entry again
+ * doesn't decompress it again until the heap runs short. Copying a text which is already in
+ * the history moves it to the top instead of storing it twice.
+ * <p>
+ * A copy can also be pushed as a {@link TextSnapshot} and a range inside it, which is O(1).
+ * Its text is put together only when it is peeked or popped as a {@link String}. Pasting it
+ * with {@link ClipboardStack#peekPaste(TextEditorModel)} hands the snapshot to the model,
+ * which splices the lines in without copying them when it shares them with the snapshot.
+ * Such an entry counts only its own size towards the budget, although it keeps the lines of
+ * the snapshot which were edited since alive. Copying the same range of the text again before
+ * the text is edited moves the existing entry to the top, so repeated copies pin a single
+ * snapshot. Texts of snapshots are never compared with pushed texts.
  */
 public class ClipboardStack {
-    private Stack<String> mTexts;
+
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Default maximum size of all entries.
+     */
+    public static final long DEFAULT_BYTE_BUDGET = 16L * 1024 * 1024;
+
+    /**
+     * Default length from which texts are compressed.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 16 * 1024;
+
+    /**
+     * Approximate size of an entry without its text.
+     */
+    private static final int ENTRY_BYTES = 64;
+
+    private final Deque<Entry> mEntries;
+    private final int mCapacity;
+    private final long mByteBudget;
+    private final int mCompressionThreshold;
+    private long mByteSize;
     private Set<ClipboardObserver> mClipboardObservers;
 
     /**
      * Creates a default (empty) clipboard stack.
      */
     public ClipboardStack() {
-        mTexts = new Stack<>();
+        this(DEFAULT_CAPACITY, DEFAULT_BYTE_BUDGET, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Creates an empty clipboard stack with the given limits.
+     *
+     * @param capacity             primitive int, maximum number of entries.
+     * @param byteBudget           primitive long, maximum size of all entries in bytes. The top
+     *                             entry is kept even if it alone is larger.
+     * @param compressionThreshold primitive int, length from which texts are compressed.
+     */
+    public ClipboardStack(int capacity, long byteBudget, int compressionThreshold) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity has to be positive.");
+        }
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("Byte budget can't be negative.");
+        }
+
+        mEntries = new ArrayDeque<>();
+        mCapacity = capacity;
+        mByteBudget = byteBudget;
+        mCompressionThreshold = compressionThreshold;
         mClipboardObservers = new HashSet<>();
     }
 
     /**
      * Put an element on top of the clipboard stack.
+     * If the same text is already in the stack, it is moved to the top.
      *
      * @param text {@link String}.
      */
-    public void push(String text) {
-        mTexts.push(text);
+    public synchronized void push(String text) {
+        final Entry existing = find(text);
+        if (existing != null) {
+            mEntries.remove(existing);
+            mEntries.push(existing);
+        } else {
+            final Entry entry = new Entry(text, text.length() >= mCompressionThreshold);
+            mEntries.push(entry);
+            mByteSize += entry.mBytes;
+            evict();
+        }
+        updateClipboardObservers();
+    }
+
+    /**
+     * Put the text of the snapshot inside the range on top of the clipboard stack
+     * without copying it. If the same range of the same version of the text is already
+     * in the stack, it is moved to the top.
+     *
+     * @param snapshot {@link TextSnapshot}.
+     * @param range    {@link TextRange} inside the snapshot.
+     */
+    public synchronized void push(TextSnapshot snapshot, TextRange range) {
+        if (!snapshot.isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+
+        final Entry existing = find(snapshot, range);
+        if (existing != null) {
+            mEntries.remove(existing);
+            mEntries.push(existing);
+        } else {
+            final Entry entry = new Entry(snapshot, range);
+            mEntries.push(entry);
+            mByteSize += entry.mBytes;
+            evict();
+        }
+        updateClipboardObservers();
+    }
+
+    /**
+     * Inserts the element from the top of the clipboard stack into the model at its cursor.
+     *
+     * @param model {@link TextEditorModel}.
+     * @throws EmptyStackException if the stack is empty.
+     */
+    public void peekPaste(TextEditorModel model) {
+        final Entry entry;
+        synchronized (this) {
+            if (mEntries.isEmpty()) {
+                throw new EmptyStackException();
+            }
+            entry = mEntries.peek();
+        }
+        entry.pasteInto(model);
+    }
+
+    /**
+     * Removes the element from the top of the clipboard stack and inserts it into the model
+     * at its cursor.
+     *
+     * @param model {@link TextEditorModel}.
+     * @throws EmptyStackException if the stack is empty.
+     */
+    public void popPaste(TextEditorModel model) {
+        final Entry entry;
+        synchronized (this) {
+            if (mEntries.isEmpty()) {
+                throw new EmptyStackException();
+            }
+            entry = mEntries.pop();
+            mByteSize -= entry.mBytes;
+            updateClipboardObservers();
+        }
+        entry.pasteInto(model);
     }
 
     /**
      * Removes and returns an element from the top of the clipboard stack.
      *
      * @return {@link String}.
+     * @throws EmptyStackException if the stack is empty.
      */
-    public String pop() {
-        return mTexts.pop();
+    public synchronized String pop() {
+        if (mEntries.isEmpty()) {
+            throw new EmptyStackException();
+        }
+
+        final Entry entry = mEntries.pop();
+        mByteSize -= entry.mBytes;
+        final String text = entry.text();
+        updateClipboardObservers();
+        return text;
     }
 
     /**
@@ -42,9 +197,13 @@ public class ClipboardStack {
      * Note: Use {@link ClipboardStack#pop()} to return and remove an element.
      *
      * @return {@link String}.
+     * @throws EmptyStackException if the stack is empty.
      */
-    public String peek() {
-        return mTexts.peek();
+    public synchronized String peek() {
+        if (mEntries.isEmpty()) {
+            throw new EmptyStackException();
+        }
+        return mEntries.peek().text();
     }
 
     /**
@@ -52,16 +211,36 @@ public class ClipboardStack {
      *
      * @return primitive boolean.
      */
-    public boolean isEmpty() {
-        return mTexts.isEmpty();
+    public synchronized boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return primitive int.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the approximate size of all entries in bytes, compressed entries counted compressed.
+     *
+     * @return primitive long.
+     */
+    public synchronized long getByteSize() {
+        return mByteSize;
     }
 
     /**
      * Method empties the clipboard stack.
      * After this the {@link ClipboardStack#isEmpty()} will return true.
      */
-    public void clear() {
-        mTexts.clear();
+    public synchronized void clear() {
+        mEntries.clear();
+        mByteSize = 0;
+        updateClipboardObservers();
     }
 
     /**
@@ -89,13 +268,187 @@ public class ClipboardStack {
         mClipboardObservers.forEach(model.ClipboardObserver::updateClipboard);
     }
 
+    /**
+     * Returns the entry holding the text, or null. Texts are compared only if their lengths
+     * and hashes match, so compressed entries are almost never decompressed.
+     */
+    private Entry find(String text) {
+        final int hash = text.hashCode();
+        for (Entry entry : mEntries) {
+            if (entry.mLength == text.length() && entry.mHash == hash && entry.text().equals(text)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the entry holding the range of a snapshot of the same text, or null.
+     */
+    private Entry find(TextSnapshot snapshot, TextRange range) {
+        for (Entry entry : mEntries) {
+            if (entry.mSnapshot != null && entry.mSnapshot.getVersion() == snapshot.getVersion()
+                    && entry.mRange.equals(range)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the oldest entries until the stack fits its capacity and budget. The top entry stays.
+     */
+    private void evict() {
+        while (mEntries.size() > 1 && (mEntries.size() > mCapacity || mByteSize > mByteBudget)) {
+            mByteSize -= mEntries.removeLast().mBytes;
+        }
+    }
+
     /**
      * Returns {@link String} representation of this object.
      * @return {@link String}.
      */
     @Override
-    public String toString() {
-        return mTexts.toString();
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (Iterator<Entry> iterator = mEntries.descendingIterator(); iterator.hasNext(); ) {
+            sb.append(iterator.next().text());
+            if (iterator.hasNext()) {
+                sb.append(", ");
+            }
+        }
+        return sb.append(']').toString();
     }
-}
 
+    /**
+     * A copied text, either kept as it is, compressed outside of the heap or a range of a snapshot.
+     */
+    private static class Entry {
+        private final int mLength;
+        private final int mHash;
+        private final long mBytes;
+
+        /**
+         * The text, null if it is compressed or a range of a snapshot.
+         */
+        private final String mText;
+
+        /**
+         * Snapshot holding the text and the range of the text in it, both null unless the
+         * entry is a range of a snapshot.
+         */
+        private final TextSnapshot mSnapshot;
+        private final TextRange mRange;
+
+        /**
+         * Deflated UTF-16 chars of the text, null if it isn't compressed. Chars are
+         * compressed as they are, so unpaired surrogates survive unlike in UTF-8.
+         */
+        private final ByteBuffer mCompressed;
+
+        /**
+         * Last decompressed text, dropped by the garbage collector when memory runs short.
+         */
+        private SoftReference<String> mDecompressed;
+
+        /**
+         * Creates an entry of a range of the snapshot. Its length is not known, so it never
+         * matches a pushed text.
+         */
+        private Entry(TextSnapshot snapshot, TextRange range) {
+            mLength = -1;
+            mHash = 0;
+            mBytes = ENTRY_BYTES;
+            mText = null;
+            mCompressed = null;
+            mSnapshot = snapshot;
+            mRange = range;
+        }
+
+        private Entry(String text, boolean compress) {
+            mLength = text.length();
+            mHash = text.hashCode();
+            mSnapshot = null;
+            mRange = null;
+            if (compress) {
+                final ByteBuffer chars = ByteBuffer.allocate(2 * text.length());
+                chars.asCharBuffer().put(text);
+                final byte[] bytes = deflate(chars.array());
+                mCompressed = ByteBuffer.allocateDirect(bytes.length);
+                mCompressed.put(bytes);
+                mText = null;
+                mBytes = ENTRY_BYTES + bytes.length;
+            } else {
+                mCompressed = null;
+                mText = text;
+                mBytes = ENTRY_BYTES + 2L * text.length();
+            }
+        }
+
+        private String text() {
+            if (mText != null) {
+                return mText;
+            }
+
+            String text = mDecompressed == null ? null : mDecompressed.get();
+            if (text == null) {
+                if (mSnapshot != null) {
+                    text = mSnapshot.getText(mRange);
+                } else {
+                    final byte[] bytes = new byte[mCompressed.capacity()];
+                    final ByteBuffer compressed = mCompressed.duplicate();
+                    compressed.clear();
+                    compressed.get(bytes);
+                    text = ByteBuffer.wrap(inflate(bytes)).asCharBuffer().toString();
+                }
+                mDecompressed = new SoftReference<>(text);
+            }
+            return text;
+        }
+
+        private void pasteInto(TextEditorModel model) {
+            if (mSnapshot != null) {
+                model.insert(mSnapshot, mRange);
+            } else {
+                model.insert(text());
+            }
+        }
+
+        private static byte[] deflate(byte[] bytes) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+                final byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static byte[] inflate(byte[] bytes) {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+                final byte[] buffer = new byte[8192];
+                while (!inflater.finished()) {
+                    final int count = inflater.inflate(buffer);
+                    if (count == 0 && inflater.needsInput()) {
+                        throw new IllegalStateException("Compressed clipboard entry is truncated.");
+                    }
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Compressed clipboard entry is corrupted.", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -12,4 +12,16 @@ public interface CursorObserver {
      */
     void updateCursorLocation(Location loc);
 
+    /**
+     * Method for updating cursor location when the previous location is known.
+     * Observers which only need to update around the old and the new location
+     * should override this, by default it calls {@link CursorObserver#updateCursorLocation(Location)}.
+     *
+     * @param oldLoc {@link Location} before the move, a copy which can be kept.
+     * @param newLoc {@link Location} after the move.
+     */
+    default void updateCursorLocation(Location oldLoc, Location newLoc) {
+        updateCursorLocation(newLoc);
+    }
+
 }
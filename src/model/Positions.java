@@ -0,0 +1,81 @@
+package model;
+
+/**
+ * Packs a position in the text (line and column) into a primitive long, so positions can be
+ * passed around without allocating a {@link Location}.
+ * <p>
+ * Line is kept in the upper and column in the lower 32 bits. Lines and columns are never
+ * negative, so every valid position is a non-negative long and {@link Positions#NONE}
+ * marks a position which doesn't exist.
+ */
+public final class Positions {
+
+    /**
+     * Returned instead of a position which doesn't exist, e.g. left of the start of the text.
+     */
+    public static final long NONE = -1L;
+
+    private Positions() {
+    }
+
+    /**
+     * Packs the line and the column into a position.
+     *
+     * @param line   primitive int, index of the line.
+     * @param column primitive int, index of the column.
+     * @return primitive long.
+     */
+    public static long of(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Packs the given {@link Location} into a position.
+     *
+     * @param location {@link Location}.
+     * @return primitive long.
+     */
+    public static long of(Location location) {
+        return of(location.getY(), location.getX());
+    }
+
+    /**
+     * Returns the line of the position.
+     *
+     * @param position primitive long.
+     * @return primitive int.
+     */
+    public static int line(long position) {
+        return (int) (position >>> 32);
+    }
+
+    /**
+     * Returns the column of the position.
+     *
+     * @param position primitive long.
+     * @return primitive int.
+     */
+    public static int column(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Returns true if the position is not {@link Positions#NONE}.
+     *
+     * @param position primitive long.
+     * @return primitive boolean.
+     */
+    public static boolean exists(long position) {
+        return position >= 0;
+    }
+
+    /**
+     * Returns a new {@link Location} at the position.
+     *
+     * @param position primitive long, must exist.
+     * @return {@link Location}.
+     */
+    public static Location toLocation(long position) {
+        return new Location(column(position), line(position));
+    }
+}
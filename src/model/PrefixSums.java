@@ -0,0 +1,432 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * List of non-negative ints which answers sums of its prefixes in O(log n).
+ * <p>
+ * Values are kept in a balanced binary tree ordered by index, every node knows the number of
+ * values and their sum in its subtree. Reading, changing a value and finding the value which
+ * contains a given sum are O(log n). Replacing k values with m others splits the tree around
+ * them and joins the parts with a tree built from the new values, which is O(k + m + log n),
+ * so inserting or removing values doesn't touch the values after them. The tree is balanced
+ * by joining the parts at random, weighted by their sizes, so its depth is O(log n) with
+ * high probability whatever the edits are.
+ * <p>
+ * Nodes live in parallel arrays instead of objects and removed nodes are reused. Every value
+ * may carry an item, e.g. data cached for the line the value belongs to, which moves with it.
+ * Every value also has a handle, which finds its current index in O(log n) after values
+ * before it were inserted or removed.
+ */
+public final class PrefixSums {
+
+    /**
+     * Node 0 is the empty tree, its size and sum are 0.
+     */
+    private static final int NONE = 0;
+
+    private int[] mLeft;
+    private int[] mRight;
+
+    /**
+     * Parent of the node, not kept up to date for the root.
+     */
+    private int[] mParent;
+
+    /**
+     * Number of values in the subtree of the node.
+     */
+    private int[] mSize;
+
+    private int[] mValue;
+
+    /**
+     * Sum of the values in the subtree of the node.
+     */
+    private long[] mSum;
+
+    /**
+     * Items carried by the values, null until the first item is set.
+     */
+    private Object[] mItems;
+
+    private int mRoot;
+
+    /**
+     * First node after the nodes ever used.
+     */
+    private int mNextNode;
+
+    /**
+     * Removed nodes linked through their left child, {@link PrefixSums#NONE} if there are none.
+     */
+    private int mFreeNode;
+
+    private int mSeed;
+
+    /**
+     * Results of {@link PrefixSums#split(int, int)}.
+     */
+    private int mSplitLeft;
+    private int mSplitRight;
+
+    /**
+     * Creates sums of the given values.
+     *
+     * @param values array of primitive ints, copied.
+     */
+    public PrefixSums(int[] values) {
+        final int capacity = values.length + 1;
+        mLeft = new int[capacity];
+        mRight = new int[capacity];
+        mParent = new int[capacity];
+        mSize = new int[capacity];
+        mValue = new int[capacity];
+        mSum = new long[capacity];
+        mNextNode = 1;
+        mSeed = 0x2545F491;
+        mRoot = build(values, 0, values.length);
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return primitive int.
+     */
+    public int size() {
+        return mSize[mRoot];
+    }
+
+    /**
+     * Returns the value at the index.
+     *
+     * @param index primitive int.
+     * @return primitive int.
+     */
+    public int get(int index) {
+        return mValue[node(index)];
+    }
+
+    /**
+     * Changes the value at the index.
+     *
+     * @param index primitive int.
+     * @param value primitive int, not negative.
+     */
+    public void set(int index, int value) {
+        final long delta = (long) value - mValue[node(index)];
+        int node = mRoot;
+        while (true) {
+            mSum[node] += delta;
+            final int left = mLeft[node];
+            if (index < mSize[left]) {
+                node = left;
+            } else if (index == mSize[left]) {
+                mValue[node] = value;
+                return;
+            } else {
+                index -= mSize[left] + 1;
+                node = mRight[node];
+            }
+        }
+    }
+
+    /**
+     * Returns the item carried by the value at the index.
+     *
+     * @param index primitive int.
+     * @return {@link Object} which is null if no item was set.
+     */
+    public Object getItem(int index) {
+        final int node = node(index);
+        return mItems == null ? null : mItems[node];
+    }
+
+    /**
+     * Sets the item carried by the value at the index. The item moves with the value when
+     * values before it are inserted or removed and is dropped when the value is replaced.
+     *
+     * @param index primitive int.
+     * @param item  {@link Object}, can be null.
+     */
+    public void setItem(int index, Object item) {
+        final int node = node(index);
+        if (mItems == null) {
+            mItems = new Object[mValue.length];
+        }
+        mItems[node] = item;
+    }
+
+    /**
+     * Returns the handle of the value at the index. Handle stays the same while values around
+     * the value are inserted or removed, it is dropped, and later reused, when the value itself
+     * is replaced.
+     *
+     * @param index primitive int.
+     * @return primitive int.
+     */
+    public int handleAt(int index) {
+        return node(index);
+    }
+
+    /**
+     * Returns the current index of the value with the handle.
+     *
+     * @param handle primitive int, returned by {@link PrefixSums#handleAt(int)}.
+     * @return primitive int.
+     */
+    public int indexOfHandle(int handle) {
+        int node = handle;
+        int index = mSize[mLeft[node]];
+        while (node != mRoot) {
+            final int parent = mParent[node];
+            if (mRight[parent] == node) {
+                index += mSize[mLeft[parent]] + 1;
+            }
+            node = parent;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the sum of the first count values.
+     *
+     * @param count primitive int, from 0 to {@link PrefixSums#size()}.
+     * @return primitive long.
+     */
+    public long sum(int count) {
+        if (count < 0 || count > size()) {
+            throw new IndexOutOfBoundsException("Count " + count + " is outside of boundaries.");
+        }
+
+        long sum = 0;
+        int node = mRoot;
+        while (count > 0) {
+            final int left = mLeft[node];
+            if (count <= mSize[left]) {
+                node = left;
+            } else {
+                sum += mSum[left] + mValue[node];
+                count -= mSize[left] + 1;
+                node = mRight[node];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of all values.
+     *
+     * @return primitive long.
+     */
+    public long total() {
+        return mSum[mRoot];
+    }
+
+    /**
+     * Returns the index of the value containing the sum, the index i for which
+     * sum(i) &lt;= sum &lt; sum(i + 1). Values equal to 0 never contain a sum.
+     *
+     * @param sum primitive long, from 0 to {@link PrefixSums#total()} (exclusive).
+     * @return primitive int, {@link PrefixSums#size()} if the sum is not smaller than the total.
+     */
+    public int indexOf(long sum) {
+        if (sum < 0) {
+            throw new IndexOutOfBoundsException("Sum " + sum + " is negative.");
+        }
+
+        int index = 0;
+        int node = mRoot;
+        while (node != NONE) {
+            final int left = mLeft[node];
+            if (sum < mSum[left]) {
+                node = left;
+                continue;
+            }
+
+            sum -= mSum[left];
+            if (sum < mValue[node]) {
+                return index + mSize[left];
+            }
+            sum -= mValue[node];
+            index += mSize[left] + 1;
+            node = mRight[node];
+        }
+        return index;
+    }
+
+    /**
+     * Replaces count values starting at the index with the given values.
+     *
+     * @param index  primitive int.
+     * @param count  primitive int, number of replaced values.
+     * @param values array of primitive ints which replace them.
+     */
+    public void replace(int index, int count, int[] values) {
+        if (index < 0 || count < 0 || index + count > size()) {
+            throw new IndexOutOfBoundsException("Range " + index + ".." + (index + count) + " is outside of boundaries.");
+        }
+
+        split(mRoot, index);
+        final int before = mSplitLeft;
+        split(mSplitRight, count);
+        final int after = mSplitRight;
+        free(mSplitLeft);
+        mRoot = merge(merge(before, build(values, 0, values.length)), after);
+    }
+
+    /**
+     * Returns the node holding the value at the index.
+     */
+    private int node(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of boundaries.");
+        }
+
+        int node = mRoot;
+        while (true) {
+            final int left = mLeft[node];
+            if (index < mSize[left]) {
+                node = left;
+            } else if (index == mSize[left]) {
+                return node;
+            } else {
+                index -= mSize[left] + 1;
+                node = mRight[node];
+            }
+        }
+    }
+
+    /**
+     * Builds a perfectly balanced tree of the values from (inclusive) to (exclusive).
+     */
+    private int build(int[] values, int from, int to) {
+        if (from >= to) {
+            return NONE;
+        }
+
+        final int middle = (from + to) >>> 1;
+        final int node = allocate(values[middle]);
+//        Children are built first, building may grow the arrays.
+        final int left = build(values, from, middle);
+        final int right = build(values, middle + 1, to);
+        mLeft[node] = left;
+        mRight[node] = right;
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits the tree into the first count values and the rest, which are left in
+     * {@link PrefixSums#mSplitLeft} and {@link PrefixSums#mSplitRight}.
+     */
+    private void split(int node, int count) {
+        if (node == NONE) {
+            mSplitLeft = NONE;
+            mSplitRight = NONE;
+            return;
+        }
+
+        final int left = mLeft[node];
+        if (count <= mSize[left]) {
+            split(left, count);
+            mLeft[node] = mSplitRight;
+            update(node);
+            mSplitRight = node;
+        } else {
+            split(mRight[node], count - mSize[left] - 1);
+            mRight[node] = mSplitLeft;
+            update(node);
+            mSplitLeft = node;
+        }
+    }
+
+    /**
+     * Joins two trees, every value of the first one goes before the second one. Root of the
+     * larger tree is more likely to become the root, which keeps the tree balanced.
+     */
+    private int merge(int first, int second) {
+        if (first == NONE) {
+            return second;
+        }
+        if (second == NONE) {
+            return first;
+        }
+
+        if (random(mSize[first] + mSize[second]) < mSize[first]) {
+            mRight[first] = merge(mRight[first], second);
+            update(first);
+            return first;
+        }
+        mLeft[second] = merge(first, mLeft[second]);
+        update(second);
+        return second;
+    }
+
+    private void update(int node) {
+        final int left = mLeft[node];
+        final int right = mRight[node];
+        mParent[left] = node;
+        mParent[right] = node;
+        mSize[node] = mSize[left] + 1 + mSize[right];
+        mSum[node] = mSum[left] + mValue[node] + mSum[right];
+    }
+
+    private int allocate(int value) {
+        int node = mFreeNode;
+        if (node != NONE) {
+            mFreeNode = mLeft[node];
+        } else {
+            if (mNextNode == mValue.length) {
+                grow();
+            }
+            node = mNextNode++;
+        }
+
+        mLeft[node] = NONE;
+        mRight[node] = NONE;
+        mValue[node] = value;
+        return node;
+    }
+
+    /**
+     * Adds every node of the tree to the removed nodes.
+     */
+    private void free(int node) {
+        if (node == NONE) {
+            return;
+        }
+
+        free(mRight[node]);
+        final int left = mLeft[node];
+        if (mItems != null) {
+            mItems[node] = null;
+        }
+        mLeft[node] = mFreeNode;
+        mFreeNode = node;
+        free(left);
+    }
+
+    private void grow() {
+        final int capacity = mValue.length + Math.max(mValue.length >> 1, 16);
+        mLeft = Arrays.copyOf(mLeft, capacity);
+        mRight = Arrays.copyOf(mRight, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mSize = Arrays.copyOf(mSize, capacity);
+        mValue = Arrays.copyOf(mValue, capacity);
+        mSum = Arrays.copyOf(mSum, capacity);
+        if (mItems != null) {
+            mItems = Arrays.copyOf(mItems, capacity);
+        }
+    }
+
+    /**
+     * Returns a pseudo-random int from 0 (inclusive) to the bound (exclusive), xorshift.
+     */
+    private int random(int bound) {
+        mSeed ^= mSeed << 13;
+        mSeed ^= mSeed >>> 17;
+        mSeed ^= mSeed << 5;
+        return (int) (((mSeed & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,292 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression find and replace-all over a {@link TextEditorModel}, run in parallel.
+ * <p>
+ * Text is taken as a {@link TextSnapshot} and split into chunks of lines. Every chunk is
+ * searched by a separate {@link ForkJoinPool} task with its own {@link Matcher}. Matchers see
+ * the whole text (transparent bounds), so a match may begin in one chunk and end in the next,
+ * and lookarounds and anchors work across chunk borders. Chunks are then joined in order and
+ * matches overlapped by a match from the previous chunk are searched again sequentially, so
+ * the result is the same as one {@link Matcher#find()} loop over the whole text.
+ * <p>
+ * Replacements are applied bottom-up as a single batch, observers are notified once and the
+ * whole replace-all is undone as a single edit.
+ */
+public class RegexReplacer {
+
+    /**
+     * Default number of lines searched by a single task.
+     */
+    public static final int DEFAULT_CHUNK_LINES = 4096;
+
+    private final TextEditorModel mModel;
+    private final ForkJoinPool mPool;
+    private final int mChunkLines;
+
+    /**
+     * Creates a replacer running on the common pool with the default chunk size.
+     *
+     * @param model {@link TextEditorModel}.
+     */
+    public RegexReplacer(TextEditorModel model) {
+        this(model, ForkJoinPool.commonPool(), DEFAULT_CHUNK_LINES);
+    }
+
+    /**
+     * Creates a replacer.
+     *
+     * @param model      {@link TextEditorModel}.
+     * @param pool       {@link ForkJoinPool} running the search.
+     * @param chunkLines primitive int, number of lines searched by a single task.
+     */
+    public RegexReplacer(TextEditorModel model, ForkJoinPool pool, int chunkLines) {
+        if (chunkLines <= 0) {
+            throw new IllegalArgumentException("Chunk size has to be positive.");
+        }
+
+        mModel = model;
+        mPool = pool;
+        mChunkLines = chunkLines;
+    }
+
+    /**
+     * Returns every match of the pattern in the text, in the order of the text.
+     * Blocks the model thread until the search is done.
+     *
+     * @param pattern {@link Pattern}.
+     * @return {@link List<LocationRange>} of matches.
+     */
+    public List<LocationRange> findAll(Pattern pattern) {
+        final TextChars chars = new TextChars(mModel.snapshot());
+        final List<LocationRange> ranges = new ArrayList<>();
+        for (Match match : search(pattern, chars, null)) {
+            ranges.add(new LocationRange(
+                    chars.positionOf(match.mStart).toLocation(), chars.positionOf(match.mEnd).toLocation()
+            ));
+        }
+        return ranges;
+    }
+
+    /**
+     * Replaces every match of the pattern. Replacement may refer to groups the same way as in
+     * {@link Matcher#appendReplacement(StringBuffer, String)}.
+     * Blocks the model thread until the search is done.
+     *
+     * @param pattern     {@link Pattern}.
+     * @param replacement {@link String}.
+     * @return primitive int, number of replaced matches.
+     */
+    public int replaceAll(Pattern pattern, String replacement) {
+        final TextChars chars = new TextChars(mModel.snapshot());
+        final List<Match> matches = search(pattern, chars, replacement);
+        if (matches.isEmpty()) {
+            return 0;
+        }
+
+        mModel.batch(() -> {
+            mModel.clearSelection();
+//            Bottom-up, so positions of the matches not yet replaced don't move.
+            for (int i = matches.size() - 1; i >= 0; i--) {
+                final Match match = matches.get(i);
+                final TextPosition start = chars.positionOf(match.mStart);
+                if (match.mEnd > match.mStart) {
+                    mModel.deleteRange(new TextRange(start, chars.positionOf(match.mEnd)));
+                } else {
+                    mModel.moveCursorTo(start);
+                }
+                mModel.insert(match.mReplacement);
+            }
+        });
+        return matches.size();
+    }
+
+    /**
+     * Searches chunks in parallel and joins their matches.
+     *
+     * @param replacement {@link String}, null if replacements are not needed.
+     */
+    private List<Match> search(Pattern pattern, TextChars chars, String replacement) {
+        final List<Chunk> chunks = mPool.invoke(new ChunkTask(pattern, chars, replacement, mChunkLines, 0, chars.lineCount()));
+
+        final List<Match> matches = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            final int end = matches.isEmpty() ? 0 : matches.get(matches.size() - 1).mEnd;
+            if (end <= chunk.mStart) {
+                matches.addAll(chunk.mMatches);
+            } else {
+                resync(pattern, chars, replacement, end, chunk, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Searches the chunk sequentially from the end of the previous match, which reached into it,
+     * until a match of the chunk is found again. From there on the chunk matches are the same
+     * as a sequential search.
+     */
+    private static void resync(Pattern pattern, TextChars chars, String replacement, int from,
+                               Chunk chunk, List<Match> matches) {
+        final Matcher matcher = matcher(pattern, chars.copy(), from);
+        final List<Match> chunkMatches = chunk.mMatches;
+        int next = 0;
+        while (matcher.find() && matcher.start() < chunk.mEnd) {
+            while (next < chunkMatches.size() && chunkMatches.get(next).mStart < matcher.start()) {
+                next++;
+            }
+            if (next < chunkMatches.size() && chunkMatches.get(next).mStart == matcher.start()) {
+                matches.addAll(chunkMatches.subList(next, chunkMatches.size()));
+                return;
+            }
+            matches.add(new Match(matcher, replacement));
+        }
+    }
+
+    private static Matcher matcher(Pattern pattern, TextChars chars, int from) {
+        final Matcher matcher = pattern.matcher(chars);
+        matcher.region(from, chars.length());
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        return matcher;
+    }
+
+    /**
+     * Expands group references in the replacement like {@link Matcher#appendReplacement(StringBuffer, String)}.
+     */
+    private static String expand(Matcher matcher, String replacement) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\') {
+                if (++i == replacement.length()) {
+                    throw new IllegalArgumentException("Character to be escaped is missing.");
+                }
+                sb.append(replacement.charAt(i));
+            } else if (c != '$') {
+                sb.append(c);
+            } else if (++i == replacement.length()) {
+                throw new IllegalArgumentException("Illegal group reference: group index is missing.");
+            } else if (replacement.charAt(i) == '{') {
+                final int close = replacement.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Named capturing group is missing trailing '}'.");
+                }
+                appendGroup(sb, matcher.group(replacement.substring(i + 1, close)));
+                i = close;
+            } else {
+                int group = replacement.charAt(i) - '0';
+                if (group < 0 || group > 9) {
+                    throw new IllegalArgumentException("Illegal group reference.");
+                }
+//                Further digits belong to the reference while they form an existing group.
+                while (i + 1 < replacement.length()) {
+                    int digit = replacement.charAt(i + 1) - '0';
+                    if (digit < 0 || digit > 9 || group * 10 + digit > matcher.groupCount()) {
+                        break;
+                    }
+                    group = group * 10 + digit;
+                    i++;
+                }
+                appendGroup(sb, matcher.group(group));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendGroup(StringBuilder sb, String group) {
+        if (group != null) {
+            sb.append(group);
+        }
+    }
+
+    /**
+     * Match found by a task, offsets are absolute.
+     */
+    private static class Match {
+        private final int mStart;
+        private final int mEnd;
+
+        /**
+         * Expanded replacement, null when only searching.
+         */
+        private final String mReplacement;
+
+        private Match(Matcher matcher, String replacement) {
+            mStart = matcher.start();
+            mEnd = matcher.end();
+            mReplacement = replacement == null ? null : expand(matcher, replacement);
+        }
+    }
+
+    /**
+     * Matches which begin between the start and the end offset of a chunk.
+     */
+    private static class Chunk {
+        private final int mStart;
+        private final int mEnd;
+        private final List<Match> mMatches;
+
+        private Chunk(int start, int end, List<Match> matches) {
+            mStart = start;
+            mEnd = end;
+            mMatches = matches;
+        }
+    }
+
+    /**
+     * Searches lines from (inclusive) first to (exclusive) last, splitting them into chunks.
+     * Returns every {@link Chunk} in order.
+     */
+    private static class ChunkTask extends RecursiveTask<List<Chunk>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Pattern mPattern;
+        private final transient TextChars mChars;
+        private final String mReplacement;
+        private final int mChunkLines;
+        private final int mFirst;
+        private final int mLast;
+
+        private ChunkTask(Pattern pattern, TextChars chars, String replacement, int chunkLines, int first, int last) {
+            mPattern = pattern;
+            mChars = chars;
+            mReplacement = replacement;
+            mChunkLines = chunkLines;
+            mFirst = first;
+            mLast = last;
+        }
+
+        @Override
+        protected List<Chunk> compute() {
+            if (mLast - mFirst > mChunkLines) {
+                final int middle = (mFirst + mLast) >>> 1;
+                final ChunkTask right = new ChunkTask(mPattern, mChars, mReplacement, mChunkLines, middle, mLast);
+                right.fork();
+                final List<Chunk> chunks = new ChunkTask(mPattern, mChars, mReplacement, mChunkLines, mFirst, middle).compute();
+                chunks.addAll(right.join());
+                return chunks;
+            }
+
+            final int start = mChars.lineStart(mFirst);
+//            Empty match at the very end of the text belongs to the last chunk.
+            final int end = mLast < mChars.lineCount() ? mChars.lineStart(mLast) : mChars.length() + 1;
+            final Matcher matcher = matcher(mPattern, mChars.copy(), start);
+            final List<Match> matches = new ArrayList<>();
+            while (matcher.find() && matcher.start() < end) {
+                matches.add(new Match(matcher, mReplacement));
+            }
+
+            final List<Chunk> chunks = new ArrayList<>();
+            chunks.add(new Chunk(start, end, matches));
+            return chunks;
+        }
+    }
+}
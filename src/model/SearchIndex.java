@@ -0,0 +1,636 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Literal text search over a {@link TextEditorModel}, optionally backed by a trigram index.
+ * <p>
+ * Lines are indexed in blocks of up to {@link SearchIndex#BLOCK_LINES} lines. Index maps every three
+ * consecutive characters of a line, packed into a long, to the sorted ids of blocks containing
+ * them, kept in primitive arrays. A query is answered by intersecting the blocks of its trigrams
+ * and checking only the lines of the blocks left, instead of scanning the whole text.
+ * <p>
+ * Index is built on a background thread from a {@link TextSnapshot} and later kept up to date
+ * from the {@link TextChange}s of the model. Blocks are kept in {@link PrefixSums} of their line
+ * counts, so finding the blocks of changed lines and splicing new blocks in is O(log n), and only
+ * the blocks holding changed lines are indexed again. Ids of replaced blocks stay in the postings
+ * until there are more of them than live ones, then they are dropped all at once.
+ * <p>
+ * Until the index is built, and for queries without three consecutive characters on one line,
+ * the text is scanned. Like the model, a search index must only be used on the model thread.
+ */
+public class SearchIndex {
+
+    /**
+     * Line count of a change covering the whole text, small enough to be merged without overflow.
+     */
+    private static final int ALL_LINES = Integer.MAX_VALUE / 4;
+
+    /**
+     * Most lines in a block. A trigram repeated on nearby lines is stored once per block,
+     * and an edit indexes its whole block again.
+     */
+    private static final int BLOCK_LINES = 32;
+
+    /**
+     * Least number of stale ids in the postings worth dropping.
+     */
+    private static final int MIN_GARBAGE = 1 << 16;
+
+    private final TextEditorModel mModel;
+    private final TextObserver mObserver;
+
+    /**
+     * Null until the index is built.
+     */
+    private Index mIndex;
+
+    /**
+     * Changes made while the index was being built, null if there are none.
+     */
+    private TextChange mPendingChange;
+
+    private boolean mBuilding;
+
+    /**
+     * Incremented by every build, so only the latest build is installed.
+     */
+    private int mGeneration;
+
+    /**
+     * Creates a search over the model. Text is scanned until {@link SearchIndex#build(Executor)} is called.
+     *
+     * @param model {@link TextEditorModel}.
+     */
+    public SearchIndex(TextEditorModel model) {
+        mModel = model;
+        mObserver = new TextObserver() {
+            @Override
+            public void updateText() {
+                update(new TextChange(0, ALL_LINES, ALL_LINES));
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                update(change);
+            }
+        };
+        mModel.addTextObserver(mObserver);
+    }
+
+    /**
+     * Starts building the index on a background thread. The text is taken at the moment of
+     * the call, edits made during the build are indexed when the built index is installed.
+     * An index built before keeps answering queries, and following edits, until then.
+     *
+     * @param modelExecutor {@link Executor} running on the model thread, e.g.
+     *                      {@link javax.swing.SwingUtilities#invokeLater(Runnable)}.
+     * @return {@link CompletableFuture} completed on the model thread once the index is used,
+     * or exceptionally if building it failed.
+     */
+    public CompletableFuture<Void> build(Executor modelExecutor) {
+        final TextSnapshot snapshot = mModel.snapshot();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final int generation = ++mGeneration;
+        mBuilding = true;
+        mPendingChange = null;
+
+        Thread builder = new Thread(() -> {
+            try {
+                final Index index = new Index(snapshot.lineCount(), snapshot.allLines());
+
+                modelExecutor.execute(() -> {
+                    try {
+                        if (generation == mGeneration) {
+                            install(index);
+                        }
+                        result.complete(null);
+                    } catch (RuntimeException | Error e) {
+                        if (generation == mGeneration) {
+//                            Index may be partly updated, queries scan the text instead.
+                            mIndex = null;
+                        }
+                        fail(generation, e, result);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                try {
+                    modelExecutor.execute(() -> fail(generation, e, result));
+                } catch (RuntimeException rejected) {
+//                    Model thread is gone, nobody edits the text any more.
+                    result.completeExceptionally(e);
+                }
+            }
+        }, "SearchIndex");
+        builder.setDaemon(true);
+        builder.start();
+
+        return result;
+    }
+
+    /**
+     * Returns true if queries are answered from the index.
+     *
+     * @return primitive boolean.
+     */
+    public boolean isIndexed() {
+        return mIndex != null;
+    }
+
+    /**
+     * Stops following the model and forgets the index.
+     */
+    public void detach() {
+        mModel.removeTextObserver(mObserver);
+        mIndex = null;
+        mPendingChange = null;
+        mBuilding = false;
+        mGeneration++;
+    }
+
+    /**
+     * Returns every occurrence of the query in the text, in the order of the text.
+     * Query may contain newlines. Occurrences inside one line don't overlap.
+     *
+     * @param query {@link String}, literal text to find.
+     * @return {@link List<LocationRange>} of found occurrences.
+     */
+    public List<LocationRange> find(String query) {
+        final List<LocationRange> matches = new ArrayList<>();
+        if (query.isEmpty()) {
+            return matches;
+        }
+
+        final String[] parts = query.split("\n", -1);
+        int longest = 0;
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].length() > parts[longest].length()) {
+                longest = i;
+            }
+        }
+
+        if (mIndex == null || parts[longest].length() < 3) {
+            for (int line = 0; line < mModel.lineCount(); line++) {
+                match(parts, line, matches);
+            }
+            return matches;
+        }
+
+//        Longest part has to be on the line with its index in the query, counted from the first line of the match.
+        for (int candidate : mIndex.candidates(parts[longest])) {
+            if (candidate >= longest) {
+                match(parts, candidate - longest, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Adds occurrences of the split query which begin on the given line.
+     */
+    private void match(String[] parts, int line, List<LocationRange> matches) {
+        final String first = mModel.getLine(line);
+        if (parts.length == 1) {
+            final String query = parts[0];
+            for (int x = first.indexOf(query); x >= 0; x = first.indexOf(query, x + query.length())) {
+                matches.add(new LocationRange(x, line, x + query.length(), line));
+            }
+            return;
+        }
+
+        final int last = line + parts.length - 1;
+        if (last >= mModel.lineCount() || !first.endsWith(parts[0])) {
+            return;
+        }
+        for (int i = 1; i < parts.length - 1; i++) {
+            if (!mModel.getLine(line + i).equals(parts[i])) {
+                return;
+            }
+        }
+        if (mModel.getLine(last).startsWith(parts[parts.length - 1])) {
+            matches.add(new LocationRange(
+                    first.length() - parts[0].length(), line, parts[parts.length - 1].length(), last
+            ));
+        }
+    }
+
+    /**
+     * Indexes lines touched by the change in the index in use. While an index is being built
+     * the change is also remembered for it.
+     */
+    private void update(TextChange change) {
+        if (mIndex != null) {
+            apply(change);
+        }
+        if (mBuilding) {
+            mPendingChange = mPendingChange == null ? change : mPendingChange.merge(change);
+        }
+    }
+
+    /**
+     * Gives up a failed build. If it was the latest build, edits are no longer remembered for it.
+     */
+    private void fail(int generation, Throwable error, CompletableFuture<Void> result) {
+        if (generation == mGeneration) {
+            mBuilding = false;
+            mPendingChange = null;
+        }
+        result.completeExceptionally(error);
+    }
+
+    /**
+     * Starts using the built index, after indexing the changes made during the build.
+     */
+    private void install(Index index) {
+        mIndex = index;
+        if (mPendingChange != null) {
+            apply(mPendingChange);
+            mPendingChange = null;
+        }
+        mBuilding = false;
+    }
+
+    /**
+     * Replaces indexed lines replaced by the change with the current lines of the model.
+     */
+    private void apply(TextChange change) {
+        final int indexed = mIndex.lineCount();
+        final int first = Math.min(change.getFirstLine(), indexed);
+        final int oldEnd = (int) Math.min((long) first + change.getOldLineCount(), indexed);
+        final int newEnd = (int) Math.min((long) first + change.getNewLineCount(), mModel.lineCount());
+        mIndex.replace(first, oldEnd, newEnd, mModel);
+    }
+
+    /**
+     * Returns distinct trigrams of the text, each packed into a long.
+     */
+    private static long[] grams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+
+        final long[] grams = new long[text.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(text, i);
+        }
+        return Arrays.copyOf(grams, distinct(grams, grams.length));
+    }
+
+    private static long gram(String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+
+    /**
+     * Sorts the first count grams and moves the distinct ones to the front.
+     *
+     * @return primitive int, number of distinct grams.
+     */
+    private static int distinct(long[] grams, int count) {
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Trigram index of the lines, split into blocks.
+     */
+    private static final class Index {
+
+        /**
+         * Line count of every block, in the order of the text.
+         */
+        private final PrefixSums mBlocks;
+
+        /**
+         * Id of the block by the handle of its line count in {@link Index#mBlocks}.
+         */
+        private int[] mIds = new int[16];
+
+        /**
+         * Handle of the block by its id, -1 once the block is replaced.
+         */
+        private int[] mHandles = new int[16];
+
+        /**
+         * Number of trigrams indexed for the block by its id.
+         */
+        private int[] mGramCounts = new int[16];
+
+        /**
+         * Ids are given in increasing order, so ids in every posting list are sorted.
+         */
+        private int mNextId;
+
+        private final Postings mPostings = new Postings();
+
+        private long mLiveIds;
+        private long mStaleIds;
+
+        /**
+         * Trigrams of the block being indexed.
+         */
+        private long[] mGrams = new long[256];
+
+        /**
+         * Indexes lines of the text.
+         *
+         * @param lineCount primitive int, number of lines.
+         * @param lines     {@link Iterator<String>} over every line.
+         */
+        private Index(int lineCount, Iterator<String> lines) {
+            final int[] counts = blocks(lineCount);
+            mBlocks = new PrefixSums(counts);
+            add(0, counts, lines);
+        }
+
+        private int lineCount() {
+            return (int) mBlocks.total();
+        }
+
+        /**
+         * Indexes the lines from (inclusive) first to (exclusive) newEnd of the model, which
+         * replaced indexed lines from first to (exclusive) oldEnd. Whole blocks holding the
+         * replaced lines are indexed again.
+         */
+        private void replace(int first, int oldEnd, int newEnd, TextEditorModel model) {
+            final int size = mBlocks.size();
+            final int from = Math.min(mBlocks.indexOf(first), Math.max(size - 1, 0));
+            final int to = size == 0 ? from : (oldEnd > first ? mBlocks.indexOf(oldEnd - 1) : from) + 1;
+            final int start = (int) mBlocks.sum(from);
+            final int end = (int) mBlocks.sum(to) + newEnd - oldEnd;
+
+            for (int i = from; i < to; i++) {
+                final int id = mIds[mBlocks.handleAt(i)];
+                mHandles[id] = -1;
+                mLiveIds -= mGramCounts[id];
+                mStaleIds += mGramCounts[id];
+            }
+
+            final int[] counts = blocks(end - start);
+            mBlocks.replace(from, to - from, counts);
+            add(from, counts, model.linesRange(start, end));
+
+            if (mStaleIds > Math.max(mLiveIds, MIN_GARBAGE)) {
+                compact();
+            }
+        }
+
+        /**
+         * Returns the lines of the blocks containing every trigram of the text, sorted.
+         */
+        private int[] candidates(String text) {
+            final long[] grams = grams(text);
+            final int[] slots = new int[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                slots[i] = mPostings.find(grams[i]);
+                if (slots[i] < 0) {
+                    return new int[0];
+                }
+            }
+//            Shortest lists first, the others are only searched for the ids left.
+            for (int i = 1; i < slots.length; i++) {
+                final int slot = slots[i];
+                int j = i;
+                for (; j > 0 && mPostings.size(slots[j - 1]) > mPostings.size(slot); j--) {
+                    slots[j] = slots[j - 1];
+                }
+                slots[j] = slot;
+            }
+
+            int[] ids = new int[mPostings.size(slots[0])];
+            int count = 0;
+            for (int i = 0; i < ids.length; i++) {
+                final int id = mPostings.list(slots[0])[i];
+                if (mHandles[id] >= 0) {
+                    ids[count++] = id;
+                }
+            }
+            for (int i = 1; i < slots.length && count > 0; i++) {
+                final int[] list = mPostings.list(slots[i]);
+                final int size = mPostings.size(slots[i]);
+                int kept = 0;
+                for (int j = 0; j < count; j++) {
+                    if (Arrays.binarySearch(list, 0, size, ids[j]) >= 0) {
+                        ids[kept++] = ids[j];
+                    }
+                }
+                count = kept;
+            }
+
+            final int[] blocks = new int[count];
+            int lineCount = 0;
+            for (int i = 0; i < count; i++) {
+                blocks[i] = mBlocks.indexOfHandle(mHandles[ids[i]]);
+                lineCount += mBlocks.get(blocks[i]);
+            }
+            Arrays.sort(blocks);
+
+            final int[] lines = new int[lineCount];
+            int line = 0;
+            for (int block : blocks) {
+                final int start = (int) mBlocks.sum(block);
+                for (int i = 0, blockLines = mBlocks.get(block); i < blockLines; i++) {
+                    lines[line++] = start + i;
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * Indexes the lines as new blocks with the given line counts, starting at the block index.
+         */
+        private void add(int index, int[] counts, Iterator<String> lines) {
+            for (int i = 0; i < counts.length; i++) {
+                int gramCount = 0;
+                for (int j = 0; j < counts[i]; j++) {
+                    final String line = lines.next();
+                    if (gramCount + line.length() > mGrams.length) {
+                        mGrams = Arrays.copyOf(mGrams, Math.max(mGrams.length * 2, gramCount + line.length()));
+                    }
+                    for (int x = 0; x + 2 < line.length(); x++) {
+                        mGrams[gramCount++] = gram(line, x);
+                    }
+                }
+                gramCount = distinct(mGrams, gramCount);
+
+                final int handle = mBlocks.handleAt(index + i);
+                final int id = mNextId++;
+                if (handle >= mIds.length) {
+                    mIds = Arrays.copyOf(mIds, Math.max(mIds.length * 2, handle + 1));
+                }
+                if (id == mHandles.length) {
+                    mHandles = Arrays.copyOf(mHandles, id * 2);
+                    mGramCounts = Arrays.copyOf(mGramCounts, id * 2);
+                }
+                mIds[handle] = id;
+                mHandles[id] = handle;
+                mGramCounts[id] = gramCount;
+                mLiveIds += gramCount;
+                for (int j = 0; j < gramCount; j++) {
+                    mPostings.add(mGrams[j], id);
+                }
+            }
+        }
+
+        /**
+         * Drops ids of replaced blocks from the postings and numbers the blocks left from 0,
+         * keeping their order.
+         */
+        private void compact() {
+            final int[] renumbered = new int[mNextId];
+            int next = 0;
+            for (int id = 0; id < mNextId; id++) {
+                if (mHandles[id] < 0) {
+                    renumbered[id] = -1;
+                    continue;
+                }
+                renumbered[id] = next;
+                mHandles[next] = mHandles[id];
+                mGramCounts[next] = mGramCounts[id];
+                mIds[mHandles[next]] = next;
+                next++;
+            }
+            mNextId = next;
+            mPostings.renumber(renumbered);
+            mStaleIds = 0;
+        }
+
+        /**
+         * Returns line counts of blocks splitting the lines as evenly as possible.
+         */
+        private static int[] blocks(int lineCount) {
+            final int[] counts = new int[(lineCount + BLOCK_LINES - 1) / BLOCK_LINES];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = lineCount / counts.length + (i < lineCount % counts.length ? 1 : 0);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Open addressing hash map from trigrams to growable lists of block ids.
+     */
+    private static final class Postings {
+
+        private long[] mGrams = new long[1024];
+
+        /**
+         * Null in free slots.
+         */
+        private int[][] mLists = new int[1024][];
+        private int[] mSizes = new int[1024];
+        private int mCount;
+
+        /**
+         * Returns the slot of the trigram, -1 if no block contains it.
+         */
+        private int find(long gram) {
+            final int mask = mLists.length - 1;
+            for (int slot = hash(gram) & mask; mLists[slot] != null; slot = (slot + 1) & mask) {
+                if (mGrams[slot] == gram) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int[] list(int slot) {
+            return mLists[slot];
+        }
+
+        private int size(int slot) {
+            return mSizes[slot];
+        }
+
+        /**
+         * Appends the id to the list of the trigram.
+         */
+        private void add(long gram, int id) {
+            final int mask = mLists.length - 1;
+            int slot = hash(gram) & mask;
+            while (mLists[slot] != null && mGrams[slot] != gram) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (mLists[slot] == null) {
+                mGrams[slot] = gram;
+                mLists[slot] = new int[2];
+                if (++mCount * 2 > mLists.length) {
+                    rehash(mLists.length * 2);
+                    add(gram, id);
+                    return;
+                }
+            }
+            if (mSizes[slot] == mLists[slot].length) {
+                mLists[slot] = Arrays.copyOf(mLists[slot], mSizes[slot] + (mSizes[slot] >> 1) + 1);
+            }
+            mLists[slot][mSizes[slot]++] = id;
+        }
+
+        /**
+         * Replaces every id with its new id, dropping ids whose new id is -1 and trigrams left
+         * without ids.
+         */
+        private void renumber(int[] ids) {
+            mCount = 0;
+            for (int slot = 0; slot < mLists.length; slot++) {
+                final int[] list = mLists[slot];
+                if (list == null) {
+                    continue;
+                }
+
+                int size = 0;
+                for (int i = 0; i < mSizes[slot]; i++) {
+                    if (ids[list[i]] >= 0) {
+                        list[size++] = ids[list[i]];
+                    }
+                }
+                if (size == 0) {
+                    mLists[slot] = null;
+                } else {
+                    mLists[slot] = size < list.length / 2 ? Arrays.copyOf(list, size) : list;
+                    mCount++;
+                }
+                mSizes[slot] = size;
+            }
+            rehash(Math.max(Integer.highestOneBit(mCount * 4 - 1), 1024));
+        }
+
+        private void rehash(int capacity) {
+            final long[] grams = mGrams;
+            final int[][] lists = mLists;
+            final int[] sizes = mSizes;
+            mGrams = new long[capacity];
+            mLists = new int[capacity][];
+            mSizes = new int[capacity];
+
+            final int mask = capacity - 1;
+            for (int i = 0; i < lists.length; i++) {
+                if (lists[i] == null) {
+                    continue;
+                }
+                int slot = hash(grams[i]) & mask;
+                while (mLists[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                mGrams[slot] = grams[i];
+                mLists[slot] = lists[i];
+                mSizes[slot] = sizes[i];
+            }
+        }
+
+        private static int hash(long gram) {
+            return (int) ((gram * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
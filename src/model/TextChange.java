@@ -0,0 +1,142 @@
+package model;
+
+/**
+ * Describes which lines of a {@link TextEditorModel} were changed by an edit.
+ * Lines from the first line (inclusive) up to the old line count were replaced
+ * by new line count lines. Lines after them have only moved.
+ * <p>
+ * A change also carries the cursor location before and after the edit. Changes made
+ * inside a batch (see {@link TextEditorModel#beginBatch()}) are merged into a single change.
+ */
+public final class TextChange {
+
+    private final int mFirstLine;
+    private final int mOldLineCount;
+    private final int mNewLineCount;
+
+    /**
+     * Can be null.
+     */
+    private final Location mOldCursor;
+
+    /**
+     * Can be null.
+     */
+    private final Location mNewCursor;
+
+    /**
+     * Creates a text change without cursor locations.
+     *
+     * @param firstLine    primitive int, first changed line.
+     * @param oldLineCount primitive int, number of lines replaced.
+     * @param newLineCount primitive int, number of lines which replaced them.
+     */
+    public TextChange(int firstLine, int oldLineCount, int newLineCount) {
+        this(firstLine, oldLineCount, newLineCount, null, null);
+    }
+
+    /**
+     * Creates a text change. Cursor locations are copied.
+     *
+     * @param firstLine    primitive int, first changed line.
+     * @param oldLineCount primitive int, number of lines replaced.
+     * @param newLineCount primitive int, number of lines which replaced them.
+     * @param oldCursor    {@link Location} of the cursor before the change, can be null.
+     * @param newCursor    {@link Location} of the cursor after the change, can be null.
+     */
+    public TextChange(int firstLine, int oldLineCount, int newLineCount, Location oldCursor, Location newCursor) {
+        mFirstLine = firstLine;
+        mOldLineCount = oldLineCount;
+        mNewLineCount = newLineCount;
+        mOldCursor = oldCursor == null ? null : new Location(oldCursor);
+        mNewCursor = newCursor == null ? null : new Location(newCursor);
+    }
+
+    /**
+     * Returns the first changed line.
+     *
+     * @return primitive int.
+     */
+    public int getFirstLine() {
+        return mFirstLine;
+    }
+
+    /**
+     * Returns the number of lines the edit replaced, starting with the first line.
+     *
+     * @return primitive int.
+     */
+    public int getOldLineCount() {
+        return mOldLineCount;
+    }
+
+    /**
+     * Returns the number of lines which replaced the old lines.
+     *
+     * @return primitive int.
+     */
+    public int getNewLineCount() {
+        return mNewLineCount;
+    }
+
+    /**
+     * Returns the cursor location before the change.
+     *
+     * @return {@link Location} which can be null if the location is unknown.
+     */
+    public Location getOldCursor() {
+        return mOldCursor == null ? null : new Location(mOldCursor);
+    }
+
+    /**
+     * Returns the cursor location after the change.
+     *
+     * @return {@link Location} which can be null if the location is unknown.
+     */
+    public Location getNewCursor() {
+        return mNewCursor == null ? null : new Location(mNewCursor);
+    }
+
+    /**
+     * Returns true if lines after the change moved up or down.
+     *
+     * @return primitive boolean.
+     */
+    public boolean isLineCountChanged() {
+        return mOldLineCount != mNewLineCount;
+    }
+
+    /**
+     * Returns a single change equal to applying this change and then the next one.
+     * Line numbers of the next change are relative to the text after this change.
+     * The merged change covers the lines of both changes, which can include untouched
+     * lines between them. Its old cursor is the old cursor of this change and its new
+     * cursor is the new cursor of the next one.
+     *
+     * @param next {@link TextChange} made right after this one.
+     * @return {@link TextChange}.
+     */
+    public TextChange merge(TextChange next) {
+//        Both changes are compared in the lines between them, after this change and before the next one.
+        final int first = Math.min(mFirstLine, next.mFirstLine);
+        final int end = Math.max(mFirstLine + mNewLineCount, next.mFirstLine + next.mOldLineCount);
+
+        return new TextChange(
+                first,
+                end - (mNewLineCount - mOldLineCount) - first,
+                end + (next.mNewLineCount - next.mOldLineCount) - first,
+                mOldCursor,
+                next.mNewCursor
+        );
+    }
+
+    /**
+     * Returns {@link String} representation of the change.
+     *
+     * @return {@link String}.
+     */
+    @Override
+    public String toString() {
+        return mFirstLine + " -" + mOldLineCount + " +" + mNewLineCount;
+    }
+}
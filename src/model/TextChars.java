@@ -0,0 +1,253 @@
+package model;
+
+import model.storage.TextStorage;
+
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link CharSequence} view of a range of a {@link TextStorage}, lines joined with newlines,
+ * which doesn't concatenate the text. Characters are addressed by their offset from the start
+ * of the range.
+ * <p>
+ * Line offsets are computed once and can be shared between views with {@link TextChars#copy()}.
+ * A view remembers the last line it read, so it is not thread safe, but copies can be read
+ * by different threads at the same time. A view of a storage which is edited afterwards is
+ * undefined, views of a {@link TextSnapshot} stay valid forever.
+ */
+final class TextChars implements CharSequence {
+
+    private final TextStorage mStorage;
+
+    /**
+     * Line of the storage where the range begins.
+     */
+    private final int mFirstLine;
+
+    /**
+     * Column of the first line where the range begins.
+     */
+    private final int mStartColumn;
+
+    /**
+     * Offset where every line of the range begins.
+     */
+    private final int[] mLineStarts;
+
+    private final int mLength;
+
+    private int mCachedLine = -1;
+    private String mCachedText;
+
+    /**
+     * Creates a view of the whole snapshot.
+     *
+     * @param snapshot {@link TextSnapshot}, shorter than {@link Integer#MAX_VALUE} characters.
+     */
+    TextChars(TextSnapshot snapshot) {
+        this(snapshot.getStorage(), new TextRange(0, 0,
+                snapshot.lineLength(snapshot.lineCount() - 1), snapshot.lineCount() - 1));
+    }
+
+    /**
+     * Creates a view of the range of the storage.
+     *
+     * @param storage {@link TextStorage}.
+     * @param range   {@link TextRange} inside the storage, shorter than {@link Integer#MAX_VALUE} characters.
+     */
+    TextChars(TextStorage storage, TextRange range) {
+        final TextPosition start = range.getBottomRightStart();
+        final TextPosition end = range.getBottomRightEnd();
+        mStorage = storage;
+        mFirstLine = start.getY();
+        mStartColumn = start.getX();
+        mLineStarts = new int[end.getY() - start.getY() + 1];
+        long offset = -start.getX();
+        for (int i = 0; i < mLineStarts.length; i++) {
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Text is too long.");
+            }
+            mLineStarts[i] = (int) Math.max(offset, 0);
+            offset += storage.lineLength(mFirstLine + i) + 1;
+        }
+        final long length = offset - 1 - (storage.lineLength(end.getY()) - end.getX());
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Text is too long.");
+        }
+        mLength = (int) length;
+    }
+
+    private TextChars(TextChars chars) {
+        mStorage = chars.mStorage;
+        mFirstLine = chars.mFirstLine;
+        mStartColumn = chars.mStartColumn;
+        mLineStarts = chars.mLineStarts;
+        mLength = chars.mLength;
+    }
+
+    /**
+     * Returns a view of the same text with its own line cache.
+     *
+     * @return {@link TextChars}.
+     */
+    TextChars copy() {
+        return new TextChars(this);
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return primitive int.
+     */
+    int lineCount() {
+        return mLineStarts.length;
+    }
+
+    /**
+     * Returns the offset where the line of the range begins.
+     *
+     * @param line primitive int, counted from the first line of the range.
+     * @return primitive int.
+     */
+    int lineStart(int line) {
+        return mLineStarts[line];
+    }
+
+    /**
+     * Returns the line of the range containing the offset. Offset of a newline belongs to
+     * the line it ends.
+     *
+     * @param offset primitive int.
+     * @return primitive int, counted from the first line of the range.
+     */
+    int lineOf(int offset) {
+        if (mCachedLine >= 0 && offset >= mLineStarts[mCachedLine]
+                && (mCachedLine + 1 == mLineStarts.length || offset < mLineStarts[mCachedLine + 1])) {
+            return mCachedLine;
+        }
+
+        int low = 0;
+        int high = mLineStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of the offset in the storage.
+     *
+     * @param offset primitive int.
+     * @return {@link TextPosition}.
+     */
+    TextPosition positionOf(int offset) {
+        int line = lineOf(offset);
+        return new TextPosition(offset - mLineStarts[line] + (line == 0 ? mStartColumn : 0), mFirstLine + line);
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("Offset " + index + " is outside of boundaries.");
+        }
+
+        int line = lineOf(index);
+        if (line != mCachedLine) {
+            mCachedLine = line;
+            mCachedText = mStorage.getLine(mFirstLine + line);
+        }
+        int column = index - mLineStarts[line] + (line == 0 ? mStartColumn : 0);
+        return column == mCachedText.length() ? '\n' : mCachedText.charAt(column);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + ".." + end + " is outside of boundaries.");
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        int offset = start;
+        while (offset < end) {
+            int line = lineOf(offset);
+            String text = mStorage.getLine(mFirstLine + line);
+            int column = offset - mLineStarts[line] + (line == 0 ? mStartColumn : 0);
+            int to = Math.min(text.length(), column + end - offset);
+            sb.append(text, column, to);
+            offset += to - column;
+            if (offset < end) {
+                sb.append('\n');
+                offset++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Concatenates the whole text.
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, mLength).toString();
+    }
+
+    /**
+     * Returns the text of the range of the storage as a sequence of read-only {@link CharBuffer}s
+     * wrapping the lines, newlines come as separate buffers. Lines are read while the stream
+     * is consumed, the text is never concatenated and there is no limit on its length.
+     *
+     * @param storage {@link TextStorage}.
+     * @param range   {@link TextRange} inside the storage.
+     * @return {@link Stream<CharBuffer>}.
+     */
+    static Stream<CharBuffer> chunks(TextStorage storage, TextRange range) {
+        final TextPosition start = range.getBottomRightStart();
+        final TextPosition end = range.getBottomRightEnd();
+        final Iterator<String> lines = storage.lines(start.getY(), end.getY() + 1);
+
+        final Iterator<CharBuffer> chunks = new Iterator<CharBuffer>() {
+            private int mLine = start.getY();
+            private boolean mNewline;
+
+            @Override
+            public boolean hasNext() {
+                return mNewline || lines.hasNext();
+            }
+
+            @Override
+            public CharBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (mNewline) {
+                    mNewline = false;
+                    return CharBuffer.wrap("\n");
+                }
+
+                final String line = lines.next();
+                final int from = mLine == start.getY() ? start.getX() : 0;
+                final int to = mLine == end.getY() ? end.getX() : line.length();
+                mNewline = mLine++ != end.getY();
+                return CharBuffer.wrap(line, from, to);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                chunks, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
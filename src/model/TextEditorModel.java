@@ -1,30 +1,121 @@
 package model;
 
+import model.storage.GapBufferStorage;
+import model.storage.MappedFileStorage;
+import model.storage.RopeStorage;
+import model.storage.TextStorage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Under construction.
  */
 public class TextEditorModel {
 
-    private List<String> mLines;
+    /**
+     * Last version given to the text of any model.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private TextStorage mStorage;
+
+    /**
+     * Version of the text, changed by every edit and unique among all models.
+     */
+    private long mVersion;
     private Location mCursorLocation;
 
     /**
+     * Position where the selection began, the selection spans from it to the cursor.
      * Can be null.
      */
-    private LocationRange mSelectionRange;
+    private TextPosition mSelectionAnchor;
+
+    /**
+     * Last selection returned by {@link TextEditorModel#getSelection()}, reused until the cursor moves.
+     */
+    private TextRange mSelection;
+
+    /**
+     * Cursors besides the main one. Every cursor selects from the start to the end of its
+     * range, empty ranges are cursors without a selection.
+     */
+    private List<TextRange> mExtraCursors;
 
     private Set<CursorObserver> mCursorObservers;
     private Set<TextObserver> mTextObservers;
     private ClipboardStack mClipboardStack;
+    private UndoManager mUndoManager;
+
+    /**
+     * Number of batches which have begun and were not committed yet.
+     */
+    private int mBatchDepth;
 
+    /**
+     * Change collected by the current batch, null if the text didn't change yet.
+     */
+    private TextChange mBatchChange;
+
+    /**
+     * Cursor location when the outermost batch began.
+     */
+    private Location mBatchCursor;
+
+    /**
+     * Length of every line plus its newline, the offset where a line begins is the sum of the
+     * lines before it. Built when an offset is first converted, null until then.
+     */
+    private PrefixSums mLineOffsets;
+
+    /**
+     * Creates a text model holding the given text in a rope, so snapshots are O(1).
+     *
+     * @param text {@link String}.
+     */
     public TextEditorModel(String text) {
-        mLines = new ArrayList<>(Arrays.asList(text.split("\n")));
+        this(new GapBufferStorage(new RopeStorage(Arrays.asList(text.split("\n")))));
+    }
+
+    /**
+     * Opens the file at the given path without reading it to the heap.
+     * File is memory-mapped and lines are decoded only when they are needed.
+     *
+     * @param path {@link Path} of an UTF-8 text file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public TextEditorModel(Path path) throws IOException {
+        this(new GapBufferStorage(new MappedFileStorage(path)));
+    }
+
+    /**
+     * Creates a text model on top of the given storage engine.
+     *
+     * @param storage {@link TextStorage}.
+     */
+    public TextEditorModel(TextStorage storage) {
+        mStorage = storage;
+        mVersion = VERSIONS.incrementAndGet();
         mCursorObservers = new HashSet<>();
         mTextObservers = new HashSet<>();
         mCursorLocation = new Location();
+        mExtraCursors = new ArrayList<>();
         mClipboardStack = new ClipboardStack();
+        mUndoManager = new UndoManager(this);
     }
 
     /**
@@ -36,32 +127,249 @@ public class TextEditorModel {
         return mCursorLocation;
     }
 
+    /**
+     * Returns the cursor location as an immutable {@link TextPosition}.
+     *
+     * @return {@link TextPosition}.
+     */
+    public TextPosition getCursor() {
+        return TextPosition.of(mCursorLocation);
+    }
+
     /**
      * Method returns current text selection range.
      * If the selection didn't exist previously this method will return null.
+     * Returned range is a copy, changing it doesn't change the selection.
      *
      * @return {@link LocationRange} which can be null if the selection didn't previously exist.
+     * @see TextEditorModel#getSelection()
      */
     public LocationRange getSelectionRange() {
-        return mSelectionRange;
+        final TextRange selection = getSelection();
+        return selection == null ? null : selection.toLocationRange();
     }
 
     /**
      * Method sets a selection range for the text that was selected.
      *
-     * @param selectionRange {@link LocationRange}.
+     * @param selectionRange {@link LocationRange}, null removes the selection.
+     * @see TextEditorModel#setSelection(TextRange)
      */
     public void setSelectionRange(LocationRange selectionRange) {
-        mSelectionRange = selectionRange;
+        setSelection(selectionRange == null ? null : TextRange.of(selectionRange));
+    }
+
+    /**
+     * Returns the current selection. Selection spans from the position where it began to the cursor.
+     * The same instance is returned until the selection changes.
+     *
+     * @return {@link TextRange} which can be null if there is no selection.
+     */
+    public TextRange getSelection() {
+        if (mSelectionAnchor == null) {
+            return null;
+        }
+        if (mSelection == null || !mSelection.getEnd().isAt(mCursorLocation)) {
+            mSelection = new TextRange(mSelectionAnchor, TextPosition.of(mCursorLocation));
+        }
+        return mSelection;
+    }
+
+    /**
+     * Selects the given range. The selection begins at the start of the range and the cursor
+     * is moved to its end.
+     *
+     * @param selection {@link TextRange}, null removes the selection.
+     * @throws IllegalArgumentException if the range is outside of the text.
+     */
+    public void setSelection(TextRange selection) {
+        if (selection == null) {
+            clearSelection();
+            return;
+        }
+        if (!isSelectionLegal(selection)) {
+            throw new IllegalArgumentException("This selection goes outside of text boundaries");
+        }
+
+        mSelectionAnchor = selection.getStart();
+        if (!selection.getEnd().isAt(mCursorLocation)) {
+            moveCursorTo(selection.getEnd().toPacked());
+        }
+    }
+
+    /**
+     * Begins a selection at the cursor unless there already is one.
+     * Moving the cursor afterwards extends the selection.
+     */
+    public void startSelection() {
+        if (mSelectionAnchor == null) {
+            mSelectionAnchor = TextPosition.of(mCursorLocation);
+        }
+    }
+
+    /**
+     * Removes the selection, the text stays unchanged.
+     */
+    public void clearSelection() {
+        mSelectionAnchor = null;
+        mSelection = null;
     }
 
     /**
      * Method returns string lines contained in this object.
+     * Returned list is a read-only view of the underlying {@link TextStorage}, it changes
+     * together with the text. Use {@link TextEditorModel#snapshot()} for a view which doesn't.
      *
      * @return {@link List<String>}.
      */
     public List<String> getLines() {
-        return mLines;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return mStorage.getLine(index);
+            }
+
+            @Override
+            public int size() {
+                return mStorage.lineCount();
+            }
+        };
+    }
+
+    /**
+     * Returns an immutable point-in-time view of the text. Rope backed models share their lines
+     * with the snapshot, so taking it is O(1), other storages are copied.
+     *
+     * @return {@link TextSnapshot}.
+     * @see TextStorage#snapshot()
+     */
+    public TextSnapshot snapshot() {
+        return new TextSnapshot(mStorage.snapshot(), mVersion);
+    }
+
+    /**
+     * Returns the storage engine holding the text of this model.
+     *
+     * @return {@link TextStorage}.
+     */
+    public TextStorage getStorage() {
+        return mStorage;
+    }
+
+    /**
+     * Returns the number of lines in this model.
+     *
+     * @return primitive int.
+     */
+    public int lineCount() {
+        return mStorage.lineCount();
+    }
+
+    /**
+     * Returns the number of characters in this model, newlines included.
+     *
+     * @return primitive long.
+     */
+    public long length() {
+        return lineOffsets().total() - 1;
+    }
+
+    /**
+     * Returns the offset of the position from the beginning of the text, every line ends with
+     * a single newline character. Lines are indexed by their offsets, so this is O(log n).
+     *
+     * @param position {@link TextPosition} inside the text.
+     * @return primitive long, from 0 to {@link TextEditorModel#length()}.
+     * @throws IllegalArgumentException if the position is outside of the text.
+     */
+    public long getOffset(TextPosition position) {
+        if (!isLocationLegal(position)) {
+            throw new IllegalArgumentException("Given position is outside the boundaries of the text.");
+        }
+
+        return lineOffsets().sum(position.getY()) + position.getX();
+    }
+
+    /**
+     * Returns the offset of the location from the beginning of the text.
+     *
+     * @param location {@link Location} inside the text.
+     * @return primitive long, from 0 to {@link TextEditorModel#length()}.
+     * @throws IllegalArgumentException if the location is outside of the text.
+     * @see TextEditorModel#getOffset(TextPosition)
+     */
+    public long getOffset(Location location) {
+        return getOffset(TextPosition.of(location));
+    }
+
+    /**
+     * Returns the position at the offset from the beginning of the text, the inverse of
+     * {@link TextEditorModel#getOffset(TextPosition)}. Offset of a newline is the end of the
+     * line it ends. Found in O(log n).
+     *
+     * @param offset primitive long, from 0 to {@link TextEditorModel#length()}.
+     * @return {@link TextPosition}.
+     * @throws IllegalArgumentException if the offset is outside of the text.
+     */
+    public TextPosition getPosition(long offset) {
+        final PrefixSums offsets = lineOffsets();
+        if (offset < 0 || offset >= offsets.total()) {
+            throw new IllegalArgumentException("Given offset is outside the boundaries of the text.");
+        }
+
+        final int line = offsets.indexOf(offset);
+        return new TextPosition((int) (offset - offsets.sum(line)), line);
+    }
+
+    /**
+     * Returns the location at the offset from the beginning of the text.
+     *
+     * @param offset primitive long, from 0 to {@link TextEditorModel#length()}.
+     * @return {@link Location}, a new object.
+     * @throws IllegalArgumentException if the offset is outside of the text.
+     * @see TextEditorModel#getPosition(long)
+     */
+    public Location getLocation(long offset) {
+        final TextPosition position = getPosition(offset);
+        return new Location(position.getX(), position.getY());
+    }
+
+    /**
+     * Returns the offsets of the lines, indexing every line the first time.
+     */
+    private PrefixSums lineOffsets() {
+        if (mLineOffsets == null) {
+            final int[] lengths = new int[mStorage.lineCount()];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = mStorage.lineLength(i) + 1;
+            }
+            mLineOffsets = new PrefixSums(lengths);
+        }
+        return mLineOffsets;
+    }
+
+    /**
+     * Updates the offsets of the changed lines, lines after them are not touched. Changes which
+     * keep the number of lines, like typing, set the k lengths in place in O(k log n) without
+     * allocating, others splice the lines into the index in O(k + log n).
+     */
+    private void updateLineOffsets(int firstLine, int oldLineCount, int newLineCount) {
+        if (mLineOffsets == null) {
+            return;
+        }
+
+        if (oldLineCount == newLineCount) {
+            for (int i = firstLine; i < firstLine + newLineCount; i++) {
+                mLineOffsets.set(i, mStorage.lineLength(i) + 1);
+            }
+            return;
+        }
+
+        final int[] lengths = new int[newLineCount];
+        for (int i = 0; i < newLineCount; i++) {
+            lengths[i] = mStorage.lineLength(firstLine + i) + 1;
+        }
+        mLineOffsets.replace(firstLine, oldLineCount, lengths);
     }
 
     /**
@@ -71,7 +379,7 @@ public class TextEditorModel {
      * @return {@link Iterator<String>}.
      */
     public Iterator<String> allLines() {
-        return mLines.iterator();
+        return mStorage.lines(0, mStorage.lineCount());
     }
 
     /**
@@ -85,8 +393,7 @@ public class TextEditorModel {
      * @return {@link Iterator<String>}.
      */
     public Iterator<String> linesRange(int index1, int index2) {
-        List<String> slicedList = mLines.subList(index1, index2);
-        return slicedList.iterator();
+        return mStorage.lines(index1, index2);
     }
 
     /**
@@ -97,11 +404,11 @@ public class TextEditorModel {
      * @return {@link String}.
      */
     public String getLine(int index) {
-        if (index < 0 || index > mLines.size() - 1) {
+        if (index < 0 || index > mStorage.lineCount() - 1) {
             throw new UnsupportedOperationException("Given parameter is outside of boundaries.");
         }
 
-        return mLines.get(index);
+        return mStorage.getLine(index);
     }
 
     /**
@@ -112,23 +419,86 @@ public class TextEditorModel {
      * @return {@link String}.
      */
     public String selectionToString(LocationRange selection) {
+        return selectionToString(TextRange.of(selection));
+    }
+
+    /**
+     * Converts given {@link TextRange} to the {@link String} it selects.
+     * Inside returning string, lines are separated by newlines.
+     *
+     * @param selection {@link TextRange}.
+     * @return {@link String}.
+     */
+    public String selectionToString(TextRange selection) {
+        if (!isSelectionLegal(selection)) {
+            throw new IllegalArgumentException("This selection goes outside of text boundaries");
+        }
+        final TextPosition start = selection.getBottomRightStart();
+        final TextPosition end = selection.getBottomRightEnd();
+        return mStorage.getText(start.getY(), start.getX(), end.getY(), end.getX());
+    }
+
+    /**
+     * Returns the text of the selection as a {@link CharSequence} which reads the lines
+     * directly, so the text is never concatenated. The view is valid only until the text
+     * is edited, {@link TextSnapshot#chars(TextRange)} returns one which stays valid.
+     *
+     * @param selection {@link TextRange}, shorter than {@link Integer#MAX_VALUE} characters.
+     * @return {@link CharSequence}.
+     */
+    public CharSequence selectionChars(TextRange selection) {
         if (!isSelectionLegal(selection)) {
             throw new IllegalArgumentException("This selection goes outside of text boundaries");
         }
-        Location start = selection.getBottomRightStart();
-        Location end = selection.getBottomRightEnd();
-        int deltaY = end.getY() - start.getY();
+        return new TextChars(mStorage, selection);
+    }
+
+    /**
+     * Returns a {@link Reader} of the text of the selection, which reads the lines one by one.
+     * The reader is valid only until the text is edited, {@link TextSnapshot#reader(TextRange)}
+     * returns one which stays valid.
+     *
+     * @param selection {@link TextRange}.
+     * @return {@link Reader}.
+     */
+    public Reader selectionReader(TextRange selection) {
+        if (!isSelectionLegal(selection)) {
+            throw new IllegalArgumentException("This selection goes outside of text boundaries");
+        }
+        return new TextReader(mStorage, selection);
+    }
+
+    /**
+     * Returns the text of the selection as a stream of read-only {@link CharBuffer}s, one for
+     * every selected part of a line and one for every newline. The stream is valid only until
+     * the text is edited, {@link TextSnapshot#chunks(TextRange)} returns one which stays valid.
+     *
+     * @param selection {@link TextRange}.
+     * @return {@link Stream<CharBuffer>}.
+     */
+    public Stream<CharBuffer> selectionChunks(TextRange selection) {
+        if (!isSelectionLegal(selection)) {
+            throw new IllegalArgumentException("This selection goes outside of text boundaries");
+        }
+        return TextChars.chunks(mStorage, selection);
+    }
+
+    /**
+     * Copies the text of the range to the {@link ClipboardStack}. If the storage takes
+     * snapshots in O(1) the clipboard only keeps a snapshot and the range, so copying is O(1)
+     * no matter how large the range is. Otherwise the text is copied right away.
+     *
+     * @param range {@link TextRange}.
+     */
+    public void copy(TextRange range) {
+        if (!isSelectionLegal(range)) {
+            throw new IllegalArgumentException("This selection goes outside of text boundaries");
+        }
 
-        if (deltaY == 0) {
-            return mLines.get(start.getY()).substring(start.getX(), end.getX());
+        if (mStorage.hasCheapSnapshots()) {
+            mClipboardStack.push(snapshot(), range);
         } else {
-            StringBuilder sb = new StringBuilder();
-            sb.append(mLines.get(start.getY()).substring(start.getX())).append("\n");
-            for (int i = start.getY() + 1; i < end.getY(); i++) {
-                sb.append(mLines.get(i)).append("\n");
-            }
-            sb.append(mLines.get(end.getY()).substring(0, end.getX()));
-            return sb.toString();
+            mClipboardStack.push(selectionToString(range));
         }
     }
 
@@ -141,6 +511,15 @@ public class TextEditorModel {
         return mClipboardStack;
     }
 
+    /**
+     * Returns the {@link UndoManager} recording edits of this text model.
+     *
+     * @return {@link UndoManager}.
+     */
+    public UndoManager getUndoManager() {
+        return mUndoManager;
+    }
+
     /**
      * Method adds a {@link CursorObserver} to {@link TextEditorModel}.
      * Duplicate observers are not allowed.
@@ -162,23 +541,193 @@ public class TextEditorModel {
 
     /**
      * Method updates all cursor observers on the cursor location.
+     *
+     * @param oldLocation {@link Location} of the cursor before it was moved.
      */
-    private void updateCursorObservers() {
+    private void updateCursorObservers(Location oldLocation) {
         mCursorObservers.forEach(cursorObserver ->
-                cursorObserver.updateCursorLocation(mCursorLocation));
+                cursorObserver.updateCursorLocation(oldLocation, mCursorLocation));
+    }
+
+    /**
+     * Notifies text observers about changed lines and cursor observers if the cursor moved.
+     * Inside a batch the change is only merged into the change of the batch.
+     *
+     * @param firstLine    primitive int, first changed line.
+     * @param oldLineCount primitive int, number of lines replaced.
+     * @param newLineCount primitive int, number of lines which replaced them.
+     * @param oldLocation  {@link Location} of the cursor before the change.
+     */
+    private void fireTextChanged(int firstLine, int oldLineCount, int newLineCount, Location oldLocation) {
+        if (mSelectionAnchor != null && !isLocationLegal(mSelectionAnchor)) {
+            clearSelection();
+        }
+        mExtraCursors.clear();
+        mVersion = VERSIONS.incrementAndGet();
+        updateLineOffsets(firstLine, oldLineCount, newLineCount);
+
+        final TextChange change = new TextChange(firstLine, oldLineCount, newLineCount, oldLocation, mCursorLocation);
+        if (mBatchDepth > 0) {
+            mBatchChange = mBatchChange == null ? change : mBatchChange.merge(change);
+            return;
+        }
+
+        updateTextObservers(change);
+        if (!oldLocation.equals(mCursorLocation)) {
+            updateCursorObservers(oldLocation);
+        }
+    }
+
+    /**
+     * Begins a batch of changes. Until the matching {@link TextEditorModel#commitBatch()} observers
+     * are not notified, all text changes are merged into a single {@link TextChange} instead.
+     * Batches can be nested, observers are notified when the outermost batch is committed.
+     */
+    public void beginBatch() {
+        if (mBatchDepth++ == 0) {
+            mBatchChange = null;
+            mBatchCursor = new Location(mCursorLocation);
+            mUndoManager.beginCompound();
+        }
+    }
+
+    /**
+     * Commits a batch of changes. When the outermost batch is committed text observers get
+     * one {@link TextChange} covering every change made in the batch and cursor observers
+     * are notified once if the cursor moved.
+     *
+     * @throws IllegalStateException if no batch has begun.
+     */
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("No batch has begun.");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+
+        final TextChange change = mBatchChange;
+        final Location oldLocation = mBatchCursor;
+        mBatchChange = null;
+        mBatchCursor = null;
+        mUndoManager.endCompound();
+
+        if (change != null) {
+            updateTextObservers(change);
+        }
+        if (!oldLocation.equals(mCursorLocation)) {
+            updateCursorObservers(oldLocation);
+        }
+    }
+
+    /**
+     * Runs the given edits as a single batch, observers are notified once afterwards.
+     *
+     * @param edits {@link Runnable} changing this model.
+     * @see TextEditorModel#beginBatch()
+     */
+    public void batch(Runnable edits) {
+        beginBatch();
+        try {
+            edits.run();
+        } finally {
+            commitBatch();
+        }
+    }
+
+    /**
+     * Returns true if a batch has begun and was not committed yet.
+     *
+     * @return primitive boolean.
+     */
+    public boolean isInBatch() {
+        return mBatchDepth > 0;
+    }
+
+    /**
+     * Returns the cursor location packed into a primitive long.
+     *
+     * @return primitive long.
+     * @see Positions
+     */
+    public long getCursorPosition() {
+        return Positions.of(mCursorLocation);
+    }
+
+    /**
+     * Moves the cursor to the given position and notifies cursor observers.
+     *
+     * @param position {@link TextPosition}.
+     * @throws IllegalArgumentException if the position is outside of the text.
+     */
+    public void moveCursorTo(TextPosition position) {
+        if (!isLocationLegal(position)) {
+            throw new IllegalArgumentException("Given position is outside the boundaries of the text.");
+        }
+        if (!position.isAt(mCursorLocation)) {
+            moveCursorTo(position.toPacked());
+        }
+    }
+
+    /**
+     * Moves the cursor to the given position and notifies cursor observers.
+     * The copy of the old location is created only when there are observers to receive it.
+     *
+     * @param position primitive long, existing position.
+     */
+    private void moveCursorTo(long position) {
+        final int oldX = mCursorLocation.getX();
+        final int oldY = mCursorLocation.getY();
+        mCursorLocation.setLocation(Positions.column(position), Positions.line(position));
+
+        if (mBatchDepth == 0 && !mCursorObservers.isEmpty()) {
+            updateCursorObservers(new Location(oldX, oldY));
+        }
+    }
+
+    /**
+     * Converts a position returned by the navigation methods to a {@link Location}.
+     *
+     * @param position primitive long.
+     * @param message  {@link String} message of the exception.
+     * @return {@link Location}.
+     * @throws UnsupportedOperationException if the position is {@link Positions#NONE}.
+     */
+    private static Location toLocation(long position, String message) {
+        if (position == Positions.NONE) {
+            throw new UnsupportedOperationException(message);
+        }
+        return Positions.toLocation(position);
     }
 
     /**
      * Method moves the location of the cursor left.
      */
     public void moveCursorLeft() {
-        try {
-            mCursorLocation.setLocation(getLeftLocation(mCursorLocation));
-        } catch (UnsupportedOperationException e) {
-            return;
+        final long position = leftPosition(getCursorPosition());
+        if (position != Positions.NONE) {
+            moveCursorTo(position);
         }
+    }
 
-        updateCursorObservers();
+    /**
+     * Returns the first left position relative to the given position.
+     * Neither allocates nor throws, so it is safe to call for every key repeat.
+     *
+     * @param position primitive long, see {@link Positions}.
+     * @return primitive long, {@link Positions#NONE} if the left position doesn't exist.
+     */
+    public long leftPosition(long position) {
+        final int line = Positions.line(position);
+        final int column = Positions.column(position);
+
+        if (column > 0) {
+            return Positions.of(line, column - 1);
+        } else if (line > 0) {
+            return Positions.of(line - 1, mStorage.lineLength(line - 1));
+        } else {
+            return Positions.NONE;
+        }
     }
 
     /**
@@ -187,39 +736,39 @@ public class TextEditorModel {
      * @param currentLocation location to be used as a relative point.
      * @return {@link Location}
      * @throws UnsupportedOperationException if the cursor doesn't have a left location.
+     * @see TextEditorModel#leftPosition(long)
      */
     public Location getLeftLocation(Location currentLocation) {
-        if (mCursorLocation.getY() == 0 && mCursorLocation.getX() == 0) {
-            throw new UnsupportedOperationException("Left location doesn't exist.");
-        }
-
-        int x = currentLocation.getX();
-        int y = currentLocation.getY();
-
-        if (x == 0) {
-            return new Location(
-                    mLines.get(y - 1).length(),
-                    y - 1
-            );
-        } else {
-            return new Location(
-                    x - 1,
-                    y
-            );
-        }
+        return toLocation(leftPosition(Positions.of(currentLocation)), "Left location doesn't exist.");
     }
 
     /**
      * Method moves the location of the cursor right.
      */
     public void moveCursorRight() {
-        try {
-            mCursorLocation.setLocation(getRightLocation(mCursorLocation));
-        } catch (UnsupportedOperationException e) {
-            return;
+        final long position = rightPosition(getCursorPosition());
+        if (position != Positions.NONE) {
+            moveCursorTo(position);
         }
+    }
 
-        updateCursorObservers();
+    /**
+     * Returns the first right position relative to the given position.
+     *
+     * @param position primitive long, see {@link Positions}.
+     * @return primitive long, {@link Positions#NONE} if the right position doesn't exist.
+     */
+    public long rightPosition(long position) {
+        final int line = Positions.line(position);
+        final int column = Positions.column(position);
+
+        if (column < mStorage.lineLength(line)) {
+            return Positions.of(line, column + 1);
+        } else if (line < mStorage.lineCount() - 1) {
+            return Positions.of(line + 1, 0);
+        } else {
+            return Positions.NONE;
+        }
     }
 
     /**
@@ -228,41 +777,35 @@ public class TextEditorModel {
      * @param currentLocation location to be used as a relative point.
      * @return {@link Location}.
      * @throws UnsupportedOperationException if the location to the right doesn't exist.
+     * @see TextEditorModel#rightPosition(long)
      */
     public Location getRightLocation(Location currentLocation) {
-        int lastIndexOnPage = mLines.get(mLines.size() - 1).length();
-        if (mCursorLocation.getY() == mLines.size() - 1 && mCursorLocation.getX() == lastIndexOnPage) {
-            throw new UnsupportedOperationException("Right location doesn't exist.");
-        }
-
-        int x = currentLocation.getX();
-        int y = currentLocation.getY();
-
-        int lastIndexInLine = mLines.get(y).length();
-        if (x == lastIndexInLine) {
-            return new Location(
-                    0,
-                    y + 1
-            );
-        } else {
-            return new Location(
-                    x + 1,
-                    y
-            );
-        }
+        return toLocation(rightPosition(Positions.of(currentLocation)), "Right location doesn't exist.");
     }
 
     /**
      * Method moves the location of the cursor up.
      */
     public void moveCursorUp() {
-        try {
-            mCursorLocation.setLocation(getUpLocation(mCursorLocation));
-        } catch (UnsupportedOperationException e) {
-            return;
+        final long position = upPosition(getCursorPosition());
+        if (position != Positions.NONE) {
+            moveCursorTo(position);
         }
+    }
 
-        updateCursorObservers();
+    /**
+     * Returns the first up position relative to the given position.
+     * Column is clamped to the length of the line above.
+     *
+     * @param position primitive long, see {@link Positions}.
+     * @return primitive long, {@link Positions#NONE} if the up position doesn't exist.
+     */
+    public long upPosition(long position) {
+        final int line = Positions.line(position);
+        if (line == 0) {
+            return Positions.NONE;
+        }
+        return Positions.of(line - 1, Math.min(Positions.column(position), mStorage.lineLength(line - 1)));
     }
 
     /**
@@ -270,40 +813,35 @@ public class TextEditorModel {
      *
      * @return {@link Location}.
      * @throws UnsupportedOperationException if the location doesn't exist.
+     * @see TextEditorModel#upPosition(long)
      */
     public Location getUpLocation(Location currentLocation) {
-        int x = currentLocation.getX();
-        int y = currentLocation.getY();
-
-        if (y == 0) {
-            throw new UnsupportedOperationException("Up location doesn't exist.");
-        }
-
-        int aboveLineLastIndex = mLines.get(y - 1).length();
-        if (x > aboveLineLastIndex) {
-            return new Location(
-                    aboveLineLastIndex,
-                    y - 1
-            );
-        } else {
-            return new Location(
-                    x,
-                    y - 1
-            );
-        }
+        return toLocation(upPosition(Positions.of(currentLocation)), "Up location doesn't exist.");
     }
 
     /**
      * Method moves the location of the cursor down.
      */
     public void moveCursorDown() {
-        try {
-            mCursorLocation.setLocation(getDownLocation(mCursorLocation));
-        } catch (UnsupportedOperationException e) {
-            return;
+        final long position = downPosition(getCursorPosition());
+        if (position != Positions.NONE) {
+            moveCursorTo(position);
         }
+    }
 
-        updateCursorObservers();
+    /**
+     * Returns the first down position relative to the given position.
+     * Column is clamped to the length of the line below.
+     *
+     * @param position primitive long, see {@link Positions}.
+     * @return primitive long, {@link Positions#NONE} if the down position doesn't exist.
+     */
+    public long downPosition(long position) {
+        final int line = Positions.line(position);
+        if (line >= mStorage.lineCount() - 1) {
+            return Positions.NONE;
+        }
+        return Positions.of(line + 1, Math.min(Positions.column(position), mStorage.lineLength(line + 1)));
     }
 
     /**
@@ -311,27 +849,10 @@ public class TextEditorModel {
      *
      * @return {@link Location}.
      * @throws UnsupportedOperationException if the location doesn't exist.
+     * @see TextEditorModel#downPosition(long)
      */
     public Location getDownLocation(Location currentLocation) {
-        int x = currentLocation.getX();
-        int y = currentLocation.getY();
-
-        if (y == mLines.size() - 1) {
-            throw new UnsupportedOperationException("Down location doesn't exist.");
-        }
-
-        int belowLineLastIndex = mLines.get(y + 1).length();
-        if (x > belowLineLastIndex) {
-            return new Location(
-                    belowLineLastIndex,
-                    y + 1
-            );
-        } else {
-            return new Location(
-                    x,
-                    y + 1
-            );
-        }
+        return toLocation(downPosition(Positions.of(currentLocation)), "Down location doesn't exist.");
     }
 
     /**
@@ -355,36 +876,51 @@ public class TextEditorModel {
 
     /**
      * Private method to update all {@link TextObserver}s.
+     *
+     * @param change {@link TextChange} describing the changed lines.
      */
-    private void updateTextObservers() {
-        mTextObservers.forEach(TextObserver::updateText);
+    private void updateTextObservers(TextChange change) {
+        mTextObservers.forEach(textObserver -> textObserver.updateText(change));
+    }
+
+    /**
+     * Records the character at the given position, which is about to be deleted, to the {@link UndoManager}.
+     * At the end of a line the deleted character is the newline.
+     *
+     * @param line   primitive int.
+     * @param column primitive int.
+     * @param merge  {@link UndoManager.Merge}.
+     */
+    private void recordCharDeletion(int line, int column, UndoManager.Merge merge) {
+        final TextPosition start = new TextPosition(column, line);
+        if (column == mStorage.lineLength(line)) {
+            mUndoManager.recordDeletion(start, new TextPosition(0, line + 1), "\n", merge);
+        } else {
+            final String text = String.valueOf(mStorage.getLine(line).charAt(column));
+            mUndoManager.recordDeletion(start, new TextPosition(column + 1, line), text, merge);
+        }
     }
 
     /**
      * Removes a character behind the cursor and moves the cursor to the left.
      */
     public void deleteBefore() {
-        Location leftLocation;
-        try {
-            leftLocation = getLeftLocation(mCursorLocation);
-        } catch (UnsupportedOperationException e) {
+        final long left = leftPosition(getCursorPosition());
+        if (left == Positions.NONE) {
             return;
         }
-
-//        Deletion stabilized.
-        if (mCursorLocation.getX() != 0) {
-            StringBuilder sb = new StringBuilder(mLines.get(leftLocation.getY()));
-            sb.deleteCharAt(leftLocation.getX());
-            mLines.set(leftLocation.getY(), sb.toString());
-        } else {
-            mLines.set(leftLocation.getY(), mLines.get(leftLocation.getY()) + mLines.get(mCursorLocation.getY()));
-            mLines.remove(mCursorLocation.getY());
+        final Location leftLocation = Positions.toLocation(left);
+        if (mUndoManager.isRecording()) {
+            recordCharDeletion(leftLocation.getY(), leftLocation.getX(), UndoManager.Merge.BACKSPACE);
         }
 
+//        Deletion stabilized. Deleting at the end of the left line joins the cursor line to it.
+        mStorage.deleteChar(leftLocation.getY(), leftLocation.getX());
+
+        final Location oldLocation = new Location(mCursorLocation);
         mCursorLocation.setLocation(leftLocation);
 
-        updateTextObservers();
-        updateCursorObservers();
+        fireTextChanged(leftLocation.getY(), oldLocation.getY() - leftLocation.getY() + 1, 1, oldLocation);
     }
 
     /**
@@ -392,17 +928,13 @@ public class TextEditorModel {
      */
     public void deleteAfter() {
 //        Deletion stabilized
-        int lastIndexInLine = mLines.get(mCursorLocation.getY()).length();
-        if (mCursorLocation.getX() != lastIndexInLine) {
-            StringBuilder sb = new StringBuilder(mLines.get(mCursorLocation.getY()));
-            sb.deleteCharAt(mCursorLocation.getX());
-            mLines.set(mCursorLocation.getY(), sb.toString());
-        } else if (mCursorLocation.getY() != mLines.size() - 1) {
-            mLines.set(mCursorLocation.getY(), mLines.get(mCursorLocation.getY()) + mLines.get(mCursorLocation.getY() + 1));
-            mLines.remove(mCursorLocation.getY() + 1);
+        final int lineCount = mStorage.lineCount();
+        if (mUndoManager.isRecording() && rightPosition(getCursorPosition()) != Positions.NONE) {
+            recordCharDeletion(mCursorLocation.getY(), mCursorLocation.getX(), UndoManager.Merge.DELETE);
         }
+        mStorage.deleteChar(mCursorLocation.getY(), mCursorLocation.getX());
 
-        updateTextObservers();
+        fireTextChanged(mCursorLocation.getY(), lineCount - mStorage.lineCount() + 1, 1, mCursorLocation);
     }
 
     /**
@@ -412,84 +944,63 @@ public class TextEditorModel {
      * @param range {@link LocationRange}.
      */
     public void deleteRange(LocationRange range) {
+        deleteRange(TextRange.of(range));
+    }
+
+    /**
+     * Removes any text contained in given parameter.
+     * This method will automatically remove the selection.
+     *
+     * @param range {@link TextRange}.
+     */
+    public void deleteRange(TextRange range) {
         if (!isSelectionLegal(range)) {
             throw new IllegalArgumentException("Given selection is outside the boundaries of the text.");
         }
 
-        final Location start = range.getBottomRightStart();
-        final Location end = range.getBottomRightEnd();
-
-        if (start.getY() == end.getY()) {
-            deleteInLine(start.getY(), start.getX(), end.getX());
-        } else {
-//            Not thoroughly tested.
-            deleteInLine(start.getY(), start.getX(), mLines.get(start.getY()).length());
-            deleteInLine(end.getY(), 0, end.getX());
-            mLines.set(start.getY(), mLines.get(start.getY()) + mLines.get(end.getY()));
-            for (int i = end.getY(); i >= start.getY() + 1; i--) {
-                mLines.remove(i);
-            }
+        final TextPosition start = range.getBottomRightStart();
+        final TextPosition end = range.getBottomRightEnd();
+        if (mUndoManager.isRecording() && !range.isEmpty()) {
+            mUndoManager.recordDeletion(start, end, selectionToString(range), UndoManager.Merge.NONE);
         }
 
-        mCursorLocation.setLocation(start);
-        mSelectionRange = null;
+        mStorage.delete(start.getY(), start.getX(), end.getY(), end.getX());
 
-        updateCursorObservers();
-        updateTextObservers();
-    }
+        final Location oldLocation = new Location(mCursorLocation);
+        mCursorLocation.setLocation(start.getX(), start.getY());
+        clearSelection();
 
-    /**
-     * Deletes text in a line. Be sure to update cursor and text observers after using this method.
-     * <b>Notice</b>: This method will never remove a line from text! It will empty the line but not remove it.
-     * For line removal use {@link List#remove(int)} method.
-     *
-     * @param lineNumber primitive int to tell in which line to delete text.
-     * @param start      inclusive index where to begin deletion.
-     * @param end        exclusive index where to end deletion.
-     */
-    private void deleteInLine(int lineNumber, int start, int end) {
-        if (start > end) {
-            throw new IllegalArgumentException("Starting index cannot be bigger to the ending index.");
-        }
-
-        StringBuilder sb = new StringBuilder(mLines.get(lineNumber));
-        sb.delete(start, end);
-        mLines.set(lineNumber, sb.toString());
+        fireTextChanged(start.getY(), end.getY() - start.getY() + 1, 1, oldLocation);
     }
 
     /**
-     * Method checks if given {@link Location} object is legal on current {@link TextEditorModel}.
-     * Returns true if location is legal.
+     * Method checks if given {@link TextPosition} is legal on current {@link TextEditorModel}.
+     * Returns true if the position is inside the text.
      *
-     * @param location {@link Location}.
+     * @param position {@link TextPosition}.
      * @return primitive boolean, is true if location is legal.
      */
-    private boolean isLocationLegal(Location location) {
-        int x = location.getX();
-        int y = location.getY();
-        int lastXIndexOnPage = mLines.get(mLines.size() - 1).length();
-        int lastYIndexOnPage = mLines.size() - 1;
+    private boolean isLocationLegal(TextPosition position) {
+        int x = position.getX();
+        int y = position.getY();
 
         return !(x < 0 ||
                 y < 0 ||
-                x > lastXIndexOnPage ||
-                y > lastYIndexOnPage
+                y >= mStorage.lineCount() ||
+                x > mStorage.lineLength(y)
         );
     }
 
     /**
-     * Method checks if the {@link LocationRange} is legal for this {@link TextEditorModel}.
+     * Method checks if the {@link TextRange} is legal for this {@link TextEditorModel}.
      * Selections are illegal if they select things beyond the borders of the text itself.
      * Method will return true if the selection is legal.
      *
-     * @param range {@link LocationRange} selection to be checked.
+     * @param range {@link TextRange} selection to be checked.
      * @return primitive boolean, true if the selection is legal.
      */
-    private boolean isSelectionLegal(LocationRange range) {
-        Location start = range.getStart();
-        Location end = range.getEnd();
-
-        return !(!isLocationLegal(start) || !isLocationLegal(end));
+    private boolean isSelectionLegal(TextRange range) {
+        return isLocationLegal(range.getStart()) && isLocationLegal(range.getEnd());
     }
 
     /**
@@ -498,21 +1009,18 @@ public class TextEditorModel {
      * @param c primitive char.
      */
     public void insert(char c) {
-        String line = mLines.get(mCursorLocation.getY());
+        final int line = mCursorLocation.getY();
+        final Location oldLocation = new Location(mCursorLocation);
+        mStorage.insert(line, mCursorLocation.getX(), c);
         if (c == 10) {
-            String beginString = mLines.get(mCursorLocation.getY()).substring(0, mCursorLocation.getX());
-            String endString = mLines.get(mCursorLocation.getY()).substring(mCursorLocation.getX());
-            mLines.set(mCursorLocation.getY(), beginString);
-            mLines.add(mCursorLocation.getY() + 1, endString);
-            mCursorLocation.setLocation(0, mCursorLocation.getY() + 1);
-            updateCursorObservers();
+            mCursorLocation.setLocation(0, line + 1);
+            mUndoManager.recordInsertion(TextPosition.of(oldLocation), getCursor(), UndoManager.Merge.NONE);
+            fireTextChanged(line, 1, 2, oldLocation);
         } else {
-            StringBuilder sb = new StringBuilder(line);
-            sb.insert(mCursorLocation.getX(), c);
-            mLines.set(mCursorLocation.getY(), sb.toString());
-            moveCursorRight(); // This will update cursor observers.
+            mCursorLocation.setX(mCursorLocation.getX() + 1);
+            mUndoManager.recordInsertion(TextPosition.of(oldLocation), getCursor(), UndoManager.Merge.TYPING);
+            fireTextChanged(line, 1, 1, oldLocation);
         }
-        updateTextObservers();
     }
 
     /**
@@ -521,33 +1029,408 @@ public class TextEditorModel {
      * @param text {@link String}.
      */
     public void insert(String text) {
-        List<String> inputTextLines = new ArrayList<>(Arrays.asList(text.split("\n")));
-        if (text.charAt(text.length() - 1) == '\n') {
-            inputTextLines.add("");
+        if (text.isEmpty()) {
+            return;
         }
 
-        if (inputTextLines.size() == 1) {
-            final String line = mLines.get(mCursorLocation.getY());
-            StringBuilder sb = new StringBuilder(line);
-            sb.insert(mCursorLocation.getX(), text);
-            mLines.set(mCursorLocation.getY(), sb.toString());
-            mCursorLocation.setX(mCursorLocation.getX() + text.length());
-        } else {
-            StringBuilder sb = new StringBuilder(mLines.get(mCursorLocation.getY()));
-            sb.insert(mCursorLocation.getX(), inputTextLines.get(0));
-            mLines.set(mCursorLocation.getY(), sb.toString());
+        mStorage.insert(mCursorLocation.getY(), mCursorLocation.getX(), text);
+        final Location oldLocation = new Location(mCursorLocation);
 
-            for (int i = 1; i < inputTextLines.size(); i++) {
-                mLines.add(mCursorLocation.getY() + i, inputTextLines.get(i));
+        int newlines = 0;
+        int lastNewline = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                newlines++;
+                lastNewline = i;
             }
+        }
 
+        if (newlines == 0) {
+            mCursorLocation.setX(mCursorLocation.getX() + text.length());
+        } else {
             mCursorLocation.setLocation(
-                    inputTextLines.get(inputTextLines.size() - 1).length(),
-                    mCursorLocation.getY() + inputTextLines.size() - 1
+                    text.length() - lastNewline - 1,
+                    mCursorLocation.getY() + newlines
             );
         }
 
-        updateCursorObservers();
-        updateTextObservers();
+        mUndoManager.recordInsertion(TextPosition.of(oldLocation), getCursor(), UndoManager.Merge.NONE);
+        fireTextChanged(oldLocation.getY(), 1, newlines + 1, oldLocation);
+    }
+
+    /**
+     * Inserts text of the snapshot inside the range at the current position of the cursor.
+     * Storages which share lines with the snapshot, e.g. a model pasting its own earlier
+     * snapshot, splice the lines in without copying them.
+     *
+     * @param snapshot {@link TextSnapshot}.
+     * @param range    {@link TextRange} inside the snapshot.
+     */
+    public void insert(TextSnapshot snapshot, TextRange range) {
+        final TextPosition start = range.getBottomRightStart();
+        final TextPosition end = range.getBottomRightEnd();
+        if (!snapshot.isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+        if (range.isEmpty()) {
+            return;
+        }
+
+        mStorage.insert(mCursorLocation.getY(), mCursorLocation.getX(),
+                snapshot.getStorage(), start.getY(), start.getX(), end.getY(), end.getX());
+        final Location oldLocation = new Location(mCursorLocation);
+
+        final int newlines = end.getY() - start.getY();
+        if (newlines == 0) {
+            mCursorLocation.setX(mCursorLocation.getX() + end.getX() - start.getX());
+        } else {
+            mCursorLocation.setLocation(end.getX(), mCursorLocation.getY() + newlines);
+        }
+
+        mUndoManager.recordInsertion(TextPosition.of(oldLocation), getCursor(), UndoManager.Merge.NONE);
+        fireTextChanged(oldLocation.getY(), 1, newlines + 1, oldLocation);
+    }
+
+    /**
+     * Adds a cursor besides the main one. Edits made with {@link TextEditorModel#insertAtCursors(String)},
+     * {@link TextEditorModel#deleteBeforeAtCursors()} and {@link TextEditorModel#deleteAfterAtCursors()}
+     * are applied at every cursor, any other edit removes the added cursors.
+     *
+     * @param position {@link TextPosition}.
+     */
+    public void addCursor(TextPosition position) {
+        addCursor(new TextRange(position, position));
+    }
+
+    /**
+     * Adds a cursor with a selection besides the main one. The cursor is at the end of the range.
+     *
+     * @param selection {@link TextRange}.
+     * @see TextEditorModel#addCursor(TextPosition)
+     */
+    public void addCursor(TextRange selection) {
+        if (!isSelectionLegal(selection)) {
+            throw new IllegalArgumentException("Given selection is outside the boundaries of the text.");
+        }
+
+        mExtraCursors.add(selection);
+        mCursorObservers.forEach(observer -> observer.updateCursorLocation(mCursorLocation));
+    }
+
+    /**
+     * Removes every cursor besides the main one.
+     */
+    public void clearCursors() {
+        if (!mExtraCursors.isEmpty()) {
+            mExtraCursors.clear();
+            mCursorObservers.forEach(observer -> observer.updateCursorLocation(mCursorLocation));
+        }
+    }
+
+    /**
+     * Returns every cursor with its selection, the main cursor first. Cursors without
+     * a selection have empty ranges.
+     *
+     * @return {@link List<TextRange>}.
+     */
+    public List<TextRange> getCursors() {
+        final List<TextRange> cursors = new ArrayList<>(mExtraCursors.size() + 1);
+        cursors.add(new TextRange(mSelectionAnchor != null ? mSelectionAnchor : getCursor(), getCursor()));
+        cursors.addAll(mExtraCursors);
+        return cursors;
+    }
+
+    /**
+     * Inserts the text at every cursor, replacing their selections.
+     *
+     * @param text {@link String}.
+     * @see TextEditorModel#replaceAtCursors(String, int)
+     */
+    public void insertAtCursors(String text) {
+        replaceAtCursors(text, 0);
+    }
+
+    /**
+     * Removes the selection of every cursor, or the character behind cursors without one.
+     *
+     * @see TextEditorModel#replaceAtCursors(String, int)
+     */
+    public void deleteBeforeAtCursors() {
+        replaceAtCursors("", -1);
+    }
+
+    /**
+     * Removes the selection of every cursor, or the character after cursors without one.
+     *
+     * @see TextEditorModel#replaceAtCursors(String, int)
+     */
+    public void deleteAfterAtCursors() {
+        replaceAtCursors("", 1);
+    }
+
+    /**
+     * Replaces the selection of every cursor with the text. Overlapping and touching selections
+     * are merged into one cursor first. Cursors without a selection first select the character
+     * behind (direction -1) or after (direction 1) them. Afterwards every cursor is placed after
+     * its inserted text and has no selection.
+     * <p>
+     * Edits are applied from the last one to the first, so positions of the ones still to be
+     * applied never move. Edits on the same line are applied together, each line is rebuilt once.
+     * New positions of the cursors are found in a single pass afterwards. The whole replacement
+     * is O(total edit size + n log n) for n cursors, observers are notified once and it is undone
+     * as a single step.
+     *
+     * @param text      {@link String} inserted at every cursor.
+     * @param direction primitive int, -1, 0 or 1.
+     */
+    private void replaceAtCursors(String text, int direction) {
+        final List<TextRange> cursors = getCursors();
+        final Integer[] order = new Integer[cursors.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> cursors.get(i).getBottomRightStart()));
+
+//        Merged ranges in order, the main cursor is the one which contains the original one.
+        final long[] starts = new long[order.length];
+        final long[] ends = new long[order.length];
+        int count = 0;
+        int main = 0;
+        for (int i : order) {
+            final long start = cursors.get(i).getBottomRightStart().toPacked();
+            final long end = cursors.get(i).getBottomRightEnd().toPacked();
+            if (count > 0 && start <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], end);
+            } else {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+            if (i == 0) {
+                main = count - 1;
+            }
+        }
+
+        boolean changed = !text.isEmpty();
+        for (int i = 0; i < count; i++) {
+            if (starts[i] == ends[i] && direction != 0) {
+                final long other = direction < 0 ? leftPosition(starts[i]) : rightPosition(ends[i]);
+                if (other != Positions.NONE) {
+                    starts[i] = Math.min(starts[i], other);
+                    ends[i] = Math.max(ends[i], other);
+                }
+            }
+            changed |= starts[i] != ends[i];
+        }
+        if (!changed) {
+            return;
+        }
+
+        int newlines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                newlines++;
+            }
+        }
+        final int tailLength = text.length() - text.lastIndexOf('\n') - 1;
+
+        beginBatch();
+        try {
+            for (int i = count - 1; i >= 0; ) {
+                final int line = Positions.line(starts[i]);
+                if (newlines > 0 || Positions.line(ends[i]) != line) {
+                    replace(starts[i], ends[i], text, newlines, tailLength);
+                    i--;
+                    continue;
+                }
+
+//                Single line edits on the same line, from first to i, rebuild the line once.
+                int first = i;
+                while (first > 0 && Positions.line(starts[first - 1]) == line && Positions.line(ends[first - 1]) == line) {
+                    first--;
+                }
+                replaceInLine(line, starts, ends, first, i, text);
+                i = first - 1;
+            }
+
+//            Edits before a position move it by the lines they added and, if the last of them
+//            ended on its line, by the columns it added.
+            final List<TextRange> newCursors = new ArrayList<>(count);
+            TextPosition mainCursor = null;
+            int lineShift = 0;
+            int lastEndLine = -1;
+            int lastEndColumn = 0;
+            int lastNewEndColumn = 0;
+            for (int i = 0; i < count; i++) {
+                final int startLine = Positions.line(starts[i]);
+                final int startColumn = startLine == lastEndLine
+                        ? lastNewEndColumn + Positions.column(starts[i]) - lastEndColumn
+                        : Positions.column(starts[i]);
+                final int newLine = startLine + lineShift + newlines;
+                final int newColumn = newlines == 0 ? startColumn + text.length() : tailLength;
+
+                lineShift += newlines - (Positions.line(ends[i]) - startLine);
+                lastEndLine = Positions.line(ends[i]);
+                lastEndColumn = Positions.column(ends[i]);
+                lastNewEndColumn = newColumn;
+
+                final TextPosition cursor = new TextPosition(newColumn, newLine);
+                if (i == main) {
+                    mainCursor = cursor;
+                } else {
+                    newCursors.add(new TextRange(cursor, cursor));
+                }
+            }
+
+            final Location oldLocation = new Location(mCursorLocation);
+            mCursorLocation.setLocation(mainCursor.getX(), mainCursor.getY());
+            clearSelection();
+
+            final int firstLine = Positions.line(starts[0]);
+            final int oldLineCount = Positions.line(ends[count - 1]) - firstLine + 1;
+            fireTextChanged(firstLine, oldLineCount, oldLineCount + lineShift, oldLocation);
+            mExtraCursors.addAll(newCursors);
+        } finally {
+            commitBatch();
+        }
+    }
+
+    /**
+     * Replaces the text between the positions, recording the edit for undo.
+     */
+    private void replace(long start, long end, String text, int newlines, int tailLength) {
+        final int line = Positions.line(start);
+        final int column = Positions.column(start);
+        if (start != end) {
+            final int endLine = Positions.line(end);
+            final int endColumn = Positions.column(end);
+            if (mUndoManager.isRecording()) {
+                mUndoManager.recordDeletion(TextPosition.of(start), TextPosition.of(end),
+                        mStorage.getText(line, column, endLine, endColumn), UndoManager.Merge.NONE);
+            }
+            mStorage.delete(line, column, endLine, endColumn);
+        }
+        if (!text.isEmpty()) {
+            mStorage.insert(line, column, text);
+            mUndoManager.recordInsertion(TextPosition.of(start), newlines == 0
+                    ? new TextPosition(column + text.length(), line)
+                    : new TextPosition(tailLength, line + newlines), UndoManager.Merge.NONE);
+        }
+    }
+
+    /**
+     * Replaces the ranges from (inclusive) first to (exclusive) last, all inside the line,
+     * with the text in a single pass over the line.
+     */
+    private void replaceInLine(int line, long[] starts, long[] ends, int first, int last, String text) {
+        final String oldLine = mStorage.getLine(line);
+        final StringBuilder sb = new StringBuilder(oldLine.length() + (last - first + 1) * text.length());
+        int column = 0;
+        for (int i = first; i <= last; i++) {
+            sb.append(oldLine, column, Positions.column(starts[i])).append(text);
+            column = Positions.column(ends[i]);
+        }
+        sb.append(oldLine, column, oldLine.length());
+
+//        Recorded as replacing the whole line, so undo rebuilds the line once instead of once per edit.
+        final String newLine = sb.toString();
+        if (mUndoManager.isRecording()) {
+            if (!oldLine.isEmpty()) {
+                mUndoManager.recordDeletion(new TextPosition(0, line), new TextPosition(oldLine.length(), line),
+                        oldLine, UndoManager.Merge.NONE);
+            }
+            if (!newLine.isEmpty()) {
+                mUndoManager.recordInsertion(new TextPosition(0, line),
+                        new TextPosition(newLine.length(), line), UndoManager.Merge.NONE);
+            }
+        }
+        mStorage.setLine(line, newLine);
+    }
+
+    /**
+     * Appends lines at the end of the text without moving the cursor.
+     * The first line continues the current last line and every other line becomes a new line.
+     * Used by loaders which deliver text in batches.
+     *
+     * @param lines {@link List<String>} of lines without newlines.
+     */
+    public void appendLines(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        final int lastLine = mStorage.lineCount() - 1;
+        mStorage.appendLines(lines);
+        fireTextChanged(lastLine, 1, lines.size(), mCursorLocation);
+    }
+
+    /**
+     * Saves the text to the file at the given path using UTF-8.
+     *
+     * @param path {@link Path}.
+     * @throws IOException if the file cannot be written.
+     * @see TextEditorModel#save(Path, Charset)
+     */
+    public void save(Path path) throws IOException {
+        save(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Saves the text to the file at the given path.
+     * Text is written to a temporary file next to the target which then atomically replaces
+     * the target, so a failed save never leaves a half written file, or the temporary file,
+     * behind. An existing file keeps its permissions, a new file gets the default ones.
+     * Storages which still hold parts of the file on disk (e.g. {@link MappedFileStorage})
+     * write those parts without decoding and encoding them again.
+     *
+     * @param path    {@link Path}.
+     * @param charset {@link Charset} used to encode the text.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path path, Charset charset) throws IOException {
+        final Path target = path.toAbsolutePath();
+        Path temporary;
+        FileChannel channel;
+//        Files.createTempFile would make the file readable only by its owner, a new file follows the umask.
+        while (true) {
+            temporary = target.resolveSibling(target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            } catch (FileAlreadyExistsException e) {
+//                Taken by another save, try another name.
+            }
+        }
+
+        boolean saved = false;
+        try {
+            try (FileChannel output = channel) {
+                mStorage.writeTo(output, charset);
+                output.force(false);
+            }
+
+            if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView("posix")) {
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        } finally {
+            if (!saved) {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+
+    /**
+     * Deletes the file if it exists. Failing to delete it is ignored, so it doesn't hide
+     * the failure which is being reported.
+     */
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+//            Nothing more can be done.
+        }
     }
 }
@@ -10,4 +10,15 @@ public interface TextObserver {
      */
     void updateText();
 
+    /**
+     * Method should update the text for the given change.
+     * Observers which can update only the changed lines should override this,
+     * by default the whole text is updated.
+     *
+     * @param change {@link TextChange} describing the changed lines.
+     */
+    default void updateText(TextChange change) {
+        updateText();
+    }
+
 }
@@ -0,0 +1,127 @@
+package model;
+
+/**
+ * Immutable coordinates inside {@link TextEditorModel}, the value variant of {@link Location}.
+ * Instances can be shared freely, also with background threads, without copying.
+ * Positions are ordered the way they appear in the text, first by line and then by column.
+ */
+public final class TextPosition implements Comparable<TextPosition> {
+
+    /**
+     * Position at the start of every text.
+     */
+    public static final TextPosition ZERO = new TextPosition(0, 0);
+
+    private final int mX;
+    private final int mY;
+
+    /**
+     * Creates a position.
+     *
+     * @param x primitive int, column.
+     * @param y primitive int, line.
+     */
+    public TextPosition(int x, int y) {
+        mX = x;
+        mY = y;
+    }
+
+    /**
+     * Returns a position with coordinates of the given {@link Location}.
+     *
+     * @param location {@link Location}.
+     * @return {@link TextPosition}.
+     */
+    public static TextPosition of(Location location) {
+        return new TextPosition(location.getX(), location.getY());
+    }
+
+    /**
+     * Returns a position at the packed position.
+     *
+     * @param position primitive long, see {@link Positions}.
+     * @return {@link TextPosition}.
+     */
+    public static TextPosition of(long position) {
+        return new TextPosition(Positions.column(position), Positions.line(position));
+    }
+
+    /**
+     * Method returns the x component (column) of the position.
+     *
+     * @return primitive int.
+     */
+    public int getX() {
+        return mX;
+    }
+
+    /**
+     * Method returns the y component (line) of the position.
+     *
+     * @return primitive int.
+     */
+    public int getY() {
+        return mY;
+    }
+
+    /**
+     * Returns the position packed into a primitive long.
+     *
+     * @return primitive long.
+     * @see Positions
+     */
+    public long toPacked() {
+        return Positions.of(mY, mX);
+    }
+
+    /**
+     * Returns a new mutable {@link Location} at this position.
+     *
+     * @return {@link Location}.
+     */
+    public Location toLocation() {
+        return new Location(mX, mY);
+    }
+
+    /**
+     * Returns true if the given {@link Location} is at this position.
+     *
+     * @param location {@link Location}.
+     * @return primitive boolean.
+     */
+    public boolean isAt(Location location) {
+        return mX == location.getX() && mY == location.getY();
+    }
+
+    @Override
+    public int compareTo(TextPosition o) {
+        return mY != o.mY ? Integer.compare(mY, o.mY) : Integer.compare(mX, o.mX);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TextPosition position = (TextPosition) o;
+
+        return mX == position.mX && mY == position.mY;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mX;
+        result = 31 * result + mY;
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@link String}.
+     */
+    @Override
+    public String toString() {
+        return mX + " " + mY;
+    }
+}
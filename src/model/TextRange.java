@@ -0,0 +1,144 @@
+package model;
+
+/**
+ * Immutable selection inside {@link TextEditorModel}, the value variant of {@link LocationRange}.
+ * Range begins with the start {@link TextPosition} and ends with the end {@link TextPosition},
+ * end can come before start if the text was selected backwards.
+ * <p>
+ * Ordered positions are computed once when the range is created. Instances can be shared
+ * freely, also with background threads, without copying or locking.
+ */
+public final class TextRange {
+
+    private final TextPosition mStart;
+    private final TextPosition mEnd;
+
+    /**
+     * Upper left of start and end.
+     */
+    private final TextPosition mBottomRightStart;
+
+    /**
+     * Bottom right of start and end.
+     */
+    private final TextPosition mBottomRightEnd;
+
+    /**
+     * Creates a range with given start and end positions.
+     *
+     * @param start {@link TextPosition} beginning of the range.
+     * @param end   {@link TextPosition} end of the range.
+     */
+    public TextRange(TextPosition start, TextPosition end) {
+        mStart = start;
+        mEnd = end;
+        if (start.compareTo(end) <= 0) {
+            mBottomRightStart = start;
+            mBottomRightEnd = end;
+        } else {
+            mBottomRightStart = end;
+            mBottomRightEnd = start;
+        }
+    }
+
+    /**
+     * Creates a range from four integer parameters.
+     *
+     * @param x1 x parameter for a starting position.
+     * @param y1 y parameter for a starting position.
+     * @param x2 x parameter for an ending position.
+     * @param y2 y parameter for an ending position.
+     */
+    public TextRange(int x1, int y1, int x2, int y2) {
+        this(new TextPosition(x1, y1), new TextPosition(x2, y2));
+    }
+
+    /**
+     * Returns a range with the current coordinates of the given {@link LocationRange}.
+     *
+     * @param range {@link LocationRange}.
+     * @return {@link TextRange}.
+     */
+    public static TextRange of(LocationRange range) {
+        return new TextRange(TextPosition.of(range.getStart()), TextPosition.of(range.getEnd()));
+    }
+
+    public TextPosition getStart() {
+        return mStart;
+    }
+
+    public TextPosition getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Returns the upper left of start and end.
+     *
+     * @return {@link TextPosition}.
+     */
+    public TextPosition getBottomRightStart() {
+        return mBottomRightStart;
+    }
+
+    /**
+     * Returns the bottom right of start and end.
+     *
+     * @return {@link TextPosition}.
+     */
+    public TextPosition getBottomRightEnd() {
+        return mBottomRightEnd;
+    }
+
+    /**
+     * Returns true if start and end are the same position.
+     *
+     * @return primitive boolean.
+     */
+    public boolean isEmpty() {
+        return mStart.equals(mEnd);
+    }
+
+    /**
+     * Returns true if the position is inside the range, the bottom right end excluded.
+     *
+     * @param position {@link TextPosition}.
+     * @return primitive boolean.
+     */
+    public boolean contains(TextPosition position) {
+        return mBottomRightStart.compareTo(position) <= 0 && position.compareTo(mBottomRightEnd) < 0;
+    }
+
+    /**
+     * Returns a new mutable {@link LocationRange} with the same start and end.
+     *
+     * @return {@link LocationRange}.
+     */
+    public LocationRange toLocationRange() {
+        return new LocationRange(mStart.toLocation(), mEnd.toLocation());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TextRange range = (TextRange) o;
+
+        return mStart.equals(range.mStart) && mEnd.equals(range.mEnd);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mStart.hashCode() + mEnd.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@link String}.
+     */
+    @Override
+    public String toString() {
+        return mStart.toString() + ".." + mEnd.toString();
+    }
+}
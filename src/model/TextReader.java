@@ -0,0 +1,92 @@
+package model;
+
+import model.storage.TextStorage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * {@link Reader} of a range of a {@link TextStorage}, lines joined with newlines.
+ * Lines are read one by one while the reader is read, so the text is never concatenated and
+ * there is no limit on its length. Reading a storage which was edited after the reader was
+ * created is undefined, readers of a {@link TextSnapshot} can be read at any time.
+ */
+final class TextReader extends Reader {
+
+    private final Iterator<String> mLines;
+    private final TextPosition mStart;
+    private final TextPosition mEnd;
+
+    /**
+     * Line being read, null after the end of the range.
+     */
+    private String mLine;
+    private int mLineIndex;
+    private int mColumn;
+    private int mLineEnd;
+    private boolean mClosed;
+
+    /**
+     * Creates a reader of the range of the storage.
+     *
+     * @param storage {@link TextStorage}.
+     * @param range   {@link TextRange} inside the storage.
+     */
+    TextReader(TextStorage storage, TextRange range) {
+        mStart = range.getBottomRightStart();
+        mEnd = range.getBottomRightEnd();
+        mLines = storage.lines(mStart.getY(), mEnd.getY() + 1);
+        mLineIndex = mStart.getY() - 1;
+        nextLine();
+        mColumn = mStart.getX();
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (mClosed) {
+            throw new IOException("Reader is closed.");
+        }
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + ".." + (offset + length) + " is outside of boundaries.");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (mLine == null) {
+            return -1;
+        }
+
+        int read = 0;
+        while (read < length && mLine != null) {
+            if (mColumn < mLineEnd) {
+                final int count = Math.min(length - read, mLineEnd - mColumn);
+                mLine.getChars(mColumn, mColumn + count, buffer, offset + read);
+                mColumn += count;
+                read += count;
+            } else if (mLineIndex == mEnd.getY()) {
+                mLine = null;
+            } else {
+                buffer[offset + read++] = '\n';
+                nextLine();
+            }
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        mLine = null;
+    }
+
+    /**
+     * Moves to the beginning of the next line of the range.
+     */
+    private void nextLine() {
+        mLine = mLines.next();
+        mLineIndex++;
+        mColumn = 0;
+        mLineEnd = mLineIndex == mEnd.getY() ? mEnd.getX() : mLine.length();
+    }
+}
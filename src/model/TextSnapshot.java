@@ -0,0 +1,195 @@
+package model;
+
+import model.storage.TextStorage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Immutable point-in-time view of the text of a {@link TextEditorModel}.
+ * <p>
+ * Snapshot never changes, no matter how the model is edited afterwards, so it can be read
+ * by background threads (save, search, highlighting) without locking while the user keeps
+ * typing. Snapshots of rope backed models share their lines with the model, taking one is
+ * O(1) and memory grows only with edits made after it.
+ *
+ * @see TextEditorModel#snapshot()
+ */
+public final class TextSnapshot {
+
+    /**
+     * Private copy of the storage, never edited.
+     */
+    private final TextStorage mStorage;
+
+    /**
+     * Version of the model text the snapshot was taken from.
+     */
+    private final long mVersion;
+
+    /**
+     * Creates a snapshot over the storage. Storage must not be edited afterwards.
+     *
+     * @param storage {@link TextStorage} returned by {@link TextStorage#snapshot()}.
+     * @param version primitive long, version of the model text, see {@link TextSnapshot#getVersion()}.
+     */
+    TextSnapshot(TextStorage storage, long version) {
+        mStorage = storage;
+        mVersion = version;
+    }
+
+    /**
+     * Returns the version of the model text the snapshot was taken from. Every model and every
+     * edit of a model gets a new version, so snapshots with the same version hold the same text.
+     *
+     * @return primitive long.
+     */
+    long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns the number of lines in the snapshot.
+     *
+     * @return primitive int.
+     */
+    public int lineCount() {
+        return mStorage.lineCount();
+    }
+
+    /**
+     * Returns text line located at the given index.
+     *
+     * @param index primitive int, starts at 0.
+     * @return {@link String} without the trailing newline.
+     */
+    public String getLine(int index) {
+        return mStorage.getLine(index);
+    }
+
+    /**
+     * Returns the length of the line located at the given index.
+     *
+     * @param index primitive int, starts at 0.
+     * @return primitive int.
+     */
+    public int lineLength(int index) {
+        return mStorage.lineLength(index);
+    }
+
+    /**
+     * Returns the text inside the range, lines joined with newlines.
+     *
+     * @param range {@link TextRange}.
+     * @return {@link String}.
+     */
+    public String getText(TextRange range) {
+        if (!isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+        final TextPosition start = range.getBottomRightStart();
+        final TextPosition end = range.getBottomRightEnd();
+        return mStorage.getText(start.getY(), start.getX(), end.getY(), end.getX());
+    }
+
+    /**
+     * Returns the text inside the range as a {@link CharSequence} which reads the lines
+     * directly, so the text is never concatenated.
+     *
+     * @param range {@link TextRange}, shorter than {@link Integer#MAX_VALUE} characters.
+     * @return {@link CharSequence}.
+     */
+    public CharSequence chars(TextRange range) {
+        if (!isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+        return new TextChars(mStorage, range);
+    }
+
+    /**
+     * Returns a {@link Reader} of the text inside the range, which reads the lines one by one.
+     *
+     * @param range {@link TextRange}.
+     * @return {@link Reader}.
+     */
+    public Reader reader(TextRange range) {
+        if (!isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+        return new TextReader(mStorage, range);
+    }
+
+    /**
+     * Returns the text inside the range as a stream of read-only {@link CharBuffer}s, one for
+     * every part of a line inside the range and one for every newline.
+     *
+     * @param range {@link TextRange}.
+     * @return {@link Stream<CharBuffer>}.
+     */
+    public Stream<CharBuffer> chunks(TextRange range) {
+        if (!isRangeLegal(range)) {
+            throw new IllegalArgumentException("Given range is outside the boundaries of the snapshot.");
+        }
+        return TextChars.chunks(mStorage, range);
+    }
+
+    /**
+     * Returns true if both ends of the range are inside the snapshot.
+     *
+     * @param range {@link TextRange}.
+     * @return primitive boolean.
+     */
+    public boolean isRangeLegal(TextRange range) {
+        return isPositionLegal(range.getStart()) && isPositionLegal(range.getEnd());
+    }
+
+    private boolean isPositionLegal(TextPosition position) {
+        return position.getY() >= 0 && position.getY() < mStorage.lineCount()
+                && position.getX() >= 0 && position.getX() <= mStorage.lineLength(position.getY());
+    }
+
+    /**
+     * Returns {@link Iterator<String>} over lines from (inclusive) index1 to (exclusive) index2.
+     *
+     * @param index1 int - Starting line of iteration (inclusive).
+     * @param index2 int - Ending line of iteration (exclusive).
+     * @return {@link Iterator<String>}.
+     */
+    public Iterator<String> lines(int index1, int index2) {
+        return mStorage.lines(index1, index2);
+    }
+
+    /**
+     * Returns {@link Iterator<String>} over every line of the snapshot.
+     *
+     * @return {@link Iterator<String>}.
+     */
+    public Iterator<String> allLines() {
+        return mStorage.lines(0, mStorage.lineCount());
+    }
+
+    /**
+     * Returns the storage of the snapshot, which must never be edited.
+     *
+     * @return {@link TextStorage}.
+     */
+    TextStorage getStorage() {
+        return mStorage;
+    }
+
+    /**
+     * Writes the whole text to the channel, lines separated by newlines.
+     *
+     * @param channel {@link GatheringByteChannel} receiving the text.
+     * @param charset {@link Charset} used to encode the text.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(GatheringByteChannel channel, Charset charset) throws IOException {
+        mStorage.writeTo(channel, charset);
+    }
+}
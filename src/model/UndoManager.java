@@ -0,0 +1,442 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo history of a {@link TextEditorModel}.
+ * <p>
+ * Every edit is recorded as its inverse operation. Inverse of an insertion is only the range
+ * to delete, so undoing a large paste doesn't keep a copy of the pasted text. Text is kept only
+ * for deletions, because it isn't in the document anymore. When an entry is undone its own
+ * inverse, computed from the document at that moment, becomes the redo entry.
+ * <p>
+ * Characters typed one after another are merged into a single entry, and so are consecutive
+ * backspaces and deletes. Edits made inside a batch ({@link TextEditorModel#beginBatch()})
+ * are undone together, a batch of a single typed character or removed character still merges
+ * like the edit would on its own. The history is kept under a byte budget, the oldest entries
+ * are dropped when it is exceeded.
+ */
+public class UndoManager {
+
+    /**
+     * Default size of the history.
+     */
+    public static final long DEFAULT_BYTE_BUDGET = 16L * 1024 * 1024;
+
+    /**
+     * Approximate size of an operation without its text.
+     */
+    private static final int OPERATION_BYTES = 64;
+
+    /**
+     * Backspace and delete merging stops at this length, so merged text isn't copied over and over.
+     */
+    private static final int MAX_MERGED_LENGTH = 256;
+
+    /**
+     * How a recorded edit can merge with the previous one.
+     */
+    enum Merge {
+        /**
+         * Never merges.
+         */
+        NONE,
+
+        /**
+         * Typed character, merges with characters typed right before it.
+         */
+        TYPING,
+
+        /**
+         * Character removed behind the cursor, merges with a backspace right after it.
+         */
+        BACKSPACE,
+
+        /**
+         * Character removed after the cursor, merges with a delete at the same position.
+         */
+        DELETE
+    }
+
+    private final TextEditorModel mModel;
+
+    /**
+     * Entries to undo, the last one is undone first.
+     */
+    private final Deque<Entry> mUndo;
+
+    /**
+     * Entries to redo, the last one is redone first.
+     */
+    private final Deque<Entry> mRedo;
+
+    private long mByteBudget;
+    private long mByteSize;
+
+    /**
+     * Entry collecting the edits of the current batch, null outside of batches.
+     */
+    private Entry mCompound;
+
+    /**
+     * True while undoing or redoing, edits made by the manager itself are not recorded.
+     */
+    private boolean mApplying;
+
+    /**
+     * Creates an empty history for the given model.
+     *
+     * @param model {@link TextEditorModel}.
+     */
+    public UndoManager(TextEditorModel model) {
+        mModel = model;
+        mUndo = new ArrayDeque<>();
+        mRedo = new ArrayDeque<>();
+        mByteBudget = DEFAULT_BYTE_BUDGET;
+    }
+
+    /**
+     * Returns true if there is an edit to undo.
+     *
+     * @return primitive boolean.
+     */
+    public boolean canUndo() {
+        return !mUndo.isEmpty();
+    }
+
+    /**
+     * Returns true if there is an undone edit to redo.
+     *
+     * @return primitive boolean.
+     */
+    public boolean canRedo() {
+        return !mRedo.isEmpty();
+    }
+
+    /**
+     * Undoes the last edit. Does nothing if there is nothing to undo.
+     */
+    public void undo() {
+        if (canUndo()) {
+            final Entry redo = apply(mUndo.pollLast());
+            if (redo.mBytes > mByteBudget) {
+//                Redo entries after it can't be redone without it, older edits can still be undone.
+                forget(mRedo);
+                mByteSize -= redo.mBytes;
+                return;
+            }
+            mRedo.addLast(redo);
+            trim();
+        }
+    }
+
+    /**
+     * Redoes the last undone edit. Does nothing if there is nothing to redo.
+     */
+    public void redo() {
+        if (canRedo()) {
+            final Entry undo = apply(mRedo.pollLast());
+            if (undo.mBytes > mByteBudget) {
+//                Older entries can't be undone without it, the rest of the redo history is fine.
+                forget(mUndo);
+                mByteSize -= undo.mBytes;
+                return;
+            }
+            mUndo.addLast(undo);
+            trim();
+        }
+    }
+
+    /**
+     * Forgets every edit.
+     */
+    public void clear() {
+        mUndo.clear();
+        mRedo.clear();
+        mByteSize = 0;
+    }
+
+    /**
+     * Returns the largest number of bytes the history may take.
+     *
+     * @return primitive long.
+     */
+    public long getByteBudget() {
+        return mByteBudget;
+    }
+
+    /**
+     * Sets the largest number of bytes the history may take. Oldest entries are dropped
+     * right away if the history is larger. Budget of 0 turns recording off.
+     *
+     * @param byteBudget primitive long.
+     */
+    public void setByteBudget(long byteBudget) {
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("Byte budget can't be negative.");
+        }
+        mByteBudget = byteBudget;
+        trim();
+    }
+
+    /**
+     * Returns the approximate number of bytes the history takes.
+     *
+     * @return primitive long.
+     */
+    public long getByteSize() {
+        return mByteSize;
+    }
+
+    /**
+     * Returns true if edits of the model should be recorded. Model uses it to skip copying
+     * removed text when nobody needs it.
+     *
+     * @return primitive boolean.
+     */
+    boolean isRecording() {
+        return !mApplying && mByteBudget > 0;
+    }
+
+    /**
+     * Starts collecting edits into a single entry. Called when the outermost batch begins.
+     */
+    void beginCompound() {
+        if (isRecording()) {
+            mCompound = new Entry();
+        }
+    }
+
+    /**
+     * Stores the entry collected since {@link UndoManager#beginCompound()}.
+     */
+    void endCompound() {
+        final Entry compound = mCompound;
+        mCompound = null;
+        if (compound != null && !compound.mOperations.isEmpty()
+                && !merge(compound.mOperations.get(0), compound.mMerge)) {
+            push(compound);
+        }
+    }
+
+    /**
+     * Records text inserted between the start and the end position.
+     *
+     * @param start {@link TextPosition} where the text was inserted.
+     * @param end   {@link TextPosition} after the inserted text.
+     * @param merge {@link Merge#TYPING} for a typed character, otherwise {@link Merge#NONE}.
+     */
+    void recordInsertion(TextPosition start, TextPosition end, Merge merge) {
+        if (isRecording()) {
+            add(Operation.deletion(start, end), merge);
+        }
+    }
+
+    /**
+     * Records text removed between the start and the end position.
+     *
+     * @param start {@link TextPosition} where the removed text began.
+     * @param end   {@link TextPosition} where the removed text ended, before it was removed.
+     * @param text  {@link String} removed text.
+     * @param merge {@link Merge#BACKSPACE} or {@link Merge#DELETE} for a single removed character,
+     *              otherwise {@link Merge#NONE}.
+     */
+    void recordDeletion(TextPosition start, TextPosition end, String text, Merge merge) {
+        if (isRecording()) {
+            add(Operation.insertion(start, end, text), merge);
+        }
+    }
+
+    /**
+     * Merges the operation into the last entry if both were recorded as the same kind of edit
+     * right after each other.
+     *
+     * @return primitive boolean, true if the operation was merged.
+     */
+    private boolean merge(Operation operation, Merge merge) {
+        final Entry last = mUndo.peekLast();
+        if (merge == Merge.NONE || last == null || last.mMerge != merge || !mRedo.isEmpty()) {
+            return false;
+        }
+
+        final Operation previous = last.mOperations.get(0);
+        if (merge == Merge.TYPING) {
+            if (previous.mEnd.equals(operation.mStart)) {
+                replaceLast(last, Operation.deletion(previous.mStart, operation.mEnd));
+                return true;
+            }
+        } else if (previous.mText.length() < MAX_MERGED_LENGTH) {
+            if (merge == Merge.BACKSPACE && previous.mStart.equals(operation.mEnd)) {
+                replaceLast(last, Operation.insertion(operation.mStart, previous.mEnd, operation.mText + previous.mText));
+                return true;
+            } else if (merge == Merge.DELETE && previous.mStart.equals(operation.mStart)) {
+                replaceLast(last, Operation.insertion(operation.mStart, null, previous.mText + operation.mText));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void replaceLast(Entry last, Operation operation) {
+        mByteSize -= last.mBytes;
+        last.mOperations.set(0, operation);
+        last.mBytes = operation.bytes();
+        mByteSize += last.mBytes;
+        trim();
+    }
+
+    /**
+     * Adds the operation to the current batch, merges it into the last entry or adds it as
+     * a new entry.
+     */
+    private void add(Operation operation, Merge merge) {
+        if (mCompound != null) {
+//            Batch keeps the kind of its edit only while it has a single one, it merges when it ends.
+            mCompound.mMerge = mCompound.mOperations.isEmpty() ? merge : Merge.NONE;
+            mCompound.mOperations.add(operation);
+            mCompound.mBytes += operation.bytes();
+            return;
+        }
+        if (merge(operation, merge)) {
+            return;
+        }
+
+        final Entry entry = new Entry();
+        entry.mOperations.add(operation);
+        entry.mBytes = operation.bytes();
+        entry.mMerge = merge;
+        push(entry);
+    }
+
+    /**
+     * Pushes a new entry to undo. New edit makes undone entries impossible to redo.
+     * An entry larger than the whole budget can't be kept, and older entries can't be undone
+     * without it, so the history is forgotten.
+     */
+    private void push(Entry entry) {
+        forget(mRedo);
+
+        if (entry.mBytes > mByteBudget) {
+            clear();
+            return;
+        }
+
+        mUndo.addLast(entry);
+        mByteSize += entry.mBytes;
+        trim();
+    }
+
+    /**
+     * Drops every entry of the history.
+     */
+    private void forget(Deque<Entry> entries) {
+        for (Entry entry : entries) {
+            mByteSize -= entry.mBytes;
+        }
+        entries.clear();
+    }
+
+    /**
+     * Drops the oldest entries until the history fits the budget. Oldest undo entries go
+     * first, then the farthest redo entries.
+     */
+    private void trim() {
+        while (mByteSize > mByteBudget && !mUndo.isEmpty()) {
+            mByteSize -= mUndo.pollFirst().mBytes;
+        }
+        while (mByteSize > mByteBudget && !mRedo.isEmpty()) {
+            mByteSize -= mRedo.pollFirst().mBytes;
+        }
+    }
+
+    /**
+     * Applies operations of the entry in reverse order as a single batch.
+     *
+     * @return {@link Entry} which reverts the applied one.
+     */
+    private Entry apply(Entry entry) {
+        final Entry inverse = new Entry();
+        mApplying = true;
+        try {
+            mModel.batch(() -> {
+                mModel.clearSelection();
+                for (int i = entry.mOperations.size() - 1; i >= 0; i--) {
+                    final Operation operation = apply(entry.mOperations.get(i));
+                    inverse.mOperations.add(operation);
+                    inverse.mBytes += operation.bytes();
+                }
+            });
+        } finally {
+            mApplying = false;
+        }
+
+        mByteSize += inverse.mBytes - entry.mBytes;
+        return inverse;
+    }
+
+    /**
+     * Applies a single operation.
+     *
+     * @return {@link Operation} which reverts the applied one.
+     */
+    private Operation apply(Operation operation) {
+        if (operation.mText == null) {
+            final TextRange range = new TextRange(operation.mStart, operation.mEnd);
+            final String text = mModel.selectionToString(range);
+            mModel.deleteRange(range);
+            return Operation.insertion(operation.mStart, operation.mEnd, text);
+        } else {
+            mModel.moveCursorTo(operation.mStart);
+            mModel.insert(operation.mText);
+            return Operation.deletion(operation.mStart, mModel.getCursor());
+        }
+    }
+
+    /**
+     * Single undo or redo step, one or more operations applied in reverse order.
+     */
+    private static class Entry {
+        private final List<Operation> mOperations = new ArrayList<>(1);
+        private long mBytes;
+        private Merge mMerge = Merge.NONE;
+    }
+
+    /**
+     * Either deletion of the text between two positions or insertion of a text at a position.
+     */
+    private static class Operation {
+        private final TextPosition mStart;
+
+        /**
+         * End of the text to delete. For insertions where the text ended before it was removed,
+         * used only for merging backspaces and can be null.
+         */
+        private final TextPosition mEnd;
+
+        /**
+         * Text to insert, null for deletions.
+         */
+        private final String mText;
+
+        private Operation(TextPosition start, TextPosition end, String text) {
+            mStart = start;
+            mEnd = end;
+            mText = text;
+        }
+
+        private static Operation deletion(TextPosition start, TextPosition end) {
+            return new Operation(start, end, null);
+        }
+
+        private static Operation insertion(TextPosition start, TextPosition end, String text) {
+            return new Operation(start, end, text);
+        }
+
+        private long bytes() {
+            return OPERATION_BYTES + (mText == null ? 0 : 2L * mText.length());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package model.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base for {@link TextStorage}s which keep whole lines as their unit of storage.
+ * Subclasses only provide line level primitives, character edits are built on top of them.
+ */
+public abstract class AbstractLineStorage implements TextStorage {
+
+    /**
+     * Inserts lines before the line at the given index.
+     * Index equal to {@link TextStorage#lineCount()} appends the lines.
+     *
+     * @param index primitive int.
+     * @param lines {@link List<String>} of lines without newlines.
+     */
+    protected abstract void insertLines(int index, List<String> lines);
+
+    /**
+     * Removes lines from (inclusive) index1 to (exclusive) index2.
+     * Callers never remove every line.
+     *
+     * @param index1 primitive int.
+     * @param index2 primitive int.
+     */
+    protected abstract void removeLines(int index1, int index2);
+
+    @Override
+    public void appendLines(List<String> lines) {
+        int last = lineCount() - 1;
+        setLine(last, getLine(last) + lines.get(0));
+        if (lines.size() > 1) {
+            insertLines(last + 1, lines.subList(1, lines.size()));
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, char c) {
+        Lines.checkPosition(this, line, column);
+
+        String text = getLine(line);
+        if (c == '\n') {
+            setLine(line, text.substring(0, column));
+            insertLines(line + 1, Collections.singletonList(text.substring(column)));
+        } else {
+            StringBuilder sb = new StringBuilder(text);
+            sb.insert(column, c);
+            setLine(line, sb.toString());
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, CharSequence text) {
+        Lines.checkPosition(this, line, column);
+
+        List<String> inputLines = Lines.split(text);
+        String current = getLine(line);
+        String head = current.substring(0, column);
+        String tail = current.substring(column);
+
+        if (inputLines.size() == 1) {
+            setLine(line, head + inputLines.get(0) + tail);
+        } else {
+            int last = inputLines.size() - 1;
+            setLine(line, head + inputLines.get(0));
+            inputLines.set(last, inputLines.get(last) + tail);
+            insertLines(line + 1, inputLines.subList(1, inputLines.size()));
+        }
+    }
+
+    @Override
+    public void deleteChar(int line, int column) {
+        Lines.checkPosition(this, line, column);
+
+        String text = getLine(line);
+        if (column != text.length()) {
+            StringBuilder sb = new StringBuilder(text);
+            sb.deleteCharAt(column);
+            setLine(line, sb.toString());
+        } else if (line != lineCount() - 1) {
+            setLine(line, text + getLine(line + 1));
+            removeLines(line + 1, line + 2);
+        }
+    }
+
+    @Override
+    public void delete(int startLine, int startColumn, int endLine, int endColumn) {
+        Lines.checkPosition(this, startLine, startColumn);
+        Lines.checkPosition(this, endLine, endColumn);
+        if (startLine > endLine || (startLine == endLine && startColumn > endColumn)) {
+            throw new IllegalArgumentException("Starting position cannot be after the ending position.");
+        }
+
+        String head = getLine(startLine).substring(0, startColumn);
+        String tail = getLine(endLine).substring(endColumn);
+        setLine(startLine, head + tail);
+        if (endLine > startLine) {
+            removeLines(startLine + 1, endLine + 1);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Line storages always replace lines directly.
+     */
+    @Override
+    public abstract void setLine(int index, String line);
+}
@@ -0,0 +1,104 @@
+package model.storage;
+
+/**
+ * Characters of a single line kept in an array with a gap at the last edit position.
+ * Inserting or deleting next to the gap only moves the gap boundary, so consecutive
+ * edits at the same place don't copy or allocate anything.
+ */
+final class GapBuffer implements CharSequence {
+
+    private static final int MIN_GAP = 16;
+
+    private char[] mBuffer;
+    private int mGapStart;
+    private int mGapEnd;
+
+    GapBuffer() {
+        mBuffer = new char[MIN_GAP];
+        mGapStart = 0;
+        mGapEnd = mBuffer.length;
+    }
+
+    /**
+     * Replaces the content of the buffer. Existing array is reused when it is big enough.
+     *
+     * @param text {@link String}.
+     */
+    void load(String text) {
+        if (mBuffer.length < text.length() + MIN_GAP) {
+            mBuffer = new char[text.length() * 2 + MIN_GAP];
+        }
+        text.getChars(0, text.length(), mBuffer, 0);
+        mGapStart = text.length();
+        mGapEnd = mBuffer.length;
+    }
+
+    void insert(int index, char c) {
+        moveGap(index);
+        if (mGapStart == mGapEnd) {
+            grow();
+        }
+        mBuffer[mGapStart++] = c;
+    }
+
+    void delete(int index) {
+        moveGap(index);
+        mGapEnd++;
+    }
+
+    @Override
+    public int length() {
+        return mBuffer.length - (mGapEnd - mGapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < mGapStart ? mBuffer[index] : mBuffer[index + mGapEnd - mGapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(length())
+                .append(mBuffer, 0, mGapStart)
+                .append(mBuffer, mGapEnd, mBuffer.length - mGapEnd)
+                .toString();
+    }
+
+    /**
+     * Moves the gap so that it begins at the given index.
+     */
+    private void moveGap(int index) {
+        if (index < 0 || index > length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of boundaries.");
+        }
+
+        if (index < mGapStart) {
+            int count = mGapStart - index;
+            System.arraycopy(mBuffer, index, mBuffer, mGapEnd - count, count);
+            mGapStart -= count;
+            mGapEnd -= count;
+        } else if (index > mGapStart) {
+            int count = index - mGapStart;
+            System.arraycopy(mBuffer, mGapEnd, mBuffer, mGapStart, count);
+            mGapStart += count;
+            mGapEnd += count;
+        }
+    }
+
+    /**
+     * Doubles the buffer, keeping the gap in place.
+     */
+    private void grow() {
+        char[] bigger = new char[mBuffer.length * 2 + MIN_GAP];
+        int tail = mBuffer.length - mGapEnd;
+        System.arraycopy(mBuffer, 0, bigger, 0, mGapStart);
+        System.arraycopy(mBuffer, mGapEnd, bigger, bigger.length - tail, tail);
+        mGapEnd = bigger.length - tail;
+        mBuffer = bigger;
+    }
+}
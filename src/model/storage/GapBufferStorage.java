@@ -0,0 +1,217 @@
+package model.storage;
+
+import java.io.IOException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link TextStorage} decorator which keeps the line being typed in a {@link GapBuffer}.
+ * <p>
+ * Single character inserts and deletes inside one line go to the gap buffer and don't touch
+ * the wrapped storage, so sustained typing doesn't copy the line or allocate. The line is
+ * materialised to a {@link String} only when it is read and written back to the wrapped
+ * storage when an edit happens somewhere else or changes the line structure.
+ */
+public class GapBufferStorage implements TextStorage {
+
+    private final TextStorage mStorage;
+    private final GapBuffer mBuffer;
+
+    /**
+     * Index of the line held in the gap buffer, -1 if there is none.
+     */
+    private int mBufferedLine;
+
+    /**
+     * True if the gap buffer holds edits not yet written to the wrapped storage.
+     */
+    private boolean mDirty;
+
+    /**
+     * Last materialised content of the buffered line, null if it is out of date.
+     */
+    private String mMaterialised;
+
+    /**
+     * Wraps the given storage.
+     *
+     * @param storage {@link TextStorage} which receives the buffered line when editing moves elsewhere.
+     */
+    public GapBufferStorage(TextStorage storage) {
+        mStorage = storage;
+        mBuffer = new GapBuffer();
+        mBufferedLine = -1;
+    }
+
+    @Override
+    public int lineCount() {
+        return mStorage.lineCount();
+    }
+
+    @Override
+    public String getLine(int index) {
+        if (index != mBufferedLine) {
+            return mStorage.getLine(index);
+        }
+
+        if (mMaterialised == null) {
+            mMaterialised = mBuffer.toString();
+        }
+        return mMaterialised;
+    }
+
+    @Override
+    public int lineLength(int index) {
+        return index == mBufferedLine ? mBuffer.length() : mStorage.lineLength(index);
+    }
+
+    @Override
+    public Iterator<String> lines(int index1, int index2) {
+        if (!mDirty || mBufferedLine < index1 || mBufferedLine >= index2) {
+            return mStorage.lines(index1, index2);
+        }
+
+        final Iterator<String> lines = mStorage.lines(index1, index2);
+        return new Iterator<String>() {
+            private int mIndex = index1;
+
+            @Override
+            public boolean hasNext() {
+                return lines.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                String line = lines.next();
+                return mIndex++ == mBufferedLine ? getLine(mBufferedLine) : line;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(GatheringByteChannel channel, Charset charset) throws IOException {
+        flush();
+        mStorage.writeTo(channel, charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Wrapped storage takes the snapshot and the buffered line is set in the snapshot only,
+     * the wrapped storage isn't flushed and typing continues in the gap buffer.
+     */
+    @Override
+    public TextStorage snapshot() {
+        final TextStorage snapshot = mStorage.snapshot();
+        if (mDirty) {
+            snapshot.setLine(mBufferedLine, getLine(mBufferedLine));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public boolean hasCheapSnapshots() {
+        return mStorage.hasCheapSnapshots();
+    }
+
+    @Override
+    public void setLine(int index, String line) {
+        release();
+        mStorage.setLine(index, line);
+    }
+
+    @Override
+    public void appendLines(List<String> lines) {
+        release();
+        mStorage.appendLines(lines);
+    }
+
+    @Override
+    public void insert(int line, int column, char c) {
+        if (c == '\n') {
+            release();
+            mStorage.insert(line, column, c);
+            return;
+        }
+
+        Lines.checkPosition(this, line, column);
+        acquire(line);
+        mBuffer.insert(column, c);
+        mMaterialised = null;
+        mDirty = true;
+    }
+
+    @Override
+    public void insert(int line, int column, CharSequence text) {
+        release();
+        mStorage.insert(line, column, text);
+    }
+
+    @Override
+    public void insert(int line, int column, TextStorage source,
+                       int startLine, int startColumn, int endLine, int endColumn) {
+        release();
+        mStorage.insert(line, column, source, startLine, startColumn, endLine, endColumn);
+    }
+
+    @Override
+    public void deleteChar(int line, int column) {
+        Lines.checkPosition(this, line, column);
+        if (column == lineLength(line)) {
+            release();
+            mStorage.deleteChar(line, column);
+            return;
+        }
+
+        acquire(line);
+        mBuffer.delete(column);
+        mMaterialised = null;
+        mDirty = true;
+    }
+
+    @Override
+    public void delete(int startLine, int startColumn, int endLine, int endColumn) {
+        release();
+        mStorage.delete(startLine, startColumn, endLine, endColumn);
+    }
+
+    /**
+     * Writes the buffered line back to the wrapped storage.
+     * After this the wrapped storage holds the complete text.
+     */
+    public void flush() {
+        if (mDirty) {
+            mStorage.setLine(mBufferedLine, getLine(mBufferedLine));
+            mDirty = false;
+        }
+    }
+
+    /**
+     * Makes the given line the buffered line, flushing the previous one.
+     */
+    private void acquire(int line) {
+        if (line == mBufferedLine) {
+            return;
+        }
+
+        release();
+        mMaterialised = mStorage.getLine(line);
+        mBuffer.load(mMaterialised);
+        mBufferedLine = line;
+    }
+
+    /**
+     * Flushes and forgets the buffered line. Used before edits that may shift line indexes.
+     */
+    private void release() {
+        flush();
+        mBufferedLine = -1;
+        mMaterialised = null;
+    }
+}
@@ -0,0 +1,54 @@
+package model.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Collects {@link ByteBuffer}s and writes them to a channel in batches with a single
+ * gathering write per batch.
+ */
+final class GatheringWriter {
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final GatheringByteChannel mChannel;
+    private final ByteBuffer[] mBatch;
+    private int mCount;
+
+    GatheringWriter(GatheringByteChannel channel) {
+        mChannel = channel;
+        mBatch = new ByteBuffer[BATCH_SIZE];
+    }
+
+    void add(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+
+        mBatch[mCount++] = buffer;
+        if (mCount == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    void addNewline() throws IOException {
+        add(ByteBuffer.wrap(NEWLINE));
+    }
+
+    /**
+     * Writes every collected buffer. Gathering writes may be partial, so this loops until
+     * the last buffer is drained.
+     */
+    void flush() throws IOException {
+        while (mCount > 0 && mBatch[mCount - 1].hasRemaining()) {
+            mChannel.write(mBatch, 0, mCount);
+        }
+        for (int i = 0; i < mCount; i++) {
+            mBatch[i] = null;
+        }
+        mCount = 0;
+    }
+}
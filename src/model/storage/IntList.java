@@ -0,0 +1,60 @@
+package model.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints. Used where a {@link java.util.List<Integer>}
+ * would box every element.
+ */
+final class IntList {
+
+    private int[] mValues;
+    private int mSize;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        mValues = new int[Math.max(capacity, 1)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int get(int index) {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of boundaries.");
+        }
+        return mValues[index];
+    }
+
+    void add(int value) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mValues.length * 2);
+        }
+        mValues[mSize++] = value;
+    }
+
+    /**
+     * Returns the number of elements strictly smaller than the given value.
+     * List has to be sorted in ascending order.
+     *
+     * @param value primitive int.
+     * @return primitive int, index of the first element which is not smaller than value.
+     */
+    int lowerBound(int value) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mValues[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,47 @@
+package model.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods shared between {@link TextStorage} implementations.
+ */
+final class Lines {
+
+    private Lines() {
+    }
+
+    /**
+     * Splits text by newlines. Unlike {@link String#split(String)} trailing empty
+     * lines are kept, so the result always has one more element than there are newlines.
+     *
+     * @param text {@link CharSequence}.
+     * @return {@link List<String>} with at least one element.
+     */
+    static List<String> split(CharSequence text) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.subSequence(lineStart, i).toString());
+                lineStart = i + 1;
+            }
+        }
+        lines.add(text.subSequence(lineStart, text.length()).toString());
+        return lines;
+    }
+
+    /**
+     * Checks that the given position exists in the storage.
+     *
+     * @param storage {@link TextStorage}.
+     * @param line    primitive int.
+     * @param column  primitive int.
+     * @throws IndexOutOfBoundsException if the position is outside of the text.
+     */
+    static void checkPosition(TextStorage storage, int line, int column) {
+        if (line < 0 || line >= storage.lineCount() || column < 0 || column > storage.lineLength(line)) {
+            throw new IndexOutOfBoundsException("Position " + column + " " + line + " is outside of boundaries.");
+        }
+    }
+}
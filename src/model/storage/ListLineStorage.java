@@ -0,0 +1,74 @@
+package model.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link TextStorage} which keeps every line as a separate {@link String} in a {@link List}.
+ * Every edit creates a new {@link String} for the edited line.
+ */
+public class ListLineStorage extends AbstractLineStorage {
+
+    private List<String> mLines;
+
+    /**
+     * Creates a storage with a single empty line.
+     */
+    public ListLineStorage() {
+        mLines = new ArrayList<>();
+        mLines.add("");
+    }
+
+    /**
+     * Creates a storage from already split lines. Lines must not contain newlines.
+     *
+     * @param lines {@link List<String>}, if empty a single empty line is used.
+     */
+    public ListLineStorage(List<String> lines) {
+        mLines = new ArrayList<>(lines);
+        if (mLines.isEmpty()) {
+            mLines.add("");
+        }
+    }
+
+    /**
+     * Creates a storage from text. Text is split by newlines.
+     *
+     * @param text {@link CharSequence}.
+     */
+    public ListLineStorage(CharSequence text) {
+        this(Lines.split(text));
+    }
+
+    @Override
+    public int lineCount() {
+        return mLines.size();
+    }
+
+    @Override
+    public String getLine(int index) {
+        return mLines.get(index);
+    }
+
+    @Override
+    public Iterator<String> lines(int index1, int index2) {
+        return mLines.subList(index1, index2).iterator();
+    }
+
+    @Override
+    public void setLine(int index, String line) {
+        mLines.set(index, line);
+    }
+
+    @Override
+    protected void insertLines(int index, List<String> lines) {
+//        Single shift of the list tail instead of one per inserted line.
+        mLines.addAll(index, lines);
+    }
+
+    @Override
+    protected void removeLines(int index1, int index2) {
+        mLines.subList(index1, index2).clear();
+    }
+}
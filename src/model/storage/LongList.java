@@ -0,0 +1,60 @@
+package model.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs. Used where a {@link java.util.List<Long>}
+ * would box every element.
+ */
+final class LongList {
+
+    private long[] mValues;
+    private int mSize;
+
+    LongList() {
+        this(16);
+    }
+
+    LongList(int capacity) {
+        mValues = new long[Math.max(capacity, 1)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    long get(int index) {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of boundaries.");
+        }
+        return mValues[index];
+    }
+
+    void add(long value) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mValues.length * 2);
+        }
+        mValues[mSize++] = value;
+    }
+
+    /**
+     * Returns the number of elements strictly smaller than the given value.
+     * List has to be sorted in ascending order.
+     *
+     * @param value primitive long.
+     * @return primitive int, index of the first element which is not smaller than value.
+     */
+    int lowerBound(long value) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mValues[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
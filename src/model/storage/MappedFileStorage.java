@@ -0,0 +1,453 @@
+package model.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * {@link TextStorage} for large files which keeps the file memory-mapped instead of on the heap.
+ * <p>
+ * Opening the file maps it with {@link FileChannel#map} and builds only an index of byte
+ * offsets where lines begin. A line is decoded when it is read. Edited lines are kept as
+ * {@link String}s, so the document is a sequence of segments where every segment is either
+ * a run of untouched lines in the mapped file or a single edited line.
+ * <p>
+ * Segments are leaves of an immutable balanced tree, so finding a line and every edit cost
+ * O(log s) where s is the number of segments, and {@link #snapshot()} is O(1) because the
+ * snapshot shares the tree and the mapping with the storage.
+ * <p>
+ * Charset has to encode the newline as the single byte 10 (UTF-8, ISO-8859-1, ASCII...).
+ * The file must not be modified by others while it is open.
+ */
+public class MappedFileStorage extends AbstractLineStorage {
+
+    /**
+     * Largest part of the file mapped by a single buffer.
+     */
+    private static final long REGION_SIZE = 1L << 30;
+
+    private final Path mPath;
+    private final Charset mCharset;
+    private final long mFileSize;
+    private final MappedByteBuffer[] mRegions;
+
+    /**
+     * Byte offset where every line of the mapped file begins.
+     * Never changes after the file is opened, so snapshots share it.
+     */
+    private final LongList mLineStarts;
+
+    private Segment mRoot;
+
+    /**
+     * Last decoded line. Kept in a single immutable object because snapshots can be read
+     * by several threads at once.
+     */
+    private DecodedLine mCached;
+
+    /**
+     * Maps the file at the given path. File is decoded as UTF-8.
+     *
+     * @param path {@link Path}.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public MappedFileStorage(Path path) throws IOException {
+        this(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps the file at the given path.
+     *
+     * @param path    {@link Path}.
+     * @param charset {@link Charset} used to decode lines.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public MappedFileStorage(Path path, Charset charset) throws IOException {
+        mPath = path;
+        mCharset = charset;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mFileSize = channel.size();
+            int regionCount = (int) ((mFileSize + REGION_SIZE - 1) / REGION_SIZE);
+            mRegions = new MappedByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                long position = i * REGION_SIZE;
+                mRegions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(REGION_SIZE, mFileSize - position));
+            }
+        }
+
+        mLineStarts = new LongList(1024);
+        mLineStarts.add(0);
+        for (int i = 0; i < mRegions.length; i++) {
+            MappedByteBuffer region = mRegions[i];
+            long regionStart = i * REGION_SIZE;
+            for (int j = 0, limit = region.limit(); j < limit; j++) {
+                if (region.get(j) == '\n') {
+                    mLineStarts.add(regionStart + j + 1);
+                }
+            }
+        }
+
+        mRoot = new Segment(0, mLineStarts.size());
+    }
+
+    /**
+     * Creates a storage sharing the mapping and the segments of another one.
+     */
+    private MappedFileStorage(MappedFileStorage source) {
+        mPath = source.mPath;
+        mCharset = source.mCharset;
+        mFileSize = source.mFileSize;
+        mRegions = source.mRegions;
+        mLineStarts = source.mLineStarts;
+        mRoot = source.mRoot;
+    }
+
+    /**
+     * Returns the path of the mapped file.
+     *
+     * @return {@link Path}.
+     */
+    public Path getPath() {
+        return mPath;
+    }
+
+    /**
+     * Returns the charset used to decode the file.
+     *
+     * @return {@link Charset}.
+     */
+    public Charset getCharset() {
+        return mCharset;
+    }
+
+    @Override
+    public int lineCount() {
+        return mRoot.mLineCount;
+    }
+
+    @Override
+    public String getLine(int index) {
+        checkLine(index);
+
+        Segment segment = mRoot;
+        while (!segment.isLeaf()) {
+            int leftCount = segment.mLeft.mLineCount;
+            if (index < leftCount) {
+                segment = segment.mLeft;
+            } else {
+                index -= leftCount;
+                segment = segment.mRight;
+            }
+        }
+        return segment.isMapped() ? decode(segment.mFirst + index) : segment.mLine;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Snapshot shares the mapped file and the segments, so it is O(1) and decodes lines
+     * lazily like the storage itself.
+     */
+    @Override
+    public TextStorage snapshot() {
+        return new MappedFileStorage(this);
+    }
+
+    @Override
+    public boolean hasCheapSnapshots() {
+        return true;
+    }
+
+    @Override
+    public void setLine(int index, String line) {
+        checkLine(index);
+
+        replace(index, index + 1, new Segment(line));
+    }
+
+    @Override
+    protected void insertLines(int index, List<String> lines) {
+        replace(index, index, build(lines, 0, lines.size()));
+    }
+
+    @Override
+    protected void removeLines(int index1, int index2) {
+        replace(index1, index2, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Untouched lines are written straight from the mapped file with gathering writes,
+     * only edited lines are encoded. If the charset differs from the one the file was
+     * opened with every line is re-encoded.
+     */
+    @Override
+    public void writeTo(GatheringByteChannel channel, Charset charset) throws IOException {
+        if (!charset.equals(mCharset)) {
+            super.writeTo(channel, charset);
+            return;
+        }
+
+        GatheringWriter writer = new GatheringWriter(channel);
+        Deque<Segment> pending = new ArrayDeque<>();
+        pending.push(mRoot);
+        boolean first = true;
+        while (!pending.isEmpty()) {
+            Segment segment = pending.pop();
+            if (!segment.isLeaf()) {
+                pending.push(segment.mRight);
+                pending.push(segment.mLeft);
+                continue;
+            }
+
+            if (!first) {
+                writer.addNewline();
+            }
+            first = false;
+            if (segment.isMapped()) {
+                int last = segment.mFirst + segment.mLineCount - 1;
+                long start = mLineStarts.get(segment.mFirst);
+                long end = last + 1 < mLineStarts.size() ? mLineStarts.get(last + 1) - 1 : mFileSize;
+                addMapped(writer, start, end);
+            } else {
+                writer.add(ByteBuffer.wrap(segment.mLine.getBytes(charset)));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Adds views of the mapped file between the (inclusive) start and (exclusive) end byte
+     * offsets to the writer. Nothing is copied.
+     */
+    private void addMapped(GatheringWriter writer, long start, long end) throws IOException {
+        while (start < end) {
+            ByteBuffer region = mRegions[(int) (start / REGION_SIZE)].duplicate();
+            int position = (int) (start % REGION_SIZE);
+            int count = (int) Math.min(end - start, region.limit() - position);
+            region.position(position);
+            region.limit(position + count);
+            writer.add(region.slice());
+            start += count;
+        }
+    }
+
+    /**
+     * Replaces lines from (inclusive) index1 to (exclusive) index2 with the given subtree,
+     * which can be null to only remove them.
+     */
+    private void replace(int index1, int index2, Segment lines) {
+        Segment[] head = split(mRoot, index1);
+        Segment[] tail = split(head[1], index2 - index1);
+        mRoot = join(join(head[0], lines), tail[1]);
+    }
+
+    /**
+     * Decodes a line of the mapped file. The last decoded line is cached because
+     * cursor movement asks for the length of the same line over and over.
+     */
+    private String decode(int mappedLine) {
+        DecodedLine cached = mCached;
+        if (cached == null || cached.mLine != mappedLine) {
+            long start = mLineStarts.get(mappedLine);
+            long end = mappedLine + 1 < mLineStarts.size() ? mLineStarts.get(mappedLine + 1) - 1 : mFileSize;
+            cached = new DecodedLine(mappedLine, new String(read(start, (int) (end - start)), mCharset));
+            mCached = cached;
+        }
+        return cached.mText;
+    }
+
+    /**
+     * Copies bytes of the mapped file, possibly across the border of two regions.
+     */
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            ByteBuffer region = mRegions[(int) (position / REGION_SIZE)].duplicate();
+            region.position((int) (position % REGION_SIZE));
+            int count = Math.min(length - copied, region.remaining());
+            region.get(bytes, copied, count);
+            copied += count;
+            position += count;
+        }
+        return bytes;
+    }
+
+    private void checkLine(int index) {
+        if (index < 0 || index >= mRoot.mLineCount) {
+            throw new IndexOutOfBoundsException("Line " + index + " is outside of boundaries.");
+        }
+    }
+
+    /**
+     * Builds a perfectly balanced subtree of edited lines between (inclusive) from and (exclusive) to.
+     * Returns null for no lines.
+     */
+    private static Segment build(List<String> lines, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        if (to - from == 1) {
+            return new Segment(lines.get(from));
+        }
+
+        int middle = (from + to) >>> 1;
+        return new Segment(build(lines, from, middle), build(lines, middle, to));
+    }
+
+    /**
+     * Splits the subtree into the first index lines and the rest, cutting a mapped run in two
+     * if needed. Either part can be null.
+     *
+     * @return array of two {@link Segment}s.
+     */
+    private static Segment[] split(Segment segment, int index) {
+        if (segment == null || index <= 0) {
+            return new Segment[]{null, segment};
+        }
+        if (index >= segment.mLineCount) {
+            return new Segment[]{segment, null};
+        }
+
+        if (segment.isLeaf()) {
+//            Only a mapped run can hold more than one line.
+            return new Segment[]{
+                    new Segment(segment.mFirst, index),
+                    new Segment(segment.mFirst + index, segment.mLineCount - index)};
+        }
+
+        int leftCount = segment.mLeft.mLineCount;
+        if (index < leftCount) {
+            Segment[] parts = split(segment.mLeft, index);
+            parts[1] = join(parts[1], segment.mRight);
+            return parts;
+        } else if (index == leftCount) {
+            return new Segment[]{segment.mLeft, segment.mRight};
+        } else {
+            Segment[] parts = split(segment.mRight, index - leftCount);
+            parts[0] = join(segment.mLeft, parts[0]);
+            return parts;
+        }
+    }
+
+    /**
+     * Concatenates two subtrees, rebalancing along the spine of the higher one.
+     */
+    private static Segment join(Segment left, Segment right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.mHeight > right.mHeight + 1) {
+            return balance(left.mLeft, join(left.mRight, right));
+        } else if (right.mHeight > left.mHeight + 1) {
+            return balance(join(left, right.mLeft), right.mRight);
+        } else {
+            return new Segment(left, right);
+        }
+    }
+
+    /**
+     * Creates an inner node from children whose heights may differ by two, rotating if needed.
+     */
+    private static Segment balance(Segment left, Segment right) {
+        if (left.mHeight > right.mHeight + 1) {
+            if (left.mLeft.mHeight >= left.mRight.mHeight) {
+                return new Segment(left.mLeft, new Segment(left.mRight, right));
+            } else {
+                return new Segment(new Segment(left.mLeft, left.mRight.mLeft), new Segment(left.mRight.mRight, right));
+            }
+        } else if (right.mHeight > left.mHeight + 1) {
+            if (right.mRight.mHeight >= right.mLeft.mHeight) {
+                return new Segment(new Segment(left, right.mLeft), right.mRight);
+            } else {
+                return new Segment(new Segment(left, right.mLeft.mLeft), new Segment(right.mLeft.mRight, right.mRight));
+            }
+        } else {
+            return new Segment(left, right);
+        }
+    }
+
+    /**
+     * Node of the segment tree. Leaves are either a run of untouched lines in the mapped file
+     * or a single edited line, inner nodes hold two children.
+     */
+    private static class Segment {
+        /**
+         * First line of the mapped file in a mapped leaf.
+         */
+        private final int mFirst;
+
+        /**
+         * Edited line, null if the leaf is mapped or the node is inner.
+         */
+        private final String mLine;
+
+        private final Segment mLeft;
+        private final Segment mRight;
+        private final int mLineCount;
+        private final int mHeight;
+
+        private Segment(int first, int count) {
+            mFirst = first;
+            mLine = null;
+            mLeft = null;
+            mRight = null;
+            mLineCount = count;
+            mHeight = 0;
+        }
+
+        private Segment(String line) {
+            mFirst = -1;
+            mLine = line;
+            mLeft = null;
+            mRight = null;
+            mLineCount = 1;
+            mHeight = 0;
+        }
+
+        private Segment(Segment left, Segment right) {
+            mFirst = -1;
+            mLine = null;
+            mLeft = left;
+            mRight = right;
+            mLineCount = left.mLineCount + right.mLineCount;
+            mHeight = Math.max(left.mHeight, right.mHeight) + 1;
+        }
+
+        private boolean isLeaf() {
+            return mLeft == null;
+        }
+
+        private boolean isMapped() {
+            return mLine == null;
+        }
+    }
+
+    /**
+     * Line of the mapped file together with its decoded text.
+     */
+    private static class DecodedLine {
+        private final int mLine;
+        private final String mText;
+
+        private DecodedLine(int line, String text) {
+            mLine = line;
+            mText = text;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package model.storage;
+
+/**
+ * {@link TextStorage} implemented as a piece table.
+ * <p>
+ * Text is never copied on edit. Initial text is kept in the read-only original buffer and
+ * every inserted character is appended to the add buffer. The document is described by a
+ * sequence of pieces where each piece points to a span of one of the two buffers.
+ * Pieces are kept in a randomized balanced tree (treap) ordered by their position in the
+ * document. Every tree node also knows the length and the newline count of its subtree, so
+ * lines and offsets are found in O(log pieces).
+ * <p>
+ * Typing at the same place only extends the last piece, so a single character edit is
+ * O(log pieces) and doesn't copy the line it is made in.
+ * <p>
+ * Optional engine, {@link model.TextEditorModel} uses a {@link GapBufferStorage} over a
+ * {@link RopeStorage} by default. The piece table is kept for comparison in the benchmarks
+ * and can be used through {@link model.TextEditorModel#TextEditorModel(TextStorage)}. It
+ * doesn't take snapshots in O(1), so every snapshot, e.g. for a search, copies the text.
+ */
+public class PieceTableStorage implements TextStorage {
+
+    private final String mOriginal;
+    private final IntList mOriginalNewlines;
+    private final StringBuilder mAdded;
+    private final IntList mAddedNewlines;
+
+    private Node mRoot;
+
+    /**
+     * Results of {@link PieceTableStorage#split(Node, int)}.
+     * Kept as fields so splitting doesn't allocate.
+     */
+    private Node mSplitLeft;
+    private Node mSplitRight;
+
+    private int mSeed = 0x2545F491;
+
+    /**
+     * Creates a storage with a single empty line.
+     */
+    public PieceTableStorage() {
+        this("");
+    }
+
+    /**
+     * Creates a storage from text. The text becomes the original buffer.
+     *
+     * @param text {@link CharSequence}.
+     */
+    public PieceTableStorage(CharSequence text) {
+        mOriginal = text.toString();
+        mOriginalNewlines = new IntList();
+        for (int i = 0; i < mOriginal.length(); i++) {
+            if (mOriginal.charAt(i) == '\n') {
+                mOriginalNewlines.add(i);
+            }
+        }
+        mAdded = new StringBuilder();
+        mAddedNewlines = new IntList();
+
+        if (!mOriginal.isEmpty()) {
+            mRoot = new Node(false, 0, mOriginal.length(), mOriginalNewlines.size(), nextPriority());
+        }
+    }
+
+    @Override
+    public int lineCount() {
+        return newlines(mRoot) + 1;
+    }
+
+    @Override
+    public String getLine(int index) {
+        checkLine(index);
+
+        int start = lineStart(index);
+        int end = lineEnd(index);
+        StringBuilder sb = new StringBuilder(end - start);
+        appendRange(mRoot, start, end, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public int lineLength(int index) {
+        checkLine(index);
+
+        return lineEnd(index) - lineStart(index);
+    }
+
+    /**
+     * Returns the number of characters in the storage, newlines included.
+     *
+     * @return primitive int.
+     */
+    public int length() {
+        return length(mRoot);
+    }
+
+    @Override
+    public void insert(int line, int column, char c) {
+        Lines.checkPosition(this, line, column);
+
+        int bufferStart = mAdded.length();
+        mAdded.append(c);
+        int newlines = 0;
+        if (c == '\n') {
+            mAddedNewlines.add(bufferStart);
+            newlines = 1;
+        }
+        attach(lineStart(line) + column, bufferStart, 1, newlines);
+    }
+
+    @Override
+    public void insert(int line, int column, CharSequence text) {
+        Lines.checkPosition(this, line, column);
+        if (text.length() == 0) {
+            return;
+        }
+
+        int bufferStart = mAdded.length();
+        int newlines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                mAddedNewlines.add(bufferStart + i);
+                newlines++;
+            }
+            mAdded.append(c);
+        }
+        attach(lineStart(line) + column, bufferStart, text.length(), newlines);
+    }
+
+    @Override
+    public void deleteChar(int line, int column) {
+        Lines.checkPosition(this, line, column);
+
+        int offset = lineStart(line) + column;
+        if (offset < length(mRoot)) {
+            deleteOffsets(offset, offset + 1);
+        }
+    }
+
+    @Override
+    public void delete(int startLine, int startColumn, int endLine, int endColumn) {
+        Lines.checkPosition(this, startLine, startColumn);
+        Lines.checkPosition(this, endLine, endColumn);
+
+        int start = lineStart(startLine) + startColumn;
+        int end = lineStart(endLine) + endColumn;
+        if (start > end) {
+            throw new IllegalArgumentException("Starting position cannot be after the ending position.");
+        }
+        deleteOffsets(start, end);
+    }
+
+    /**
+     * Places a span of the add buffer at the given document offset.
+     * If the piece right before the offset ends where the span begins it is simply extended.
+     *
+     * @param offset      primitive int, document offset.
+     * @param bufferStart primitive int, start of the span in the add buffer.
+     * @param length      primitive int, length of the span.
+     * @param newlines    primitive int, number of newlines in the span.
+     */
+    private void attach(int offset, int bufferStart, int length, int newlines) {
+        split(mRoot, offset);
+        Node left = mSplitLeft;
+        Node right = mSplitRight;
+
+        Node last = left;
+        while (last != null && last.mRight != null) {
+            last = last.mRight;
+        }
+
+        if (last != null && last.mAdded && last.mStart + last.mLength == bufferStart) {
+            extendLast(left, length, newlines);
+        } else {
+            left = merge(left, new Node(true, bufferStart, length, newlines, nextPriority()));
+        }
+        mRoot = merge(left, right);
+    }
+
+    /**
+     * Removes document text between the (inclusive) start and (exclusive) end offset.
+     */
+    private void deleteOffsets(int start, int end) {
+        if (start == end) {
+            return;
+        }
+
+        split(mRoot, start);
+        Node left = mSplitLeft;
+        split(mSplitRight, end - start);
+        mRoot = merge(left, mSplitRight);
+    }
+
+    /**
+     * Returns the document offset of the first character in the given line.
+     */
+    private int lineStart(int line) {
+        return line == 0 ? 0 : newlineOffset(line) + 1;
+    }
+
+    /**
+     * Returns the document offset right after the last character in the given line.
+     */
+    private int lineEnd(int line) {
+        return line == newlines(mRoot) ? length(mRoot) : newlineOffset(line + 1);
+    }
+
+    /**
+     * Returns the document offset of the k-th newline. Parameter k starts at 1.
+     */
+    private int newlineOffset(int k) {
+        Node node = mRoot;
+        int offset = 0;
+        while (true) {
+            int leftNewlines = newlines(node.mLeft);
+            if (k <= leftNewlines) {
+                node = node.mLeft;
+                continue;
+            }
+
+            k -= leftNewlines;
+            int leftLength = length(node.mLeft);
+            if (k <= node.mNewlines) {
+                IntList bufferNewlines = node.mAdded ? mAddedNewlines : mOriginalNewlines;
+                int position = bufferNewlines.get(bufferNewlines.lowerBound(node.mStart) + k - 1);
+                return offset + leftLength + position - node.mStart;
+            }
+
+            k -= node.mNewlines;
+            offset += leftLength + node.mLength;
+            node = node.mRight;
+        }
+    }
+
+    /**
+     * Appends document text between the (inclusive) from and (exclusive) to offsets
+     * of the given subtree.
+     */
+    private void appendRange(Node node, int from, int to, StringBuilder sb) {
+        if (node == null || from >= to) {
+            return;
+        }
+
+        int leftLength = length(node.mLeft);
+        if (from < leftLength) {
+            appendRange(node.mLeft, from, Math.min(to, leftLength), sb);
+        }
+
+        int pieceEnd = leftLength + node.mLength;
+        int start = Math.max(from, leftLength);
+        int end = Math.min(to, pieceEnd);
+        if (start < end) {
+            CharSequence buffer = node.mAdded ? mAdded : mOriginal;
+            sb.append(buffer, node.mStart + start - leftLength, node.mStart + end - leftLength);
+        }
+
+        if (to > pieceEnd) {
+            appendRange(node.mRight, Math.max(from - pieceEnd, 0), to - pieceEnd, sb);
+        }
+    }
+
+    /**
+     * Splits the subtree so that the first offset characters end up in {@link PieceTableStorage#mSplitLeft}
+     * and the rest in {@link PieceTableStorage#mSplitRight}. A piece is cut in two if needed.
+     */
+    private void split(Node node, int offset) {
+        if (node == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+            return;
+        }
+
+        int leftLength = length(node.mLeft);
+        if (offset <= leftLength) {
+            split(node.mLeft, offset);
+            node.mLeft = mSplitRight;
+            node.update();
+            mSplitRight = node;
+        } else if (offset >= leftLength + node.mLength) {
+            split(node.mRight, offset - leftLength - node.mLength);
+            node.mRight = mSplitLeft;
+            node.update();
+            mSplitLeft = node;
+        } else {
+            int cut = node.mStart + offset - leftLength;
+            int headNewlines = countNewlines(node.mAdded, node.mStart, cut);
+            Node tail = new Node(node.mAdded, cut, node.mStart + node.mLength - cut,
+                    node.mNewlines - headNewlines, nextPriority());
+            node.mLength = cut - node.mStart;
+            node.mNewlines = headNewlines;
+
+            Node right = node.mRight;
+            node.mRight = null;
+            node.update();
+            mSplitLeft = node;
+            mSplitRight = merge(tail, right);
+        }
+    }
+
+    /**
+     * Joins two subtrees where every piece of the first one comes before the second one.
+     */
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.mPriority > right.mPriority) {
+            left.mRight = merge(left.mRight, right);
+            left.update();
+            return left;
+        } else {
+            right.mLeft = merge(left, right.mLeft);
+            right.update();
+            return right;
+        }
+    }
+
+    /**
+     * Grows the last piece of the subtree and updates subtree sizes on the way down.
+     */
+    private void extendLast(Node node, int length, int newlines) {
+        while (node != null) {
+            node.mTotalLength += length;
+            node.mTotalNewlines += newlines;
+            if (node.mRight == null) {
+                node.mLength += length;
+                node.mNewlines += newlines;
+            }
+            node = node.mRight;
+        }
+    }
+
+    private int countNewlines(boolean added, int start, int end) {
+        IntList bufferNewlines = added ? mAddedNewlines : mOriginalNewlines;
+        return bufferNewlines.lowerBound(end) - bufferNewlines.lowerBound(start);
+    }
+
+    private void checkLine(int index) {
+        if (index < 0 || index > newlines(mRoot)) {
+            throw new IndexOutOfBoundsException("Line " + index + " is outside of boundaries.");
+        }
+    }
+
+    /**
+     * Xorshift generator for treap priorities.
+     */
+    private int nextPriority() {
+        mSeed ^= mSeed << 13;
+        mSeed ^= mSeed >>> 17;
+        mSeed ^= mSeed << 5;
+        return mSeed;
+    }
+
+    private static int length(Node node) {
+        return node == null ? 0 : node.mTotalLength;
+    }
+
+    private static int newlines(Node node) {
+        return node == null ? 0 : node.mTotalNewlines;
+    }
+
+    /**
+     * A piece of the table, also a node of the treap.
+     */
+    private static class Node {
+        private final boolean mAdded;
+        private final int mPriority;
+        private final int mStart;
+        private int mLength;
+        private int mNewlines;
+
+        private Node mLeft;
+        private Node mRight;
+        private int mTotalLength;
+        private int mTotalNewlines;
+
+        private Node(boolean added, int start, int length, int newlines, int priority) {
+            mAdded = added;
+            mStart = start;
+            mLength = length;
+            mNewlines = newlines;
+            mPriority = priority;
+            update();
+        }
+
+        private void update() {
+            mTotalLength = length(mLeft) + mLength + length(mRight);
+            mTotalNewlines = newlines(mLeft) + mNewlines + newlines(mRight);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package model.storage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link TextStorage} implemented as a rope of lines.
+ * <p>
+ * Every leaf of the rope holds one line and every inner node knows the line count and the
+ * character count of its subtree. The tree is kept height balanced, so finding a line,
+ * splitting the rope at a line and joining two ropes are all O(log n). Multi-line inserts
+ * and range deletes replace whole runs of lines with a single split and join instead of
+ * shifting every following line.
+ * <p>
+ * Nodes are never modified after creation, an edit copies only the path from the root
+ * to the edited leaf. That makes {@link RopeStorage#snapshot()} O(1), the snapshot keeps
+ * the current root and both ropes share every node until one of them is edited.
+ */
+public class RopeStorage implements TextStorage {
+
+    private Node mRoot;
+
+    /**
+     * Creates a storage with a single empty line.
+     */
+    public RopeStorage() {
+        this("");
+    }
+
+    /**
+     * Creates a storage from text. Text is split by newlines.
+     *
+     * @param text {@link CharSequence}.
+     */
+    public RopeStorage(CharSequence text) {
+        this(Lines.split(text));
+    }
+
+    /**
+     * Creates a storage from already split lines. Lines must not contain newlines.
+     *
+     * @param lines {@link List<String>}, if empty a single empty line is used.
+     */
+    public RopeStorage(List<String> lines) {
+        mRoot = lines.isEmpty() ? new Node("") : build(lines, 0, lines.size());
+    }
+
+    private RopeStorage(Node root) {
+        mRoot = root;
+    }
+
+    @Override
+    public int lineCount() {
+        return mRoot.mLineCount;
+    }
+
+    @Override
+    public String getLine(int index) {
+        checkLine(index);
+
+        Node node = mRoot;
+        while (node.mLine == null) {
+            int leftCount = node.mLeft.mLineCount;
+            if (index < leftCount) {
+                node = node.mLeft;
+            } else {
+                index -= leftCount;
+                node = node.mRight;
+            }
+        }
+        return node.mLine;
+    }
+
+    /**
+     * Returns the number of characters in the storage, newlines included.
+     *
+     * @return primitive int.
+     */
+    public int length() {
+        return mRoot.mCharCount + mRoot.mLineCount - 1;
+    }
+
+    @Override
+    public Iterator<String> lines(int index1, int index2) {
+        if (index1 < 0 || index2 > lineCount() || index1 > index2) {
+            throw new IndexOutOfBoundsException("Line range " + index1 + ".." + index2 + " is outside of boundaries.");
+        }
+
+        return new LineIterator(mRoot, index1, index2 - index1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returned rope shares every node with this one, memory grows only with later edits.
+     */
+    @Override
+    public TextStorage snapshot() {
+        return new RopeStorage(mRoot);
+    }
+
+    @Override
+    public boolean hasCheapSnapshots() {
+        return true;
+    }
+
+    @Override
+    public void setLine(int index, String line) {
+        checkLine(index);
+
+        mRoot = set(mRoot, index, line);
+    }
+
+    @Override
+    public void appendLines(List<String> lines) {
+        int last = lineCount() - 1;
+        mRoot = set(mRoot, last, getLine(last) + lines.get(0));
+        if (lines.size() > 1) {
+            mRoot = join(mRoot, build(lines, 1, lines.size()));
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, char c) {
+        Lines.checkPosition(this, line, column);
+
+        String text = getLine(line);
+        if (c == '\n') {
+            replace(line, line + 1, build(text.substring(0, column), text.substring(column)));
+        } else {
+            mRoot = set(mRoot, line, new StringBuilder(text.length() + 1)
+                    .append(text, 0, column).append(c).append(text, column, text.length()).toString());
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, CharSequence text) {
+        Lines.checkPosition(this, line, column);
+
+        List<String> inputLines = Lines.split(text);
+        String current = getLine(line);
+        int last = inputLines.size() - 1;
+        inputLines.set(0, current.substring(0, column) + inputLines.get(0));
+        inputLines.set(last, inputLines.get(last) + current.substring(column));
+
+        if (inputLines.size() == 1) {
+            mRoot = set(mRoot, line, inputLines.get(0));
+        } else {
+            replace(line, line + 1, build(inputLines, 0, inputLines.size()));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Lines of another rope are spliced in, only the first and the last inserted line are
+     * copied, so the cost is O(log n) plus their length no matter how many lines are inserted.
+     */
+    @Override
+    public void insert(int line, int column, TextStorage source,
+                      int startLine, int startColumn, int endLine, int endColumn) {
+        if (!(source instanceof RopeStorage) || startLine == endLine) {
+            TextStorage.super.insert(line, column, source, startLine, startColumn, endLine, endColumn);
+            return;
+        }
+        Lines.checkPosition(this, line, column);
+        Lines.checkPosition(source, startLine, startColumn);
+        Lines.checkPosition(source, endLine, endColumn);
+        if (startLine > endLine) {
+            throw new IllegalArgumentException("Starting position cannot be after the ending position.");
+        }
+
+        final String current = getLine(line);
+        final Node sourceRoot = ((RopeStorage) source).mRoot;
+        Node lines = split(split(sourceRoot, startLine)[1], endLine - startLine + 1)[0];
+        final int last = endLine - startLine;
+        lines = set(lines, 0, current.substring(0, column) + source.getLine(startLine).substring(startColumn));
+        lines = set(lines, last, source.getLine(endLine).substring(0, endColumn) + current.substring(column));
+        replace(line, line + 1, lines);
+    }
+
+    @Override
+    public void deleteChar(int line, int column) {
+        Lines.checkPosition(this, line, column);
+
+        String text = getLine(line);
+        if (column != text.length()) {
+            mRoot = set(mRoot, line, text.substring(0, column) + text.substring(column + 1));
+        } else if (line != lineCount() - 1) {
+            replace(line, line + 2, new Node(text + getLine(line + 1)));
+        }
+    }
+
+    @Override
+    public void delete(int startLine, int startColumn, int endLine, int endColumn) {
+        Lines.checkPosition(this, startLine, startColumn);
+        Lines.checkPosition(this, endLine, endColumn);
+        if (startLine > endLine || (startLine == endLine && startColumn > endColumn)) {
+            throw new IllegalArgumentException("Starting position cannot be after the ending position.");
+        }
+
+        String joined = getLine(startLine).substring(0, startColumn) + getLine(endLine).substring(endColumn);
+        if (startLine == endLine) {
+            mRoot = set(mRoot, startLine, joined);
+        } else {
+            replace(startLine, endLine + 1, new Node(joined));
+        }
+    }
+
+    /**
+     * Replaces lines from (inclusive) index1 to (exclusive) index2 with the given subtree.
+     */
+    private void replace(int index1, int index2, Node lines) {
+        Node[] head = split(mRoot, index1);
+        Node[] tail = split(head[1], index2 - index1);
+        mRoot = join(join(head[0], lines), tail[1]);
+    }
+
+    private void checkLine(int index) {
+        if (index < 0 || index >= mRoot.mLineCount) {
+            throw new IndexOutOfBoundsException("Line " + index + " is outside of boundaries.");
+        }
+    }
+
+    /**
+     * Returns a copy of the subtree where the line at the given index is replaced.
+     */
+    private static Node set(Node node, int index, String line) {
+        if (node.mLine != null) {
+            return new Node(line);
+        }
+
+        int leftCount = node.mLeft.mLineCount;
+        if (index < leftCount) {
+            return new Node(set(node.mLeft, index, line), node.mRight);
+        } else {
+            return new Node(node.mLeft, set(node.mRight, index - leftCount, line));
+        }
+    }
+
+    /**
+     * Builds a perfectly balanced subtree from lines between (inclusive) from and (exclusive) to.
+     */
+    private static Node build(List<String> lines, int from, int to) {
+        if (to - from == 1) {
+            return new Node(lines.get(from));
+        }
+
+        int middle = (from + to) >>> 1;
+        return new Node(build(lines, from, middle), build(lines, middle, to));
+    }
+
+    private static Node build(String first, String second) {
+        return new Node(new Node(first), new Node(second));
+    }
+
+    /**
+     * Splits the subtree into the first index lines and the rest.
+     * Either part can be null.
+     *
+     * @return array of two {@link Node}s.
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null || index <= 0) {
+            return new Node[]{null, node};
+        }
+        if (index >= node.mLineCount) {
+            return new Node[]{node, null};
+        }
+
+        int leftCount = node.mLeft.mLineCount;
+        if (index < leftCount) {
+            Node[] parts = split(node.mLeft, index);
+            parts[1] = join(parts[1], node.mRight);
+            return parts;
+        } else if (index == leftCount) {
+            return new Node[]{node.mLeft, node.mRight};
+        } else {
+            Node[] parts = split(node.mRight, index - leftCount);
+            parts[0] = join(node.mLeft, parts[0]);
+            return parts;
+        }
+    }
+
+    /**
+     * Concatenates two subtrees, rebalancing along the spine of the higher one.
+     */
+    private static Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.mHeight > right.mHeight + 1) {
+            return balance(left.mLeft, join(left.mRight, right));
+        } else if (right.mHeight > left.mHeight + 1) {
+            return balance(join(left, right.mLeft), right.mRight);
+        } else {
+            return new Node(left, right);
+        }
+    }
+
+    /**
+     * Creates an inner node from children whose heights may differ by two, rotating if needed.
+     */
+    private static Node balance(Node left, Node right) {
+        if (left.mHeight > right.mHeight + 1) {
+            if (left.mLeft.mHeight >= left.mRight.mHeight) {
+                return new Node(left.mLeft, new Node(left.mRight, right));
+            } else {
+                return new Node(new Node(left.mLeft, left.mRight.mLeft), new Node(left.mRight.mRight, right));
+            }
+        } else if (right.mHeight > left.mHeight + 1) {
+            if (right.mRight.mHeight >= right.mLeft.mHeight) {
+                return new Node(new Node(left, right.mLeft), right.mRight);
+            } else {
+                return new Node(new Node(left, right.mLeft.mLeft), new Node(right.mLeft.mRight, right.mRight));
+            }
+        } else {
+            return new Node(left, right);
+        }
+    }
+
+    /**
+     * Node of the rope. Leaves hold a line, inner nodes hold two children.
+     */
+    private static class Node {
+        private final String mLine;
+        private final Node mLeft;
+        private final Node mRight;
+        private final int mLineCount;
+        private final int mCharCount;
+        private final int mHeight;
+
+        private Node(String line) {
+            mLine = line;
+            mLeft = null;
+            mRight = null;
+            mLineCount = 1;
+            mCharCount = line.length();
+            mHeight = 0;
+        }
+
+        private Node(Node left, Node right) {
+            mLine = null;
+            mLeft = left;
+            mRight = right;
+            mLineCount = left.mLineCount + right.mLineCount;
+            mCharCount = left.mCharCount + right.mCharCount;
+            mHeight = Math.max(left.mHeight, right.mHeight) + 1;
+        }
+    }
+
+    /**
+     * In-order iterator over a run of leaves. Keeps the pending right subtrees on a stack,
+     * so every step is amortized O(1).
+     */
+    private static class LineIterator implements Iterator<String> {
+        private final Deque<Node> mPending = new ArrayDeque<>();
+        private int mRemaining;
+
+        private LineIterator(Node root, int from, int count) {
+            mRemaining = count;
+            Node node = root;
+            while (count > 0 && node.mLine == null) {
+                int leftCount = node.mLeft.mLineCount;
+                if (from < leftCount) {
+                    mPending.push(node.mRight);
+                    node = node.mLeft;
+                } else {
+                    from -= leftCount;
+                    node = node.mRight;
+                }
+            }
+            mPending.push(node);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mRemaining > 0;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Node node = mPending.pop();
+            while (node.mLine == null) {
+                mPending.push(node.mRight);
+                node = node.mLeft;
+            }
+            mRemaining--;
+            return node.mLine;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package model.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Storage engine behind {@link model.TextEditorModel}.
+ * Text is addressed by line (starting at 0) and column inside that line.
+ * Lines never contain the newline character, the newline is implied between
+ * two neighbouring lines. A storage always contains at least one (possibly empty) line.
+ */
+public interface TextStorage {
+
+    /**
+     * Returns the number of lines in the storage. Never smaller than one.
+     *
+     * @return primitive int.
+     */
+    int lineCount();
+
+    /**
+     * Returns text line located at the given index.
+     *
+     * @param index primitive int, starts at 0.
+     * @return {@link String} without the trailing newline.
+     */
+    String getLine(int index);
+
+    /**
+     * Returns the length of the line located at the given index.
+     * Implementations should override this if the length can be answered
+     * without materialising the line.
+     *
+     * @param index primitive int, starts at 0.
+     * @return primitive int.
+     */
+    default int lineLength(int index) {
+        return getLine(index).length();
+    }
+
+    /**
+     * Returns {@link Iterator<String>} over lines from (inclusive) index1 to (exclusive) index2.
+     *
+     * @param index1 int - Starting line of iteration (inclusive).
+     * @param index2 int - Ending line of iteration (exclusive).
+     * @return {@link Iterator<String>}.
+     */
+    default Iterator<String> lines(int index1, int index2) {
+        if (index1 < 0 || index2 > lineCount() || index1 > index2) {
+            throw new IndexOutOfBoundsException("Line range " + index1 + ".." + index2 + " is outside of boundaries.");
+        }
+
+        return new Iterator<String>() {
+            private int mNext = index1;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < index2;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getLine(mNext++);
+            }
+        };
+    }
+
+    /**
+     * Returns text from the (inclusive) start position to the (exclusive) end position,
+     * lines joined with newlines.
+     *
+     * @param startLine   primitive int.
+     * @param startColumn primitive int.
+     * @param endLine     primitive int.
+     * @param endColumn   primitive int.
+     * @return {@link String}.
+     */
+    default String getText(int startLine, int startColumn, int endLine, int endColumn) {
+        if (startLine == endLine) {
+            return getLine(startLine).substring(startColumn, endColumn);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(getLine(startLine), startColumn, lineLength(startLine)).append('\n');
+        Iterator<String> between = lines(startLine + 1, endLine);
+        while (between.hasNext()) {
+            sb.append(between.next()).append('\n');
+        }
+        sb.append(getLine(endLine), 0, endColumn);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the whole text to the channel, lines separated by newlines.
+     * Implementations should override this if parts of the text are already encoded.
+     *
+     * @param channel {@link GatheringByteChannel} receiving the text.
+     * @param charset {@link Charset} used to encode the text.
+     * @throws IOException if writing fails.
+     */
+    default void writeTo(GatheringByteChannel channel, Charset charset) throws IOException {
+        GatheringWriter writer = new GatheringWriter(channel);
+        Iterator<String> lines = lines(0, lineCount());
+        while (lines.hasNext()) {
+            writer.add(ByteBuffer.wrap(lines.next().getBytes(charset)));
+            if (lines.hasNext()) {
+                writer.addNewline();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns a point-in-time copy of the storage. Later edits of this storage don't change
+     * the copy and edits of the copy don't change this storage.
+     * Default copies every line into a {@link RopeStorage}, which is O(n). Storages built from
+     * immutable nodes should override this to share them, so the copy is O(1).
+     *
+     * @return {@link TextStorage}.
+     */
+    default TextStorage snapshot() {
+        List<String> lines = new ArrayList<>(lineCount());
+        lines(0, lineCount()).forEachRemaining(lines::add);
+        return new RopeStorage(lines);
+    }
+
+    /**
+     * Returns true if {@link TextStorage#snapshot()} is O(1), so a snapshot can be taken
+     * for every copy to the clipboard.
+     *
+     * @return primitive boolean.
+     */
+    default boolean hasCheapSnapshots() {
+        return false;
+    }
+
+    /**
+     * Inserts a character at the given position.
+     * Newline character splits the line in two.
+     *
+     * @param line   primitive int.
+     * @param column primitive int.
+     * @param c      primitive char.
+     */
+    void insert(int line, int column, char c);
+
+    /**
+     * Inserts text at the given position. Text may contain newlines.
+     *
+     * @param line   primitive int.
+     * @param column primitive int.
+     * @param text   {@link CharSequence}.
+     */
+    void insert(int line, int column, CharSequence text);
+
+    /**
+     * Inserts text of another storage, from the (inclusive) start position to the (exclusive)
+     * end position, at the given position. Source must not be edited meanwhile, e.g. it is a
+     * {@link TextStorage#snapshot()}. Default copies the text. Storages made of immutable lines
+     * should override this to share the lines of the source.
+     *
+     * @param line        primitive int.
+     * @param column      primitive int.
+     * @param source      {@link TextStorage} holding the text.
+     * @param startLine   primitive int, in the source.
+     * @param startColumn primitive int, in the source.
+     * @param endLine     primitive int, in the source.
+     * @param endColumn   primitive int, in the source.
+     */
+    default void insert(int line, int column, TextStorage source,
+                        int startLine, int startColumn, int endLine, int endColumn) {
+        insert(line, column, source.getText(startLine, startColumn, endLine, endColumn));
+    }
+
+    /**
+     * Replaces the whole content of the line at the given index.
+     * Implementations should override this if the line can be swapped without editing it.
+     *
+     * @param index primitive int, starts at 0.
+     * @param line  {@link String} without newlines.
+     */
+    default void setLine(int index, String line) {
+        delete(index, 0, index, lineLength(index));
+        insert(index, 0, line);
+    }
+
+    /**
+     * Appends lines at the end of the storage. The first given line continues the
+     * current last line and every other line is added as a new line, exactly as if
+     * the lines joined with newlines were inserted at the end.
+     *
+     * @param lines {@link List<String>} of lines without newlines, must not be empty.
+     */
+    default void appendLines(List<String> lines) {
+        int last = lineCount() - 1;
+        insert(last, lineLength(last), String.join("\n", lines));
+    }
+
+    /**
+     * Deletes a single character at the given position.
+     * If the position is at the end of the line the next line is joined to it.
+     * Deleting at the end of the last line does nothing.
+     *
+     * @param line   primitive int.
+     * @param column primitive int.
+     */
+    void deleteChar(int line, int column);
+
+    /**
+     * Deletes text from the (inclusive) start position to the (exclusive) end position.
+     * Start has to be located before end.
+     *
+     * @param startLine   primitive int.
+     * @param startColumn primitive int.
+     * @param endLine     primitive int.
+     * @param endColumn   primitive int.
+     */
+    void delete(int startLine, int startColumn, int endLine, int endColumn);
+}
@@ -0,0 +1,15 @@
+package model.syntax;
+
+/**
+ * Observer of {@link Highlighter}, notified when tokens of lines become known or change.
+ */
+public interface HighlightObserver {
+
+    /**
+     * Method should redraw the lines from (inclusive) first to (exclusive) last line.
+     *
+     * @param firstLine primitive int.
+     * @param lastLine  primitive int.
+     */
+    void updateHighlight(int firstLine, int lastLine);
+}
@@ -0,0 +1,292 @@
+package model.syntax;
+
+import model.TextChange;
+import model.TextEditorModel;
+import model.TextObserver;
+import model.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps tokens of every line of a {@link TextEditorModel} up to date.
+ * <p>
+ * Tokens of a line depend only on the line and the {@link Lexer} state at the end of the
+ * previous line, so every line caches its tokens together with its end state. After an edit
+ * lines are tokenized again from the first changed line, but only until a line past the
+ * change ends in the same state as before, every line after it is known to be unchanged.
+ * Typing therefore re-lexes a line or two, a whole file only on the first pass.
+ * <p>
+ * Lines are tokenized on a background thread in batches, reading a {@link TextSnapshot}, or
+ * a copy of the lines of the batch if the storage can't take snapshots in O(1). The text is
+ * read when the batch starts on the model thread, not on every edit, so edits made until then
+ * share it. Results are installed on the model thread and {@link HighlightObserver}s are notified.
+ * A batch started before an edit is thrown away and tokenized again. Lines whose tokens
+ * are not known yet are returned as null. Like the model, a highlighter must only be used on
+ * the model thread.
+ */
+public class Highlighter {
+
+    /**
+     * Number of lines tokenized by a single background task.
+     */
+    private static final int BATCH_LINES = 2048;
+
+    private final TextEditorModel mModel;
+    private final Lexer mLexer;
+    private final Executor mModelExecutor;
+    private final Executor mWorker;
+
+    /**
+     * Worker shut down on detach, null if the worker is not an {@link ExecutorService}.
+     */
+    private final ExecutorService mOwnWorker;
+    private final TextObserver mObserver;
+    private final Set<HighlightObserver> mHighlightObservers;
+
+    /**
+     * Tokens of every line, null if not known yet.
+     */
+    private final List<LineTokens> mLines;
+
+    /**
+     * First line whose tokens may be out of date. Every line before it is up to date.
+     */
+    private int mDirtyFrom;
+
+    /**
+     * End of the edited lines. Re-lexing can't stop before it even if states match.
+     */
+    private int mDirtyUntil;
+
+    /**
+     * Number of lines from the start of the text which were tokenized at least once.
+     * Lines after it are null.
+     */
+    private int mLexedEnd;
+
+    /**
+     * Incremented by every edit, so batches which read older text are thrown away.
+     */
+    private int mGeneration;
+
+    private boolean mScheduled;
+    private boolean mDetached;
+
+    /**
+     * Creates a highlighter and starts tokenizing the whole text.
+     *
+     * @param model         {@link TextEditorModel}.
+     * @param lexer         {@link Lexer}.
+     * @param modelExecutor {@link Executor} running on the model thread, e.g.
+     *                      {@link javax.swing.SwingUtilities#invokeLater(Runnable)}.
+     */
+    public Highlighter(TextEditorModel model, Lexer lexer, Executor modelExecutor) {
+        this(model, lexer, modelExecutor, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Highlighter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Creates a highlighter which tokenizes on the given worker and starts tokenizing the whole text.
+     *
+     * @param model         {@link TextEditorModel}.
+     * @param lexer         {@link Lexer}.
+     * @param modelExecutor {@link Executor} running on the model thread, e.g.
+     *                      {@link javax.swing.SwingUtilities#invokeLater(Runnable)}.
+     * @param worker        {@link Executor} running batches off the model thread, one at a time.
+     *                      An {@link ExecutorService} is shut down by {@link Highlighter#detach()}.
+     */
+    public Highlighter(TextEditorModel model, Lexer lexer, Executor modelExecutor, Executor worker) {
+        mModel = model;
+        mLexer = lexer;
+        mModelExecutor = modelExecutor;
+        mWorker = worker;
+        mOwnWorker = worker instanceof ExecutorService ? (ExecutorService) worker : null;
+        mHighlightObservers = new HashSet<>();
+        mLines = new ArrayList<>(Collections.nCopies(model.lineCount(), (LineTokens) null));
+        mObserver = new TextObserver() {
+            @Override
+            public void updateText() {
+                reset();
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                update(change);
+            }
+        };
+        mModel.addTextObserver(mObserver);
+        schedule();
+    }
+
+    /**
+     * Returns tokens of the line.
+     *
+     * @param line primitive int.
+     * @return {@link LineTokens} which can be null if the line wasn't tokenized yet.
+     */
+    public LineTokens getTokens(int line) {
+        return line < mLines.size() ? mLines.get(line) : null;
+    }
+
+    /**
+     * Adds a {@link HighlightObserver}.
+     *
+     * @param observer {@link HighlightObserver}.
+     */
+    public void addHighlightObserver(HighlightObserver observer) {
+        mHighlightObservers.add(observer);
+    }
+
+    /**
+     * Removes a {@link HighlightObserver}.
+     *
+     * @param observer {@link HighlightObserver}.
+     */
+    public void removeHighlightObserver(HighlightObserver observer) {
+        mHighlightObservers.remove(observer);
+    }
+
+    /**
+     * Stops following the model and stops the background thread.
+     */
+    public void detach() {
+        mModel.removeTextObserver(mObserver);
+        mDetached = true;
+        if (mOwnWorker != null) {
+            mOwnWorker.shutdownNow();
+        }
+        mGeneration++;
+    }
+
+    /**
+     * Forgets every token and tokenizes the text again.
+     */
+    private void reset() {
+        mLines.clear();
+        mLines.addAll(Collections.nCopies(mModel.lineCount(), (LineTokens) null));
+        mDirtyFrom = 0;
+        mDirtyUntil = 0;
+        mLexedEnd = 0;
+        mGeneration++;
+        schedule();
+    }
+
+    /**
+     * Replaces tokens of the changed lines with unknown tokens and marks them dirty.
+     */
+    private void update(TextChange change) {
+        final int first = Math.min(change.getFirstLine(), mLines.size());
+        final int oldEnd = Math.min(first + change.getOldLineCount(), mLines.size());
+        final int newEnd = first + change.getNewLineCount();
+        final int shift = newEnd - oldEnd;
+
+        mLines.subList(first, oldEnd).clear();
+        mLines.addAll(first, Collections.nCopies(newEnd - first, (LineTokens) null));
+
+        if (mLexedEnd > first) {
+            mLexedEnd = Math.max(mLexedEnd + shift, newEnd);
+        }
+        if (mDirtyUntil > first) {
+            mDirtyUntil = Math.max(mDirtyUntil + shift, newEnd);
+        } else if (mDirtyFrom >= mDirtyUntil || newEnd > mDirtyUntil) {
+            mDirtyUntil = newEnd;
+        }
+        mDirtyFrom = Math.min(mDirtyFrom, first);
+
+        if (mLines.size() != mModel.lineCount()) {
+//            Change didn't describe the text exactly, nothing cached can be trusted.
+            reset();
+            return;
+        }
+        mGeneration++;
+        schedule();
+    }
+
+    /**
+     * Starts tokenizing the next batch of dirty lines unless a batch is already running or
+     * about to start.
+     */
+    private void schedule() {
+        if (mScheduled || mDirtyFrom >= mLines.size() || mDetached) {
+            return;
+        }
+
+        mScheduled = true;
+        mModelExecutor.execute(this::start);
+    }
+
+    /**
+     * Reads the lines of the next batch and tokenizes them on the background thread.
+     */
+    private void start() {
+        if (mDirtyFrom >= mLines.size() || mDetached) {
+            mScheduled = false;
+            return;
+        }
+
+        final int generation = mGeneration;
+        final int from = mDirtyFrom;
+        final int to = Math.min(from + BATCH_LINES, mLines.size());
+        final int state = from == 0 ? Lexer.INITIAL_STATE : mLines.get(from - 1).getEndState();
+        final Iterator<String> lines;
+        if (mModel.getStorage().hasCheapSnapshots()) {
+            lines = mModel.snapshot().lines(from, to);
+        } else {
+            final List<String> copy = new ArrayList<>(to - from);
+            mModel.linesRange(from, to).forEachRemaining(copy::add);
+            lines = copy.iterator();
+        }
+
+        mWorker.execute(() -> {
+            final LineTokens[] batch = new LineTokens[to - from];
+            final LineTokens.Builder builder = new LineTokens.Builder();
+            int lineState = state;
+            for (int i = 0; i < batch.length; i++) {
+                lineState = mLexer.tokenize(lines.next(), lineState, builder);
+                batch[i] = builder.build(lineState);
+            }
+            mModelExecutor.execute(() -> install(generation, from, batch));
+        });
+    }
+
+    /**
+     * Installs tokenized lines, stopping early once the states converge with the cached ones.
+     */
+    private void install(int generation, int from, LineTokens[] batch) {
+        mScheduled = false;
+        if (generation != mGeneration) {
+            schedule();
+            return;
+        }
+
+        int end = from;
+        boolean converged = false;
+        while (end < from + batch.length && !converged) {
+            final LineTokens old = mLines.set(end, batch[end - from]);
+            end++;
+            converged = end >= mDirtyUntil && old != null && old.getEndState() == batch[end - from - 1].getEndState();
+        }
+
+        mLexedEnd = Math.max(mLexedEnd, end);
+        mDirtyFrom = converged ? mLexedEnd : end;
+        if (mDirtyFrom >= mDirtyUntil) {
+            mDirtyUntil = 0;
+        }
+
+        for (HighlightObserver observer : mHighlightObservers) {
+            observer.updateHighlight(from, end);
+        }
+        schedule();
+    }
+}
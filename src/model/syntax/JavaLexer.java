@@ -0,0 +1,97 @@
+package model.syntax;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link Lexer} for Java source. Recognises keywords, string and character literals,
+ * numbers, line comments and block comments, which are the only tokens spanning lines.
+ */
+public class JavaLexer implements Lexer {
+
+    /**
+     * State inside a block comment.
+     */
+    private static final int IN_COMMENT = 1;
+
+    /**
+     * Longer identifiers are not looked up, so they are not copied.
+     */
+    private static final int MAX_KEYWORD_LENGTH = 12;
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+            "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+            "volatile", "while", "true", "false", "null"
+    ));
+
+    @Override
+    public int tokenize(String line, int state, LineTokens.Builder tokens) {
+        int i = 0;
+        if (state == IN_COMMENT) {
+            tokens.add(0, TokenType.COMMENT);
+            int end = line.indexOf("*/");
+            if (end < 0) {
+                return IN_COMMENT;
+            }
+            i = end + 2;
+        }
+
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '/' && i + 1 < line.length() && line.charAt(i + 1) == '/') {
+                tokens.add(i, TokenType.COMMENT);
+                return INITIAL_STATE;
+            } else if (c == '/' && i + 1 < line.length() && line.charAt(i + 1) == '*') {
+                tokens.add(i, TokenType.COMMENT);
+                int end = line.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return IN_COMMENT;
+                }
+                i = end + 2;
+            } else if (c == '"' || c == '\'') {
+                tokens.add(i, TokenType.STRING);
+                i = literalEnd(line, i);
+            } else if (Character.isDigit(c)) {
+                tokens.add(i, TokenType.NUMBER);
+                while (i < line.length() && (Character.isLetterOrDigit(line.charAt(i)) || line.charAt(i) == '.'
+                        || line.charAt(i) == '_')) {
+                    i++;
+                }
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < line.length() && Character.isJavaIdentifierPart(line.charAt(end))) {
+                    end++;
+                }
+                boolean keyword = end - i <= MAX_KEYWORD_LENGTH && KEYWORDS.contains(line.substring(i, end));
+                tokens.add(i, keyword ? TokenType.KEYWORD : TokenType.PLAIN);
+                i = end;
+            } else {
+                tokens.add(i, TokenType.PLAIN);
+                i++;
+            }
+        }
+        return INITIAL_STATE;
+    }
+
+    /**
+     * Returns the column after the literal beginning at the given column, or the end of the
+     * line if the literal isn't closed.
+     */
+    private static int literalEnd(String line, int start) {
+        char quote = line.charAt(start);
+        for (int i = start + 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return line.length();
+    }
+}
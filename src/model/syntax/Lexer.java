@@ -0,0 +1,40 @@
+package model.syntax;
+
+/**
+ * Splits lines of text into tokens, one line at a time.
+ * <p>
+ * Constructs which span lines (e.g. block comments) are carried over in the state, a primitive
+ * int returned for every line and given back when the next line is tokenized. Lexing a line
+ * must depend only on the line and the state, so a line whose state didn't change doesn't have
+ * to be tokenized again. Lexers have to be thread safe, they are used off the model thread.
+ */
+public interface Lexer {
+
+    /**
+     * State at the beginning of the text.
+     */
+    int INITIAL_STATE = 0;
+
+    /**
+     * Tokenizes the line.
+     *
+     * @param line   {@link String} without the newline.
+     * @param state  primitive int, state at the end of the previous line.
+     * @param tokens {@link LineTokens.Builder} receiving the tokens.
+     * @return primitive int, state at the end of the line.
+     */
+    int tokenize(String line, int state, LineTokens.Builder tokens);
+
+    /**
+     * Returns the lexer for the file name, chosen by its extension.
+     *
+     * @param fileName {@link String}.
+     * @return {@link Lexer}, null if the file is not a known kind of source.
+     */
+    static Lexer forFileName(String fileName) {
+        if (fileName.endsWith(".java")) {
+            return new JavaLexer();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+package model.syntax;
+
+import java.util.Arrays;
+
+/**
+ * Immutable tokens of a single line together with the {@link Lexer} state at its end.
+ * A token spans from its start column to the start of the next token or the end of the line.
+ */
+public final class LineTokens {
+
+    private final int[] mStarts;
+    private final TokenType[] mTypes;
+    private final int mEndState;
+
+    private LineTokens(int[] starts, TokenType[] types, int endState) {
+        mStarts = starts;
+        mTypes = types;
+        mEndState = endState;
+    }
+
+    /**
+     * Returns the number of tokens.
+     *
+     * @return primitive int.
+     */
+    public int count() {
+        return mStarts.length;
+    }
+
+    /**
+     * Returns the column where the token begins.
+     *
+     * @param index primitive int, index of the token.
+     * @return primitive int.
+     */
+    public int start(int index) {
+        return mStarts[index];
+    }
+
+    /**
+     * Returns the type of the token.
+     *
+     * @param index primitive int, index of the token.
+     * @return {@link TokenType}.
+     */
+    public TokenType type(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * Returns the lexer state at the end of the line.
+     *
+     * @return primitive int.
+     */
+    public int getEndState() {
+        return mEndState;
+    }
+
+    /**
+     * Collects tokens of a line. Consecutive tokens of the same type are merged.
+     */
+    public static final class Builder {
+        private int[] mStarts = new int[8];
+        private TokenType[] mTypes = new TokenType[8];
+        private int mCount;
+
+        /**
+         * Begins a token at the column. Columns have to grow.
+         *
+         * @param start primitive int.
+         * @param type  {@link TokenType}.
+         */
+        public void add(int start, TokenType type) {
+            if (mCount > 0 && mTypes[mCount - 1] == type) {
+                return;
+            }
+            if (mCount > 0 && mStarts[mCount - 1] == start) {
+                mCount--;
+                if (mCount > 0 && mTypes[mCount - 1] == type) {
+                    return;
+                }
+            }
+            if (mCount == mStarts.length) {
+                mStarts = Arrays.copyOf(mStarts, mCount * 2);
+                mTypes = Arrays.copyOf(mTypes, mCount * 2);
+            }
+            mStarts[mCount] = start;
+            mTypes[mCount] = type;
+            mCount++;
+        }
+
+        /**
+         * Returns the collected tokens and empties the builder.
+         *
+         * @param endState primitive int, lexer state at the end of the line.
+         * @return {@link LineTokens}.
+         */
+        LineTokens build(int endState) {
+            LineTokens tokens = new LineTokens(
+                    Arrays.copyOf(mStarts, mCount), Arrays.copyOf(mTypes, mCount), endState
+            );
+            mCount = 0;
+            return tokens;
+        }
+    }
+}
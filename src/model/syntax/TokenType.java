@@ -0,0 +1,20 @@
+package model.syntax;
+
+/**
+ * Kind of a token found by a {@link Lexer}. Views decide how every kind is drawn.
+ */
+public enum TokenType {
+
+    /**
+     * Text without a special meaning, identifiers, operators and whitespace.
+     */
+    PLAIN,
+
+    KEYWORD,
+
+    STRING,
+
+    NUMBER,
+
+    COMMENT
+}
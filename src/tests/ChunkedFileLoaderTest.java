@@ -0,0 +1,81 @@
+package tests;
+
+import model.ChunkedFileLoader;
+import model.TextChange;
+import model.TextEditorModel;
+import model.TextObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test for {@link ChunkedFileLoader}.
+ */
+public class ChunkedFileLoaderTest {
+
+    private static final String TEXT = "first line\nsecond\n\n\u0142ast line \u00fcnicode\n";
+
+    private Path mPath;
+
+    @Before
+    public void setUp() throws Exception {
+        mPath = Files.createTempFile("loader", ".txt");
+        Files.write(mPath, TEXT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(mPath);
+    }
+
+    /**
+     * Lines split between chunks must be joined and the trailing newline must leave an empty line.
+     */
+    @Test
+    public void load() throws Exception {
+        TextEditorModel model = new TextEditorModel("");
+        new ChunkedFileLoader(model, Runnable::run, 3, StandardCharsets.UTF_8)
+                .load(mPath).get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(new String[]{"first line", "second", "", "\u0142ast line \u00fcnicode", ""},
+                model.getLines().toArray());
+    }
+
+    /**
+     * Observer throwing on every chunk, like on a Swing thread which only logs exceptions,
+     * must not stop the loader from reading the rest of the file.
+     */
+    @Test
+    public void throwingObserver() throws Exception {
+        TextEditorModel model = new TextEditorModel("");
+        model.addTextObserver(new TextObserver() {
+            @Override
+            public void updateText() {
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                throw new IllegalStateException("Observer failed.");
+            }
+        });
+        Executor loggingExecutor = runnable -> {
+            try {
+                runnable.run();
+            } catch (IllegalStateException ignored) {
+            }
+        };
+
+        new ChunkedFileLoader(model, loggingExecutor, 2, StandardCharsets.UTF_8)
+                .load(mPath).get(10, TimeUnit.SECONDS);
+        assertEquals(TEXT, String.join("\n", model.getLines()));
+    }
+}
@@ -0,0 +1,114 @@
+package tests;
+
+import main.Fasty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link Fasty}.
+ */
+public class FastyTest {
+
+    private Path mInput;
+    private Path mOutput;
+    private Path mScript;
+    private ByteArrayOutputStream mLog;
+
+    @Before
+    public void setUp() throws Exception {
+        mInput = Files.createTempFile("fasty", ".in");
+        mOutput = Files.createTempFile("fasty", ".out");
+        mScript = Files.createTempFile("fasty", ".script");
+        mLog = new ByteArrayOutputStream();
+        Files.write(mInput, "Hello.\nWorld!".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(mInput);
+        Files.deleteIfExists(mOutput);
+        Files.deleteIfExists(mScript);
+    }
+
+    /**
+     * Writes the script, runs it on the input and returns the output.
+     */
+    private String run(String... commands) throws IOException {
+        Files.write(mScript, String.join("\n", commands).getBytes(StandardCharsets.UTF_8));
+        Fasty.run(mInput, mOutput, mScript, new PrintStream(mLog, true));
+        return new String(Files.readAllBytes(mOutput), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a script which must fail and returns the message.
+     */
+    private String fails(String... commands) throws IOException {
+        try {
+            run(commands);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        fail("Script should have failed.");
+        return null;
+    }
+
+    /**
+     * Commands must be applied in order, skipping comments and empty lines.
+     */
+    @Test
+    public void commands() throws Exception {
+        assertEquals("Hi.\nWorld!?", run(
+                "# comment",
+                "",
+                "delete 0 1 0 5",
+                "insert 0 1 i",
+                "insert 1 6 ?"));
+        assertTrue(mLog.toString("UTF-8").contains("Applied 3 commands"));
+    }
+
+    /**
+     * Inserted text must unescape newlines, tabs and backslashes and keep spaces.
+     */
+    @Test
+    public void escapes() throws Exception {
+        assertEquals("a b\n\t\\c Hello.\nWorld!", run("insert 0 0 a b\\n\\t\\\\c "));
+        assertTrue(fails("insert 0 0 \\q").endsWith("Unknown escape sequence \\q"));
+    }
+
+    /**
+     * Replace must accept any delimiter, escaped delimiters and group references.
+     */
+    @Test
+    public void replace() throws Exception {
+        assertEquals("World! Hello.", run("replace /(\\w+)\\.\\n(\\w+)!/$2! $1./"));
+        assertEquals("He|lo.\n|orld!", run("replace |l(?=l)\\|W|\\||"));
+        assertEquals("H-ll-.\nW-rld!", run("replace #[eo]#-#"));
+    }
+
+    /**
+     * Malformed commands must fail with the number of the script line.
+     */
+    @Test
+    public void malformed() throws Exception {
+        assertEquals("Line 3: Expected: insert <line> <column> <text>", fails("# c", "insert 0 0 x", "insert 0"));
+        assertEquals("Line 1: Expected: delete <line> <column> <line> <column>", fails("delete 0 0 1"));
+        assertEquals("Line 1: Not a number: x", fails("insert x 0 a"));
+        assertEquals("Line 2: Unknown command paste", fails("", "paste 0 0"));
+        assertEquals("Line 1: Expected: replace /<regex>/<replacement>/", fails("replace /a/b"));
+        assertEquals("Line 1: Unexpected text after the replacement.", fails("replace /a/b/c"));
+        assertTrue(fails("replace /(/x/").startsWith("Line 1: Unclosed group in regex ("));
+        assertTrue(fails("delete 5 0 6 0").startsWith("Line 1: "));
+    }
+}
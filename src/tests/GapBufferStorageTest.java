@@ -0,0 +1,111 @@
+package tests;
+
+import model.storage.GapBufferStorage;
+import model.storage.RopeStorage;
+import model.storage.TextStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test for {@link GapBufferStorage}.
+ */
+public class GapBufferStorageTest {
+
+    private RopeStorage mWrapped;
+    private GapBufferStorage mStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        mWrapped = new RopeStorage("Hello.\nWorld!");
+        mStorage = new GapBufferStorage(mWrapped);
+    }
+
+    /**
+     * Typing must stay in the buffer until editing moves to another line.
+     */
+    @Test
+    public void moveBetweenLines() {
+        mStorage.insert(0, 5, '!');
+        mStorage.insert(0, 0, '>');
+        mStorage.deleteChar(0, 7);
+        assertEquals(">Hello!", mStorage.getLine(0));
+        assertEquals(7, mStorage.lineLength(0));
+        assertEquals("Hello.", mWrapped.getLine(0));
+
+        mStorage.insert(1, 6, '?');
+        assertEquals(">Hello!", mWrapped.getLine(0));
+        assertEquals("World!", mWrapped.getLine(1));
+        assertEquals("World!?", mStorage.getLine(1));
+    }
+
+    /**
+     * Buffered line must be materialised once and reused until it is edited again.
+     */
+    @Test
+    public void getLine() {
+        mStorage.insert(1, 0, 'x');
+        String line = mStorage.getLine(1);
+        assertEquals("xWorld!", line);
+        assertSame(line, mStorage.getLine(1));
+        Iterator<String> lines = mStorage.lines(0, 2);
+        assertEquals("Hello.", lines.next());
+        assertSame(line, lines.next());
+
+        mStorage.insert(1, 1, 'y');
+        assertEquals("xyWorld!", mStorage.getLine(1));
+    }
+
+    /**
+     * Newlines and deletes which change the line structure must flush the buffer first.
+     */
+    @Test
+    public void flush() {
+        mStorage.insert(0, 6, '1');
+        mStorage.insert(0, 7, '\n');
+        assertEquals(3, mWrapped.lineCount());
+        assertEquals("Hello.1", mWrapped.getLine(0));
+
+        mStorage.insert(1, 0, '2');
+        mStorage.deleteChar(1, 1);
+        assertEquals(2, mWrapped.lineCount());
+        assertEquals("2World!", mWrapped.getLine(1));
+
+        mStorage.insert(0, 0, '3');
+        mStorage.delete(0, 1, 1, 0);
+        assertEquals("32World!", mWrapped.getLine(0));
+    }
+
+    /**
+     * Snapshot and save must see the buffered line, the snapshot without flushing it.
+     */
+    @Test
+    public void snapshotAndWrite() throws Exception {
+        mStorage.insert(1, 5, '?');
+        TextStorage snapshot = mStorage.snapshot();
+        assertEquals("World?!", snapshot.getLine(1));
+        assertEquals("World!", mWrapped.getLine(1));
+
+        mStorage.insert(1, 0, '_');
+        assertEquals("World?!", snapshot.getLine(1));
+
+        Path path = Files.createTempFile("gap", ".txt");
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                mStorage.writeTo(channel, StandardCharsets.UTF_8);
+            }
+            assertEquals("Hello.\n_World?!", new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
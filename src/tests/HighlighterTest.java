@@ -0,0 +1,132 @@
+package tests;
+
+import model.TextEditorModel;
+import model.TextPosition;
+import model.syntax.Highlighter;
+import model.syntax.JavaLexer;
+import model.syntax.LineTokens;
+import model.syntax.TokenType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link Highlighter}.
+ */
+public class HighlighterTest {
+
+    private static final int LINES = 100;
+
+    private Deque<Runnable> mModelTasks;
+    private Deque<Runnable> mWorkerTasks;
+    private TextEditorModel mModel;
+    private Highlighter mHighlighter;
+
+    /**
+     * Ranges of lines reported by the highlighter, as {first, end} pairs.
+     */
+    private List<int[]> mUpdates;
+
+    @Before
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            text.append(i > 0 ? "\n" : "").append("int a = 1;");
+        }
+        mModelTasks = new ArrayDeque<>();
+        mWorkerTasks = new ArrayDeque<>();
+        mModel = new TextEditorModel(text.toString());
+        mHighlighter = new Highlighter(mModel, new JavaLexer(), mModelTasks::add, mWorkerTasks::add);
+        mUpdates = new ArrayList<>();
+        mHighlighter.addHighlightObserver((firstLine, lastLine) -> mUpdates.add(new int[]{firstLine, lastLine}));
+    }
+
+    /**
+     * Runs queued tasks until none are left.
+     */
+    private void pump() {
+        while (!mModelTasks.isEmpty() || !mWorkerTasks.isEmpty()) {
+            (mModelTasks.isEmpty() ? mWorkerTasks : mModelTasks).poll().run();
+        }
+    }
+
+    private void insert(int column, int line, String text) {
+        mModel.moveCursorTo(new TextPosition(column, line));
+        mModel.insert(text);
+    }
+
+    private void assertUpdated(int firstLine, int endLine) {
+        assertEquals(1, mUpdates.size());
+        assertEquals(firstLine, mUpdates.get(0)[0]);
+        assertEquals(endLine, mUpdates.get(0)[1]);
+        mUpdates.clear();
+    }
+
+    /**
+     * Opening or closing a block comment must re-lex every line until the end of the comment,
+     * an edit keeping the state must re-lex only the edited line and the line after it, which
+     * shows the states converged.
+     */
+    @Test
+    public void relexUntilConverged() {
+        pump();
+        assertUpdated(0, LINES);
+        assertEquals(TokenType.KEYWORD, mHighlighter.getTokens(LINES - 1).type(0));
+
+        insert(0, 50, "/*");
+        pump();
+        assertUpdated(50, LINES);
+        assertEquals(TokenType.KEYWORD, mHighlighter.getTokens(49).type(0));
+        assertEquals(TokenType.COMMENT, mHighlighter.getTokens(70).type(0));
+
+        insert(mModel.getLine(60).length(), 60, "*/");
+        pump();
+        assertUpdated(60, LINES);
+        assertEquals(TokenType.COMMENT, mHighlighter.getTokens(60).type(0));
+        assertEquals(TokenType.KEYWORD, mHighlighter.getTokens(61).type(0));
+
+        LineTokens after = mHighlighter.getTokens(22);
+        insert(0, 20, "/* closed */ ");
+        pump();
+        assertUpdated(20, 22);
+        assertEquals(TokenType.COMMENT, mHighlighter.getTokens(20).type(0));
+        assertSame(after, mHighlighter.getTokens(22));
+
+        after = mHighlighter.getTokens(57);
+        insert(0, 55, "x");
+        pump();
+        assertUpdated(55, 57);
+        assertSame(after, mHighlighter.getTokens(57));
+    }
+
+    /**
+     * Batch started before an edit must be thrown away and the text tokenized again.
+     */
+    @Test
+    public void editDuringBatch() {
+        mModelTasks.poll().run();
+        assertEquals(1, mWorkerTasks.size());
+        insert(0, 0, "/*");
+
+        mWorkerTasks.poll().run();
+        mModelTasks.poll().run();
+        assertTrue(mUpdates.isEmpty());
+        assertNull(mHighlighter.getTokens(0));
+        assertNull(mHighlighter.getTokens(LINES - 1));
+
+        pump();
+        assertUpdated(0, LINES);
+        assertNotNull(mHighlighter.getTokens(LINES - 1));
+        assertEquals(TokenType.COMMENT, mHighlighter.getTokens(LINES - 1).type(0));
+    }
+}
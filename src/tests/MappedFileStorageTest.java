@@ -0,0 +1,133 @@
+package tests;
+
+import model.storage.ListLineStorage;
+import model.storage.MappedFileStorage;
+import model.storage.TextStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MappedFileStorage}.
+ */
+public class MappedFileStorageTest {
+
+    private Path mFile;
+    private MappedFileStorage mStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = Files.createTempFile("mapped", ".txt");
+        Files.write(mFile, "Hello.\nWorld!\n\nend".getBytes(StandardCharsets.UTF_8));
+        mStorage = new MappedFileStorage(mFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(mFile);
+    }
+
+    private static String write(TextStorage storage) throws Exception {
+        Path path = Files.createTempFile("written", ".txt");
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                storage.writeTo(channel, StandardCharsets.UTF_8);
+            }
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Lines must be decoded from the file and edits must split the mapped runs around them.
+     */
+    @Test
+    public void edits() throws Exception {
+        assertEquals(4, mStorage.lineCount());
+        assertEquals("World!", mStorage.getLine(1));
+        assertEquals("", mStorage.getLine(2));
+
+        mStorage.insert(1, 5, "\nnew\n");
+        mStorage.deleteChar(4, 0);
+        assertEquals(5, mStorage.lineCount());
+        assertEquals("World", mStorage.getLine(1));
+        assertEquals("new", mStorage.getLine(2));
+        assertEquals("!", mStorage.getLine(3));
+        assertEquals("end", mStorage.getLine(4));
+        assertEquals("Hello.\nWorld\nnew\n!\nend", write(mStorage));
+    }
+
+    /**
+     * Random edits must give the same lines as the list of lines, and the same saved text.
+     */
+    @Test
+    public void randomEdits() throws Exception {
+        StringBuilder text = new StringBuilder();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            text.append(i > 0 ? "\n" : "").append("line ").append(i);
+            lines.add("line " + i);
+        }
+        Files.write(mFile, text.toString().getBytes(StandardCharsets.UTF_8));
+        MappedFileStorage storage = new MappedFileStorage(mFile);
+        TextStorage expected = new ListLineStorage(lines);
+
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            int line = random.nextInt(storage.lineCount());
+            int column = random.nextInt(storage.lineLength(line) + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    storage.insert(line, column, 'x');
+                    expected.insert(line, column, 'x');
+                    break;
+                case 1:
+                    storage.insert(line, column, "a\n\nb");
+                    expected.insert(line, column, "a\n\nb");
+                    break;
+                default:
+                    int endLine = Math.min(line + random.nextInt(4), storage.lineCount() - 1);
+                    int endColumn = endLine == line ? column : random.nextInt(storage.lineLength(endLine) + 1);
+                    storage.delete(line, column, endLine, endColumn);
+                    expected.delete(line, column, endLine, endColumn);
+            }
+
+            assertEquals(expected.lineCount(), storage.lineCount());
+            assertEquals(expected.getLine(line), storage.getLine(line));
+        }
+        assertEquals(write(expected), write(storage));
+    }
+
+    /**
+     * Snapshot must be O(1) and keep its text while the storage is edited, and the other way around.
+     */
+    @Test
+    public void snapshot() throws Exception {
+        assertTrue(mStorage.hasCheapSnapshots());
+        mStorage.setLine(0, "Hi.");
+        TextStorage snapshot = mStorage.snapshot();
+
+        mStorage.insert(1, 0, "A\nB");
+        mStorage.deleteChar(3, 0);
+        assertEquals(4, snapshot.lineCount());
+        assertEquals("Hi.", snapshot.getLine(0));
+        assertEquals("World!", snapshot.getLine(1));
+        assertEquals("Hi.\nWorld!\n\nend", write(snapshot));
+
+        snapshot.setLine(3, "fin");
+        assertEquals("Hi.\nA\nBWorld!\nend", write(mStorage));
+    }
+}
@@ -0,0 +1,69 @@
+package tests;
+
+import model.storage.PieceTableStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test for {@link PieceTableStorage}.
+ */
+public class PieceTableStorageTest {
+
+    private PieceTableStorage mStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        mStorage = new PieceTableStorage("Hello.\nWorld!");
+    }
+
+    /**
+     * Constructor must split text by new lines.
+     */
+    @Test
+    public void constructor() {
+        assertEquals(2, mStorage.lineCount());
+        assertEquals("Hello.", mStorage.getLine(0));
+        assertEquals("World!", mStorage.getLine(1));
+    }
+
+    /**
+     * Typed characters must appear in order and newline must split the line.
+     */
+    @Test
+    public void insertChar() {
+        mStorage.insert(0, 5, ',');
+        mStorage.insert(0, 6, ' ');
+        mStorage.insert(0, 7, '\n');
+
+        assertEquals(3, mStorage.lineCount());
+        assertEquals("Hello, ", mStorage.getLine(0));
+        assertEquals(".", mStorage.getLine(1));
+        assertEquals("World!", mStorage.getLine(2));
+    }
+
+    /**
+     * Deleting at the end of a line must join the next line.
+     */
+    @Test
+    public void deleteChar() {
+        mStorage.deleteChar(0, 6);
+
+        assertEquals(1, mStorage.lineCount());
+        assertEquals("Hello.World!", mStorage.getLine(0));
+    }
+
+    /**
+     * Range deletion across lines must leave the head of the first and the tail of the last line.
+     */
+    @Test
+    public void deleteRange() {
+        mStorage.insert(1, 0, "big\nnew\n");
+        mStorage.delete(0, 2, 3, 3);
+
+        assertEquals(1, mStorage.lineCount());
+        assertEquals("Held!", mStorage.getLine(0));
+        assertEquals(5, mStorage.lineLength(0));
+    }
+}
@@ -0,0 +1,109 @@
+package tests;
+
+import model.PrefixSums;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test for {@link PrefixSums}.
+ */
+public class PrefixSumsTest {
+
+    /**
+     * Sums and the values containing them must skip values equal to 0.
+     */
+    @Test
+    public void sums() {
+        PrefixSums sums = new PrefixSums(new int[]{3, 0, 2, 5});
+        assertEquals(10, sums.total());
+        assertEquals(5, sums.sum(3));
+        assertEquals(0, sums.indexOf(2));
+        assertEquals(2, sums.indexOf(3));
+        assertEquals(3, sums.indexOf(9));
+        assertEquals(4, sums.indexOf(10));
+
+        sums.set(1, 4);
+        assertEquals(1, sums.indexOf(3));
+        assertEquals(14, sums.total());
+    }
+
+    /**
+     * Replaced values must drop their items, items of values after them must move.
+     */
+    @Test
+    public void replace() {
+        PrefixSums sums = new PrefixSums(new int[]{1, 2, 3});
+        Object item = new Object();
+        sums.setItem(1, "dropped");
+        sums.setItem(2, item);
+
+        sums.replace(1, 1, new int[]{7, 8, 9});
+        assertEquals(5, sums.size());
+        assertEquals(28, sums.total());
+        assertNull(sums.getItem(1));
+        assertSame(item, sums.getItem(4));
+
+        sums.replace(0, 4, new int[0]);
+        assertEquals(1, sums.size());
+        assertSame(item, sums.getItem(0));
+    }
+
+    /**
+     * Handles must find their values after values before them are inserted or removed.
+     */
+    @Test
+    public void handles() {
+        PrefixSums sums = new PrefixSums(new int[100]);
+        int[] handles = new int[100];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = sums.handleAt(i);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            sums.replace(0, 0, new int[]{1, 2});
+            sums.replace(sums.size(), 0, new int[]{3});
+        }
+        sums.replace(0, 60, new int[0]);
+        for (int i = 0; i < handles.length; i++) {
+            assertEquals(40 + i, sums.indexOfHandle(handles[i]));
+        }
+    }
+
+    /**
+     * Random edits must give the same sums as a list.
+     */
+    @Test
+    public void randomEdits() {
+        Random random = new Random(42);
+        PrefixSums sums = new PrefixSums(new int[0]);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int index = random.nextInt(values.size() + 1);
+            int count = random.nextInt(Math.min(values.size() - index, 3) + 1);
+            int[] replacement = new int[random.nextInt(4)];
+            for (int j = 0; j < replacement.length; j++) {
+                replacement[j] = random.nextInt(5);
+            }
+            sums.replace(index, count, replacement);
+            values.subList(index, index + count).clear();
+            for (int j = 0; j < replacement.length; j++) {
+                values.add(index + j, replacement[j]);
+            }
+
+            assertEquals(values.size(), sums.size());
+            long sum = 0;
+            for (int j = 0; j < values.size(); j++) {
+                assertEquals(sum, sums.sum(j));
+                sum += values.get(j);
+            }
+            assertEquals(sum, sums.total());
+        }
+    }
+}
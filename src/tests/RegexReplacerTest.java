@@ -0,0 +1,74 @@
+package tests;
+
+import model.Location;
+import model.LocationRange;
+import model.RegexReplacer;
+import model.TextEditorModel;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test for {@link RegexReplacer}.
+ */
+public class RegexReplacerTest {
+
+    private static final String TEXT = "alpha beta\ngamma\n\ndelta alpha\nbeta\nepsilon";
+
+    /**
+     * Replaces with a replacer searching a single line per task and compares the result with
+     * {@link java.util.regex.Matcher#replaceAll(String)} over the whole text.
+     */
+    private static void assertReplaceAll(String regex, String replacement) {
+        TextEditorModel model = new TextEditorModel(TEXT);
+        Pattern pattern = Pattern.compile(regex);
+        new RegexReplacer(model, ForkJoinPool.commonPool(), 1).replaceAll(pattern, replacement);
+
+        assertEquals(regex, pattern.matcher(TEXT).replaceAll(replacement), String.join("\n", model.getLines()));
+    }
+
+    /**
+     * Matches spanning lines, and so chunks, must be found once and replaced whole.
+     */
+    @Test
+    public void crossLine() {
+        assertReplaceAll("a\\n\\w+", "<$0>");
+        assertReplaceAll("(?s)beta.*?alpha", "X");
+        assertReplaceAll("\\n\\n", "\n");
+        assertReplaceAll("(?s)a.{0,12}", "[$0]");
+        assertReplaceAll("(?m)^\\w", "#");
+        assertReplaceAll("(?<=a\\n)\\w+", "-");
+    }
+
+    /**
+     * Empty matches must be replaced at every position, including the end of the text.
+     */
+    @Test
+    public void emptyMatches() {
+        assertReplaceAll("", "|");
+        assertReplaceAll("x*", "-");
+        assertReplaceAll("(?m)$", ";");
+        assertReplaceAll("\\b", "'");
+    }
+
+    /**
+     * Found matches must map back to the lines and columns of the text.
+     */
+    @Test
+    public void findAll() {
+        TextEditorModel model = new TextEditorModel(TEXT);
+        List<LocationRange> matches = new RegexReplacer(model, ForkJoinPool.commonPool(), 1)
+                .findAll(Pattern.compile("alpha\\nbeta|a\\n"));
+
+        assertEquals(3, matches.size());
+        assertEquals(new Location(9, 0), matches.get(0).getStart());
+        assertEquals(new Location(0, 1), matches.get(0).getEnd());
+        assertEquals(new Location(4, 1), matches.get(1).getStart());
+        assertEquals(new Location(6, 3), matches.get(2).getStart());
+        assertEquals(new Location(4, 4), matches.get(2).getEnd());
+    }
+}
@@ -0,0 +1,161 @@
+package tests;
+
+import model.storage.ListLineStorage;
+import model.storage.RopeStorage;
+import model.storage.TextStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link RopeStorage}.
+ */
+public class RopeStorageTest {
+
+    private RopeStorage mStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        mStorage = new RopeStorage("Hello.\nWorld!");
+    }
+
+    /**
+     * Line and character counts must include newlines between lines only.
+     */
+    @Test
+    public void counts() {
+        assertEquals(2, mStorage.lineCount());
+        assertEquals(13, mStorage.length());
+        assertEquals(1, new RopeStorage("").lineCount());
+        assertEquals(0, new RopeStorage("").length());
+        assertEquals(3, new RopeStorage("a\n\n").lineCount());
+    }
+
+    /**
+     * Multi-line text inserted mid-line must split the line around it.
+     */
+    @Test
+    public void insertMultiLine() {
+        mStorage.insert(0, 2, "y\nnew\nhe");
+
+        assertEquals(4, mStorage.lineCount());
+        assertEquals("Hey", mStorage.getLine(0));
+        assertEquals("new", mStorage.getLine(1));
+        assertEquals("hello.", mStorage.getLine(2));
+        assertEquals("World!", mStorage.getLine(3));
+        assertEquals(21, mStorage.length());
+    }
+
+    /**
+     * Deleting across many lines must keep the head of the first and the tail of the last line.
+     */
+    @Test
+    public void deleteRange() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        RopeStorage storage = new RopeStorage(text.append("end"));
+
+        storage.delete(1, 3, 998, 5);
+        assertEquals(4, storage.lineCount());
+        assertEquals("line 0", storage.getLine(0));
+        assertEquals("lin998", storage.getLine(1));
+        assertEquals("line 999", storage.getLine(2));
+        assertEquals("end", storage.getLine(3));
+
+        storage.deleteChar(0, 6);
+        assertEquals("line 0lin998", storage.getLine(0));
+        assertEquals(3, storage.lineCount());
+    }
+
+    /**
+     * Lines inserted one by one at the same place must stay findable, the tree rebalances.
+     */
+    @Test
+    public void rebalance() {
+        RopeStorage storage = new RopeStorage("");
+        for (int i = 0; i < 20000; i++) {
+            storage.insert(0, 0, i + "\n");
+        }
+
+        assertEquals(20001, storage.lineCount());
+        assertEquals("19999", storage.getLine(0));
+        assertEquals("10000", storage.getLine(9999));
+        assertEquals("0", storage.getLine(19999));
+        assertEquals("", storage.getLine(20000));
+
+        Iterator<String> lines = storage.lines(19998, 20001);
+        assertEquals("1", lines.next());
+        assertEquals("0", lines.next());
+        assertEquals("", lines.next());
+        assertFalse(lines.hasNext());
+    }
+
+    /**
+     * Random edits must give the same lines as the list of lines.
+     */
+    @Test
+    public void randomEdits() {
+        Random random = new Random(7);
+        TextStorage expected = new ListLineStorage(Arrays.asList("Hello.", "World!"));
+        for (int i = 0; i < 3000; i++) {
+            int line = random.nextInt(mStorage.lineCount());
+            int column = random.nextInt(mStorage.lineLength(line) + 1);
+            switch (random.nextInt(4)) {
+                case 0:
+                    mStorage.insert(line, column, 'x');
+                    expected.insert(line, column, 'x');
+                    break;
+                case 1:
+                    mStorage.insert(line, column, "ab\n\ncd");
+                    expected.insert(line, column, "ab\n\ncd");
+                    break;
+                case 2:
+                    int endLine = Math.min(line + random.nextInt(3), mStorage.lineCount() - 1);
+                    int endColumn = endLine == line ? column : random.nextInt(mStorage.lineLength(endLine) + 1);
+                    mStorage.delete(line, column, endLine, endColumn);
+                    expected.delete(line, column, endLine, endColumn);
+                    break;
+                default:
+                    if (column < mStorage.lineLength(line) || line + 1 < mStorage.lineCount()) {
+                        mStorage.deleteChar(line, column);
+                        expected.deleteChar(line, column);
+                    }
+            }
+
+            assertEquals(expected.lineCount(), mStorage.lineCount());
+            assertEquals(expected.getLine(line), mStorage.getLine(line));
+        }
+        assertEquals(expected.getText(0, 0, expected.lineCount() - 1, expected.lineLength(expected.lineCount() - 1)),
+                mStorage.getText(0, 0, mStorage.lineCount() - 1, mStorage.lineLength(mStorage.lineCount() - 1)));
+    }
+
+    /**
+     * Snapshot must be O(1) and keep its text while the storage is edited, and the other way around.
+     */
+    @Test
+    public void snapshot() {
+        assertTrue(mStorage.hasCheapSnapshots());
+        TextStorage snapshot = mStorage.snapshot();
+
+        mStorage.insert(0, 0, "A\nB");
+        mStorage.setLine(2, "Earth!");
+        assertEquals(2, snapshot.lineCount());
+        assertEquals("Hello.", snapshot.getLine(0));
+        assertEquals("World!", snapshot.getLine(1));
+
+        snapshot.deleteChar(0, 6);
+        assertEquals("Hello.World!", snapshot.getLine(0));
+        assertEquals(3, mStorage.lineCount());
+        assertEquals("BHello.", mStorage.getLine(1));
+        assertEquals("Earth!", mStorage.getLine(2));
+    }
+}
@@ -0,0 +1,227 @@
+package tests;
+
+import model.LocationRange;
+import model.SearchIndex;
+import model.TextEditorModel;
+import model.TextPosition;
+import model.TextRange;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link SearchIndex}.
+ */
+public class SearchIndexTest {
+
+    private static final String[] QUERIES = {
+            "alpha", "beta gamma", "ta\ngam", "a\n\nd", "pha\nbeta", "\nepsilon\n", "xyz", "al", "a\n", "lph"
+    };
+
+    private TextEditorModel mModel;
+
+    /**
+     * Search which is never built, so it always scans the text.
+     */
+    private SearchIndex mScan;
+
+    @Before
+    public void setUp() throws Exception {
+        StringBuilder text = new StringBuilder();
+        String[] words = {"alpha", "beta", "gamma", "", "delta", "epsilon"};
+        for (int i = 0; i < 300; i++) {
+            text.append(words[i % words.length]).append(i % 7 == 0 ? " gamma" : "").append('\n');
+        }
+        mModel = new TextEditorModel(text.append("end").toString());
+        mScan = new SearchIndex(mModel);
+    }
+
+    private static SearchIndex build(TextEditorModel model) throws Exception {
+        SearchIndex index = new SearchIndex(model);
+        index.build(Runnable::run).get(10, TimeUnit.SECONDS);
+        return index;
+    }
+
+    private void assertSameMatches(SearchIndex index) {
+        for (String query : QUERIES) {
+            assertEquals(query, mScan.find(query).toString(), index.find(query).toString());
+        }
+    }
+
+    /**
+     * Built index must find the same occurrences as scanning, in the order of the text.
+     */
+    @Test
+    public void build() throws Exception {
+        assertFalse(mScan.isIndexed());
+        SearchIndex index = build(mModel);
+        assertTrue(index.isIndexed());
+
+        List<LocationRange> matches = index.find("beta gamma");
+        assertEquals(7, matches.size());
+        assertEquals(new LocationRange(0, 175, 10, 175).toString(), matches.get(4).toString());
+        assertSameMatches(index);
+    }
+
+    /**
+     * Queries spanning lines must match whole middle lines and the ends of the outer ones.
+     */
+    @Test
+    public void multiLine() throws Exception {
+        SearchIndex index = build(new TextEditorModel("one two\nthree\nfour\nthree\nfourteen"));
+
+        List<LocationRange> matches = index.find("two\nthree\nfour");
+        assertEquals(1, matches.size());
+        assertEquals(new LocationRange(4, 0, 4, 2).toString(), matches.get(0).toString());
+
+        matches = index.find("e\nfour");
+        assertEquals(2, matches.size());
+        assertEquals(new LocationRange(4, 1, 4, 2).toString(), matches.get(0).toString());
+        assertEquals(new LocationRange(4, 3, 4, 4).toString(), matches.get(1).toString());
+        assertTrue(index.find("three\nfourteen\n").isEmpty());
+    }
+
+    /**
+     * Edits must be indexed incrementally, including edits which add, remove and join lines
+     * across blocks, and enough edits to drop the stale postings.
+     */
+    @Test
+    public void incrementalUpdate() throws Exception {
+        SearchIndex index = build(mModel);
+        Random random = new Random(11);
+        String[] inserts = {"alpha", "\n", "beta gamma\nx", "a\n\ndelta\nepsilon\n", "lph"};
+        for (int i = 0; i < 3000; i++) {
+            int line = random.nextInt(mModel.lineCount());
+            int column = random.nextInt(mModel.getLine(line).length() + 1);
+            if (random.nextInt(3) > 0) {
+                mModel.moveCursorTo(new TextPosition(column, line));
+                mModel.insert(inserts[random.nextInt(inserts.length)] + " w" + i);
+            } else {
+                int endLine = Math.min(line + random.nextInt(random.nextInt(20) == 0 ? 40 : 3), mModel.lineCount() - 1);
+                int endColumn = endLine == line ? column : random.nextInt(mModel.getLine(endLine).length() + 1);
+                mModel.deleteRange(new TextRange(column, line, endColumn, endLine));
+            }
+
+            if (i % 100 == 0) {
+                assertSameMatches(index);
+            }
+        }
+        assertSameMatches(index);
+    }
+
+    /**
+     * Queries without three characters on a line, and queries before the build, must scan.
+     * Edits made while the index is being built must be indexed once it is installed.
+     */
+    @Test
+    public void scanFallback() throws Exception {
+        SearchIndex index = new SearchIndex(mModel);
+        assertEquals(mScan.find("alpha").toString(), index.find("alpha").toString());
+
+        List<Runnable> installs = new ArrayList<>();
+        CountDownLatch built = new CountDownLatch(1);
+        CompletableFuture<Void> result = index.build(install -> {
+            installs.add(install);
+            built.countDown();
+        });
+        assertTrue(built.await(10, TimeUnit.SECONDS));
+        assertFalse(index.isIndexed());
+
+        mModel.moveCursorTo(new TextPosition(0, 2));
+        mModel.insert("zeta\nzeta ");
+        installs.get(0).run();
+        assertTrue(result.isDone());
+        assertTrue(index.isIndexed());
+        assertEquals(1, index.find("zeta\nzeta").size());
+
+        assertEquals(mScan.find("a\n").size(), index.find("a\n").size());
+        assertEquals(0, index.find("").size());
+        assertSameMatches(index);
+    }
+
+    /**
+     * Index in use must follow edits made while another index is built, and the built index
+     * must index them once it is installed.
+     */
+    @Test
+    public void editDuringRebuild() throws Exception {
+        SearchIndex index = build(mModel);
+        List<Runnable> installs = new ArrayList<>();
+        CountDownLatch built = new CountDownLatch(1);
+        CompletableFuture<Void> result = index.build(install -> {
+            installs.add(install);
+            built.countDown();
+        });
+        assertTrue(built.await(10, TimeUnit.SECONDS));
+
+        mModel.deleteRange(new TextRange(0, 20, 0, 270));
+        assertTrue(index.isIndexed());
+        assertSameMatches(index);
+
+        installs.get(0).run();
+        assertTrue(result.isDone());
+        mModel.moveCursorTo(new TextPosition(0, 10));
+        mModel.insert("alpha\nbeta gamma\n");
+        assertSameMatches(index);
+    }
+
+    /**
+     * Build which cannot be installed must complete its future exceptionally and leave the
+     * index in use following edits.
+     */
+    @Test
+    public void failedBuild() throws Exception {
+        SearchIndex index = build(mModel);
+        List<Runnable> tasks = new ArrayList<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        CompletableFuture<Void> result = index.build(new Executor() {
+            private boolean mRejected;
+
+            @Override
+            public void execute(Runnable task) {
+                if (!mRejected) {
+                    mRejected = true;
+                    throw new RejectedExecutionException();
+                }
+                tasks.add(task);
+                failed.countDown();
+            }
+        });
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        tasks.get(0).run();
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        mModel.deleteRange(new TextRange(0, 5, 0, 200));
+        assertTrue(index.isIndexed());
+        assertSameMatches(index);
+
+        CompletableFuture<Void> rejected = new SearchIndex(mModel).build(task -> {
+            throw new RejectedExecutionException();
+        });
+        try {
+            rejected.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+}
@@ -1,14 +1,44 @@
 package tests;
 
+import model.ClipboardStack;
 import model.CursorObserver;
+import model.Location;
+import model.Positions;
+import model.TextChange;
 import model.TextEditorModel;
+import model.TextObserver;
+import model.TextPosition;
+import model.TextRange;
+import model.TextSnapshot;
+import model.UndoManager;
+import model.storage.ListLineStorage;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit test for {@link TextEditorModel}.
@@ -32,6 +62,414 @@ public class TextEditorModelTest {
         assertArrayEquals(mTextEditorModel.getLines().toArray(), expected);
     }
 
+    /**
+     * Navigation must return {@link Positions#NONE} at the edges of the text instead of throwing.
+     */
+    @Test
+    public void positions() {
+        assertEquals(Positions.NONE, mTextEditorModel.leftPosition(Positions.of(0, 0)));
+        assertEquals(Positions.NONE, mTextEditorModel.upPosition(Positions.of(0, 3)));
+        assertEquals(Positions.NONE, mTextEditorModel.rightPosition(Positions.of(1, 6)));
+        assertEquals(Positions.NONE, mTextEditorModel.downPosition(Positions.of(1, 0)));
+        assertEquals(Positions.of(1, 0), mTextEditorModel.rightPosition(Positions.of(0, 6)));
+        assertEquals(Positions.of(0, 6), mTextEditorModel.leftPosition(Positions.of(1, 0)));
+        assertEquals(Positions.of(1, 6), mTextEditorModel.downPosition(Positions.of(0, 6)));
+    }
+
+    /**
+     * Selection must span from where it began to the cursor and stay the same instance until the cursor moves.
+     */
+    @Test
+    public void selection() {
+        mTextEditorModel.moveCursorDown();
+        mTextEditorModel.startSelection();
+        mTextEditorModel.moveCursorUp();
+        mTextEditorModel.moveCursorRight();
+
+        TextRange selection = mTextEditorModel.getSelection();
+        assertEquals(new TextRange(0, 1, 1, 0), selection);
+        assertEquals(new TextPosition(1, 0), selection.getBottomRightStart());
+        assertSame(selection, mTextEditorModel.getSelection());
+        assertEquals("ello.\n", mTextEditorModel.selectionToString(selection));
+
+        mTextEditorModel.deleteRange(selection);
+        assertNull(mTextEditorModel.getSelection());
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"HWorld!"});
+    }
+
+    /**
+     * Changes made in a batch must be reported as a single change covering all of them.
+     */
+    @Test
+    public void batch() {
+        List<TextChange> changes = new ArrayList<>();
+        mTextEditorModel.addTextObserver(new TextObserver() {
+            @Override
+            public void updateText() {
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                changes.add(change);
+            }
+        });
+
+        mTextEditorModel.batch(() -> {
+            mTextEditorModel.insert("A\nB");
+            mTextEditorModel.moveCursorDown();
+            mTextEditorModel.insert('C');
+        });
+
+        String[] expected = new String[]{"A", "BHello.", "WCorld!"};
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), expected);
+        assertEquals(1, changes.size());
+        assertEquals(0, changes.get(0).getFirstLine());
+        assertEquals(2, changes.get(0).getOldLineCount());
+        assertEquals(3, changes.get(0).getNewLineCount());
+        assertEquals(new Location(0, 0), changes.get(0).getOldCursor());
+        assertEquals(new Location(2, 2), changes.get(0).getNewCursor());
+    }
+
+    /**
+     * Typed characters must be undone as one entry and a batch must be undone as a whole.
+     */
+    @Test
+    public void undo() {
+        UndoManager undoManager = mTextEditorModel.getUndoManager();
+        mTextEditorModel.insert('a');
+        mTextEditorModel.insert('b');
+        mTextEditorModel.batch(() -> {
+            mTextEditorModel.deleteRange(new TextRange(2, 0, 3, 1));
+            mTextEditorModel.insert("X\nY");
+        });
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"abX", "Yld!"});
+
+        undoManager.undo();
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"abHello.", "World!"});
+        undoManager.undo();
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"Hello.", "World!"});
+        assertFalse(undoManager.canUndo());
+
+        undoManager.redo();
+        undoManager.redo();
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"abX", "Yld!"});
+        assertFalse(undoManager.canRedo());
+    }
+
+    /**
+     * Characters typed and removed one batch at a time, as the editor does, must merge
+     * like characters typed without batches.
+     */
+    @Test
+    public void undoBatchedTyping() {
+        UndoManager undoManager = mTextEditorModel.getUndoManager();
+        mTextEditorModel.moveCursorTo(new TextPosition(6, 0));
+        for (char c : "xyz".toCharArray()) {
+            mTextEditorModel.batch(() -> mTextEditorModel.insert(c));
+        }
+        assertArrayEquals(new String[]{"Hello.xyz", "World!"}, mTextEditorModel.getLines().toArray());
+
+        undoManager.undo();
+        assertArrayEquals(new String[]{"Hello.", "World!"}, mTextEditorModel.getLines().toArray());
+        assertFalse(undoManager.canUndo());
+
+        mTextEditorModel.moveCursorTo(new TextPosition(2, 1));
+        mTextEditorModel.batch(mTextEditorModel::deleteBefore);
+        mTextEditorModel.batch(mTextEditorModel::deleteBefore);
+        mTextEditorModel.batch(mTextEditorModel::deleteBefore);
+        assertArrayEquals(new String[]{"Hello.rld!"}, mTextEditorModel.getLines().toArray());
+
+        undoManager.undo();
+        assertArrayEquals(new String[]{"Hello.", "World!"}, mTextEditorModel.getLines().toArray());
+        assertFalse(undoManager.canUndo());
+        undoManager.redo();
+        assertArrayEquals(new String[]{"Hello.rld!"}, mTextEditorModel.getLines().toArray());
+    }
+
+    /**
+     * Undoing an edit whose redo doesn't fit the budget must keep older edits undoable.
+     */
+    @Test
+    public void undoOverBudget() {
+        UndoManager undoManager = mTextEditorModel.getUndoManager();
+        undoManager.setByteBudget(10000);
+        mTextEditorModel.insert('a');
+        mTextEditorModel.insert('b');
+        mTextEditorModel.insert(new String(new char[20000]).replace('\0', 'x'));
+
+        undoManager.undo();
+        assertArrayEquals(new String[]{"abHello.", "World!"}, mTextEditorModel.getLines().toArray());
+        assertFalse(undoManager.canRedo());
+        assertTrue(undoManager.canUndo());
+        assertTrue(undoManager.getByteSize() <= undoManager.getByteBudget());
+
+        undoManager.undo();
+        assertArrayEquals(new String[]{"Hello.", "World!"}, mTextEditorModel.getLines().toArray());
+    }
+
+    /**
+     * Snapshot must keep the text it was taken with while the model is edited.
+     */
+    @Test
+    public void snapshot() {
+        mTextEditorModel.insert('A');
+        TextSnapshot snapshot = mTextEditorModel.snapshot();
+        mTextEditorModel.insert('B');
+        mTextEditorModel.insert("\nC");
+
+        assertEquals(2, snapshot.lineCount());
+        assertEquals("AHello.", snapshot.getLine(0));
+        assertEquals("World!", snapshot.getLine(1));
+        assertArrayEquals(mTextEditorModel.getLines().toArray(), new String[]{"AB", "CHello.", "World!"});
+    }
+
+    /**
+     * Clipboard must drop the oldest entries, keep one copy of repeated texts and give back
+     * compressed texts unchanged.
+     */
+    @Test
+    public void clipboardStack() {
+        ClipboardStack clipboardStack = new ClipboardStack(2, ClipboardStack.DEFAULT_BYTE_BUDGET, 8);
+        clipboardStack.push("Hello.");
+        clipboardStack.push("Hello, compressed World!");
+        clipboardStack.push("Hello.");
+
+        assertEquals(2, clipboardStack.size());
+        assertEquals("Hello.", clipboardStack.pop());
+        assertEquals("Hello, compressed World!", clipboardStack.peek());
+
+        clipboardStack.push("A");
+        clipboardStack.push("B");
+        assertEquals(2, clipboardStack.size());
+        assertEquals("B", clipboardStack.pop());
+        assertEquals("A", clipboardStack.pop());
+        assertTrue(clipboardStack.isEmpty());
+        assertEquals(0, clipboardStack.getByteSize());
+    }
+
+    /**
+     * Copied range must paste the text it had when copied, even after the model was edited.
+     */
+    @Test
+    public void copyPaste() {
+        mTextEditorModel.copy(new TextRange(2, 0, 3, 1));
+        mTextEditorModel.deleteRange(new TextRange(0, 0, 6, 0));
+        mTextEditorModel.moveCursorTo(new TextPosition(0, 1));
+
+        mTextEditorModel.getClipboardStack().peekPaste(mTextEditorModel);
+        assertArrayEquals(new String[]{"", "llo.", "WorWorld!"}, mTextEditorModel.getLines().toArray());
+        assertEquals(new TextPosition(3, 2), mTextEditorModel.getCursor());
+        assertEquals("llo.\nWor", mTextEditorModel.getClipboardStack().pop());
+    }
+
+    /**
+     * Copying the same range of unchanged text again must keep a single entry,
+     * a copy after an edit or from another model must not.
+     */
+    @Test
+    public void copyTwice() {
+        ClipboardStack clipboardStack = mTextEditorModel.getClipboardStack();
+        TextRange range = new TextRange(2, 0, 3, 1);
+        for (int i = 0; i < 64; i++) {
+            mTextEditorModel.copy(range);
+        }
+        assertEquals(1, clipboardStack.size());
+
+        mTextEditorModel.copy(new TextRange(0, 0, 1, 0));
+        mTextEditorModel.copy(range);
+        assertEquals(2, clipboardStack.size());
+        assertEquals("llo.\nWor", clipboardStack.peek());
+
+        mTextEditorModel.moveCursorTo(new TextPosition(0, 0));
+        mTextEditorModel.insert('>');
+        mTextEditorModel.copy(range);
+        assertEquals(3, clipboardStack.size());
+        assertEquals("ello.\nWor", clipboardStack.peek());
+
+        clipboardStack.push(new TextEditorModel("Hello.\nWorld!").snapshot(), range);
+        assertEquals(4, clipboardStack.size());
+    }
+
+    /**
+     * Streaming views of a selection must hold the same text as {@link TextEditorModel#selectionToString(TextRange)}.
+     */
+    @Test
+    public void selectionViews() throws IOException {
+        TextRange selection = new TextRange(2, 0, 3, 1);
+        String expected = mTextEditorModel.selectionToString(selection);
+
+        CharSequence chars = mTextEditorModel.selectionChars(selection);
+        assertEquals(expected.length(), chars.length());
+        assertEquals('\n', chars.charAt(4));
+        assertEquals(expected, chars.toString());
+
+        StringBuilder read = new StringBuilder();
+        try (Reader reader = mTextEditorModel.selectionReader(selection)) {
+            char[] buffer = new char[3];
+            for (int count; (count = reader.read(buffer)) != -1; ) {
+                read.append(buffer, 0, count);
+            }
+        }
+        assertEquals(expected, read.toString());
+
+        assertEquals(expected, mTextEditorModel.selectionChunks(selection)
+                .map(CharBuffer::toString)
+                .collect(Collectors.joining()));
+    }
+
+    /**
+     * Edits at several cursors must be applied at once, notify observers once and be undone together.
+     */
+    @Test
+    public void multiCursor() {
+        List<TextChange> changes = new ArrayList<>();
+        mTextEditorModel.addTextObserver(new TextObserver() {
+            @Override
+            public void updateText() {
+            }
+
+            @Override
+            public void updateText(TextChange change) {
+                changes.add(change);
+            }
+        });
+        mTextEditorModel.moveCursorTo(new TextPosition(1, 0));
+        mTextEditorModel.addCursor(new TextPosition(3, 0));
+        mTextEditorModel.addCursor(new TextRange(0, 1, 5, 1));
+
+        mTextEditorModel.insertAtCursors("ab\n");
+        assertArrayEquals(new String[]{"Hab", "elab", "lo.", "ab", "!"}, mTextEditorModel.getLines().toArray());
+        assertEquals(1, changes.size());
+        assertEquals(new TextPosition(0, 1), mTextEditorModel.getCursor());
+        assertEquals(new TextRange(0, 4, 0, 4), mTextEditorModel.getCursors().get(2));
+
+        mTextEditorModel.deleteBeforeAtCursors();
+        assertArrayEquals(new String[]{"Habelablo.", "ab!"}, mTextEditorModel.getLines().toArray());
+        assertEquals(3, mTextEditorModel.getCursors().size());
+
+        mTextEditorModel.getUndoManager().undo();
+        mTextEditorModel.getUndoManager().undo();
+        assertArrayEquals(new String[]{"Hello.", "World!"}, mTextEditorModel.getLines().toArray());
+    }
+
+    /**
+     * Edits at many cursors on one line must be undone and redone as a whole.
+     */
+    @Test
+    public void multiCursorSameLineUndo() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("abcd");
+        }
+        TextEditorModel model = new TextEditorModel("first\n" + text + "\nlast");
+        model.moveCursorTo(new TextPosition(0, 1));
+        for (int i = 1; i < 500; i++) {
+            model.addCursor(new TextPosition(i * 4, 1));
+        }
+
+        model.insertAtCursors("xy");
+        model.deleteAfterAtCursors();
+        String edited = text.toString().replace("abcd", "xybcd");
+        assertEquals(edited, model.getLine(1));
+
+        model.getUndoManager().undo();
+        assertEquals(text.toString().replace("abcd", "xyabcd"), model.getLine(1));
+        model.getUndoManager().undo();
+        assertArrayEquals(new String[]{"first", text.toString(), "last"}, model.getLines().toArray());
+
+        model.getUndoManager().redo();
+        model.getUndoManager().redo();
+        assertArrayEquals(new String[]{"first", edited, "last"}, model.getLines().toArray());
+    }
+
+    /**
+     * Saved new file must get the default permissions like any other new file,
+     * a saved existing file must keep its own.
+     */
+    @Test
+    public void savePermissions() throws IOException {
+        Path directory = Files.createTempDirectory("save");
+        try {
+            Path reference = Files.createFile(directory.resolve("reference.txt"));
+            Path saved = directory.resolve("saved.txt");
+            mTextEditorModel.save(saved);
+            assertEquals("Hello.\nWorld!", new String(Files.readAllBytes(saved), StandardCharsets.UTF_8));
+            if (Files.getFileStore(directory).supportsFileAttributeView("posix")) {
+                assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(saved));
+
+                Set<PosixFilePermission> permissions = EnumSet.of(PosixFilePermission.OWNER_READ,
+                        PosixFilePermission.OWNER_WRITE, PosixFilePermission.OTHERS_READ);
+                Files.setPosixFilePermissions(saved, permissions);
+                mTextEditorModel.save(saved);
+                assertEquals(permissions, Files.getPosixFilePermissions(saved));
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Save failing with any exception must leave neither the target nor a temporary file behind.
+     */
+    @Test
+    public void saveFailure() throws IOException {
+        TextEditorModel model = new TextEditorModel(new ListLineStorage("Hello.") {
+            @Override
+            public void writeTo(GatheringByteChannel channel, Charset charset) {
+                throw new IllegalStateException("Broken storage.");
+            }
+        });
+        Path directory = Files.createTempDirectory("save");
+        try {
+            try {
+                model.save(directory.resolve("saved.txt"));
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("Broken storage.", e.getMessage());
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Offsets must count newlines and follow every edit of the text.
+     */
+    @Test
+    public void offsets() {
+        assertEquals(13, mTextEditorModel.length());
+        assertEquals(7, mTextEditorModel.getOffset(new TextPosition(0, 1)));
+        assertEquals(new TextPosition(6, 0), mTextEditorModel.getPosition(6));
+        assertEquals(new Location(6, 1), mTextEditorModel.getLocation(13));
+
+        mTextEditorModel.moveCursorTo(new TextPosition(6, 0));
+        mTextEditorModel.insert("\nX");
+        assertEquals(9, mTextEditorModel.getOffset(new TextPosition(0, 2)));
+        assertEquals(new TextPosition(1, 1), mTextEditorModel.getPosition(8));
+
+        mTextEditorModel.deleteBefore();
+        mTextEditorModel.deleteBefore();
+        assertEquals(13, mTextEditorModel.length());
+        assertEquals(new TextPosition(0, 1), mTextEditorModel.getPosition(7));
+
+        mTextEditorModel.appendLines(Arrays.asList("?", "Bye."));
+        assertEquals(19, mTextEditorModel.length());
+        assertEquals(15, mTextEditorModel.getOffset(new TextPosition(0, 2)));
+        assertEquals(new TextPosition(6, 1), mTextEditorModel.getPosition(13));
+    }
+
 //    /**
 //     * Method adds a {@link CursorObserver} to {@link TextEditorModel}.
 //     * Duplicate observers are not allowed.
@@ -0,0 +1,115 @@
+package tests;
+
+import main.WrapLayout;
+import model.TextChange;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link WrapLayout}.
+ */
+public class WrapLayoutTest {
+
+    /**
+     * Every character is 10 pixels wide, so a row of 50 pixels holds 5 characters.
+     */
+    private static final FontMetrics METRICS = new FontMetrics(new Font(Font.MONOSPACED, Font.PLAIN, 12)) {
+        @Override
+        public int charWidth(char c) {
+            return 10;
+        }
+
+        @Override
+        public int charWidth(int codePoint) {
+            return 10;
+        }
+    };
+
+    private WrapLayout mLayout;
+
+    @Before
+    public void setUp() throws Exception {
+        mLayout = new WrapLayout();
+        mLayout.setWidth(METRICS, 50, 3);
+    }
+
+    /**
+     * Lines must break after the last space which fits and inside words without spaces.
+     */
+    @Test
+    public void wrap() {
+        assertArrayEquals(new int[]{6, 12}, mLayout.breaks(METRICS, 0, "hello world foo"));
+        assertArrayEquals(new int[]{5, 10}, mLayout.breaks(METRICS, 1, "abcdefghijkl"));
+        assertArrayEquals(new int[0], mLayout.breaks(METRICS, 2, "short"));
+    }
+
+    /**
+     * Surrogate pair must be measured as one character and never split between rows.
+     */
+    @Test
+    public void surrogatePairs() {
+        assertArrayEquals(new int[]{6}, mLayout.breaks(METRICS, 0, "abcd\uD83D\uDE00\uD83D\uDE00xy"));
+        assertArrayEquals(new int[]{4, 14}, mLayout.breaks(METRICS, 1, "abc \uD83D\uDE00\uD83D\uDE00\uD83D\uDE00\uD83D\uDE00\uD83D\uDE00\uD83D\uDE00"));
+    }
+
+    /**
+     * Column at a break must belong to the next row.
+     */
+    @Test
+    public void rowOf() {
+        int[] breaks = {6, 12};
+        assertEquals(0, WrapLayout.rowOf(breaks, 5));
+        assertEquals(1, WrapLayout.rowOf(breaks, 6));
+        assertEquals(2, WrapLayout.rowOf(breaks, 12));
+        assertEquals(6, WrapLayout.rowStart(breaks, 1));
+        assertEquals(15, WrapLayout.rowEnd(breaks, 2, 15));
+    }
+
+    /**
+     * Rows must be mapped to lines once lines are wrapped, and lines not wrapped yet count
+     * as a single row.
+     */
+    @Test
+    public void lineAt() {
+        assertEquals(3, mLayout.rowCount());
+        mLayout.breaks(METRICS, 1, "hello world foo");
+
+        assertEquals(5, mLayout.rowCount());
+        assertEquals(1, mLayout.firstRow(1));
+        assertEquals(4, mLayout.firstRow(2));
+        assertEquals(0, mLayout.lineAt(0));
+        assertEquals(1, mLayout.lineAt(3));
+        assertEquals(2, mLayout.lineAt(4));
+        assertEquals(2, mLayout.lineAt(100));
+    }
+
+    /**
+     * Edit must drop only the changed lines, wrapped lines after it keep their rows.
+     */
+    @Test
+    public void invalidate() {
+        mLayout.breaks(METRICS, 0, "hello world foo");
+        mLayout.breaks(METRICS, 2, "abcdefghijkl");
+
+        mLayout.invalidate(new TextChange(0, 1, 2));
+        assertEquals(4, mLayout.lineCount());
+        assertFalse(mLayout.isWrapped(0));
+        assertFalse(mLayout.isWrapped(1));
+        assertTrue(mLayout.isWrapped(3));
+        assertEquals(6, mLayout.rowCount());
+        assertEquals(3, mLayout.firstRow(3));
+
+        assertFalse(mLayout.setWidth(METRICS, 50, 4));
+        assertTrue(mLayout.setWidth(METRICS, 60, 4));
+        assertFalse(mLayout.isWrapped(3));
+        assertEquals(4, mLayout.rowCount());
+    }
+}